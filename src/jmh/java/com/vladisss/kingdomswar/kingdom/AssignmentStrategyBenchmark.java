@@ -0,0 +1,94 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * СРАВНЕНИЕ СТРАТЕГИЙ НАЗНАЧЕНИЯ "ВОИН -> ЦЕЛЬ"
+ *
+ * - greedyIndexed: TargetAssigner + TroopSpatialIndex (то, что в игре);
+ * - naiveScan: для каждой цели полный перебор воинов (как было до сетки).
+ * Обе стратегии дают каждой цели до ATTACKERS ближайших свободных воинов.
+ *
+ * Запуск: ./gradlew jmh -Pjmh="AssignmentStrategyBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssignmentStrategyBenchmark {
+    private static final int ATTACKERS = 3;
+
+    @Param({"10", "50", "200", "500"})
+    public int troops;
+
+    @Param({"10", "50", "200", "500"})
+    public int threats;
+
+    @Param({"50", "200", "500"})
+    public int radius;
+
+    private SyntheticBattlefield battlefield;
+    private final TroopSpatialIndex index = new TroopSpatialIndex();
+    private final TargetAssigner assigner = new TargetAssigner();
+    private boolean[] taken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        battlefield = new SyntheticBattlefield(troops, threats, radius, SyntheticBattlefield.Scenario.TERRITORY, 42L);
+        taken = new boolean[troops];
+    }
+
+    @Benchmark
+    public void greedyIndexed(Blackhole blackhole) {
+        index.clear();
+        for (int troop = 0; troop < battlefield.getTroopCount(); troop++) {
+            index.add(battlefield.getTroopX(troop), battlefield.getTroopY(troop), battlefield.getTroopZ(troop));
+        }
+
+        assigner.clearThreats();
+        for (int threat = 0; threat < battlefield.getThreatCount(); threat++) {
+            assigner.addThreat(battlefield.getThreatX(threat), battlefield.getThreatY(threat), battlefield.getThreatZ(threat));
+        }
+        assigner.setAllCapacities(ATTACKERS);
+
+        blackhole.consume(assigner.assign(index, null, (troop, threat) -> blackhole.consume(troop + threat)));
+    }
+
+    @Benchmark
+    public void naiveScan(Blackhole blackhole) {
+        Arrays.fill(taken, false);
+        int assigned = 0;
+
+        for (int threat = 0; threat < battlefield.getThreatCount() && assigned < troops; threat++) {
+            double tx = battlefield.getThreatX(threat);
+            double ty = battlefield.getThreatY(threat);
+            double tz = battlefield.getThreatZ(threat);
+
+            for (int attacker = 0; attacker < ATTACKERS && assigned < troops; attacker++) {
+                int best = -1;
+                double bestDistance = Double.MAX_VALUE;
+                for (int troop = 0; troop < troops; troop++) {
+                    if (taken[troop]) continue;
+                    double dx = battlefield.getTroopX(troop) - tx;
+                    double dy = battlefield.getTroopY(troop) - ty;
+                    double dz = battlefield.getTroopZ(troop) - tz;
+                    double distance = dx * dx + dy * dy + dz * dz;
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = troop;
+                    }
+                }
+                taken[best] = true;
+                assigned++;
+                blackhole.consume(best + threat);
+            }
+        }
+        blackhole.consume(assigned);
+    }
+}
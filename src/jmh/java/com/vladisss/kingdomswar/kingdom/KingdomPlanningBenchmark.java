@@ -0,0 +1,70 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * БЕНЧМАРК ПЛАНИРОВАНИЯ ОБОРОНЫ
+ *
+ * Тот же расчет, что делает ThreatPlanner в рабочем потоке:
+ * KingdomAI.planDefense (уровень угрозы + оборона) и TerritoryScanner.planThreatResponse.
+ *
+ * Запуск: ./gradlew jmh -Pjmh="KingdomPlanningBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KingdomPlanningBenchmark {
+
+    @Param({"10", "50", "200", "500"})
+    public int troops;
+
+    @Param({"10", "50", "200", "500"})
+    public int threats;
+
+    @Param({"50", "200", "500"})
+    public int radius;
+
+    @Param({"TERRITORY", "CASTLE"})
+    public SyntheticBattlefield.Scenario scenario;
+
+    private SyntheticBattlefield battlefield;
+    private KingdomAI ai;
+    private TerritoryScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        battlefield = new SyntheticBattlefield(troops, threats, radius, scenario, 42L);
+        ai = new KingdomAI();
+        scanner = new TerritoryScanner();
+    }
+
+    @Benchmark
+    public AssignmentPlan planDefense() {
+        AssignmentPlan plan = new AssignmentPlan(battlefield);
+        ai.planDefense(battlefield, plan);
+        return plan;
+    }
+
+    @Benchmark
+    public AssignmentPlan planThreatResponse() {
+        AssignmentPlan plan = new AssignmentPlan(battlefield);
+        scanner.planThreatResponse(battlefield, plan);
+        return plan;
+    }
+
+    /**
+     * Полный цикл планирования, как в ThreatPlanner.submit
+     */
+    @Benchmark
+    public AssignmentPlan fullPlan() {
+        AssignmentPlan plan = new AssignmentPlan(battlefield);
+        ai.planDefense(battlefield, plan);
+        scanner.planThreatResponse(battlefield, plan);
+        return plan;
+    }
+}
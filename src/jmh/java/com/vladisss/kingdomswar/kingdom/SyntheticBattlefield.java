@@ -0,0 +1,195 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * СИНТЕТИЧЕСКОЕ ПОЛЕ БОЯ ДЛЯ БЕНЧМАРКОВ
+ *
+ * Случайные воины и угрозы вокруг замка в (0, 64, 0), без мира и сущностей.
+ * Зоны угроз считаются тем же ThreatSnapshot.classify, угрозы отсортированы
+ * по расстоянию до замка - как в BattlefieldSnapshot.
+ */
+public final class SyntheticBattlefield implements KingdomWorldView {
+    private static final double CASTLE_Y = 64;
+
+    /**
+     * Где появляются угрозы
+     */
+    public enum Scenario {
+        TERRITORY,  // По всей территории - MEDIUM/LOW, умное распределение
+        CASTLE      // Прорыв к замку - CRITICAL, все войска к замку
+    }
+
+    private final int radius;
+    private final int guardCount;
+    private final int troopCount;
+    private final double[] troopX, troopY, troopZ;
+    private final boolean[] troopBusy;
+
+    private final int threatCount;
+    private final double[] threatX, threatY, threatZ;
+    private final int[] threatZones;
+
+    public SyntheticBattlefield(int troops, int threats, int radius, Scenario scenario, long seed) {
+        Random random = new Random(seed);
+        this.radius = radius;
+
+        // 20% стражников у замка, остальные - рыцари по территории (как KNIGHT_RATIO)
+        this.troopCount = troops;
+        this.guardCount = troops / 5;
+        this.troopX = new double[troops];
+        this.troopY = new double[troops];
+        this.troopZ = new double[troops];
+        this.troopBusy = new boolean[troops];
+        for (int i = 0; i < troops; i++) {
+            double distance = i < guardCount ? 5 + random.nextDouble() * 15 : random.nextDouble() * radius;
+            double angle = random.nextDouble() * Math.PI * 2;
+            troopX[i] = Math.cos(angle) * distance;
+            troopY[i] = CASTLE_Y + random.nextInt(5) - 2;
+            troopZ[i] = Math.sin(angle) * distance;
+            troopBusy[i] = random.nextInt(4) == 0;
+        }
+
+        // Угрозы: сортировка по расстоянию до замка
+        double[][] points = new double[threats][];
+        for (int i = 0; i < threats; i++) {
+            double maxDistance = scenario == Scenario.CASTLE ? ThreatSnapshot.CRITICAL_THREAT_RADIUS : radius;
+            double distance = random.nextDouble() * maxDistance;
+            double angle = random.nextDouble() * Math.PI * 2;
+            points[i] = new double[]{
+                    Math.cos(angle) * distance,
+                    CASTLE_Y + random.nextInt(31) - 15,
+                    Math.sin(angle) * distance
+            };
+        }
+        Arrays.sort(points, (a, b) -> Double.compare(distanceSqr(a), distanceSqr(b)));
+
+        this.threatCount = threats;
+        this.threatX = new double[threats];
+        this.threatY = new double[threats];
+        this.threatZ = new double[threats];
+        this.threatZones = new int[threats];
+        for (int i = 0; i < threats; i++) {
+            threatX[i] = points[i][0];
+            threatY[i] = points[i][1];
+            threatZ[i] = points[i][2];
+
+            int zones = ThreatSnapshot.classify(threatX[i], threatY[i], threatZ[i], true, 0, CASTLE_Y, 0);
+            if ((zones & ThreatSnapshot.IN_SURFACE_BAND) != 0 && random.nextBoolean()) {
+                zones |= BattlefieldSnapshot.ON_SURFACE;
+            }
+            threatZones[i] = zones;
+        }
+    }
+
+    private static double distanceSqr(double[] point) {
+        double dy = point[1] - CASTLE_Y;
+        return point[0] * point[0] + dy * dy + point[2] * point[2];
+    }
+
+    @Override
+    public String getKingdomName() {
+        return "Benchmark";
+    }
+
+    @Override
+    public double getCastleX() {
+        return 0;
+    }
+
+    @Override
+    public double getCastleY() {
+        return CASTLE_Y;
+    }
+
+    @Override
+    public double getCastleZ() {
+        return 0;
+    }
+
+    @Override
+    public int getRadius() {
+        return radius;
+    }
+
+    @Override
+    public long getGameTime() {
+        return 0;
+    }
+
+    @Override
+    public int getTroopCount() {
+        return troopCount;
+    }
+
+    @Override
+    public int getGuardCount() {
+        return guardCount;
+    }
+
+    @Override
+    public int getTroopId(int troop) {
+        return troop;
+    }
+
+    @Override
+    public double getTroopX(int troop) {
+        return troopX[troop];
+    }
+
+    @Override
+    public double getTroopY(int troop) {
+        return troopY[troop];
+    }
+
+    @Override
+    public double getTroopZ(int troop) {
+        return troopZ[troop];
+    }
+
+    @Override
+    public float getTroopHealth(int troop) {
+        return 20.0f;
+    }
+
+    @Override
+    public boolean isTroopBusy(int troop) {
+        return troopBusy[troop];
+    }
+
+    @Override
+    public int getThreatCount() {
+        return threatCount;
+    }
+
+    @Override
+    public int getThreatId(int threat) {
+        return 100_000 + threat;
+    }
+
+    @Override
+    public double getThreatX(int threat) {
+        return threatX[threat];
+    }
+
+    @Override
+    public double getThreatY(int threat) {
+        return threatY[threat];
+    }
+
+    @Override
+    public double getThreatZ(int threat) {
+        return threatZ[threat];
+    }
+
+    @Override
+    public float getThreatHealth(int threat) {
+        return 20.0f;
+    }
+
+    @Override
+    public boolean isThreatIn(int threat, int zone) {
+        return (threatZones[threat] & zone) != 0;
+    }
+}
@@ -10,13 +10,18 @@ import com.vladisss.kingdomswar.kingdom.KingdomManager;
 import com.vladisss.kingdomswar.kingdom.KingdomTerritory;
 import com.vladisss.kingdomswar.registry.ModEntities;
 import com.vladisss.kingdomswar.registry.ModItems;
+import com.vladisss.kingdomswar.structure.CastleBlueprints;
+import com.vladisss.kingdomswar.structure.CastleConstruction;
 import net.minecraft.client.renderer.entity.EntityRenderers;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.packs.resources.ResourceManagerReloadListener;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.AddReloadListenerEvent;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.entity.EntityAttributeCreationEvent;
 import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
@@ -63,9 +68,22 @@ public class KingdomsWarMod {
     public void onServerStarting(ServerStartingEvent event) {
         for (ServerLevel level : event.getServer().getAllLevels()) {
             KingdomManager.loadKingdoms(level);
+            CastleConstruction.load(level);
         }
     }
 
+    @SubscribeEvent
+    public void onServerStopped(ServerStoppedEvent event) {
+        CastleBlueprints.clear();
+        CastleConstruction.clear();
+    }
+
+    // Шаблон замка лежит в датапаке - после /reload чертеж собираем заново
+    @SubscribeEvent
+    public void onAddReloadListener(AddReloadListenerEvent event) {
+        event.addListener((ResourceManagerReloadListener) resourceManager -> CastleBlueprints.clear());
+    }
+
     @SubscribeEvent
     public void onRegisterCommands(RegisterCommandsEvent event) {
         SpawnGuardCommand.register(event.getDispatcher());
@@ -78,8 +96,8 @@ public class KingdomsWarMod {
     public void onServerTick(TickEvent.ServerTickEvent event) {
         if (event.phase == TickEvent.Phase.END) {
             for (ServerLevel level : event.getServer().getAllLevels()) {
-                KingdomTerritory kingdom = KingdomManager.getKingdom(level);
-                if (kingdom != null) {
+                CastleConstruction.tick(level);
+                for (KingdomTerritory kingdom : KingdomManager.getKingdoms(level)) {
                     kingdom.tick(level);
                 }
             }
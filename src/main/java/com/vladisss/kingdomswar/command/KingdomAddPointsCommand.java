@@ -2,10 +2,12 @@ package com.vladisss.kingdomswar.command;
 
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.vladisss.kingdomswar.kingdom.ActivityLog;
 import com.vladisss.kingdomswar.kingdom.KingdomManager;
 import com.vladisss.kingdomswar.kingdom.KingdomTerritory;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerLevel;
 
@@ -19,14 +21,14 @@ public class KingdomAddPointsCommand {
                             ServerLevel level = source.getLevel();
                             int points = IntegerArgumentType.getInteger(context, "points");
 
-                            KingdomTerritory kingdom = KingdomManager.getKingdom(level);
+                            KingdomTerritory kingdom = KingdomManager.getNearestKingdom(level, BlockPos.containing(source.getPosition()));
 
                             if (kingdom == null) {
                                 source.sendFailure(Component.literal("В этом измерении нет королевства"));
                                 return 0;
                             }
 
-                            kingdom.addPoints(points, "команда администратора");
+                            kingdom.addPoints(points, ActivityLog.Type.ADMIN_POINTS);
 
                             source.sendSuccess(() -> Component.literal(
                                     "§a+" + points + " очков\n" +
@@ -5,6 +5,7 @@ import com.vladisss.kingdomswar.kingdom.KingdomManager;
 import com.vladisss.kingdomswar.kingdom.KingdomTerritory;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerLevel;
 
@@ -16,7 +17,7 @@ public class KingdomExpandCommand {
                     CommandSourceStack source = context.getSource();
                     ServerLevel level = source.getLevel();
 
-                    KingdomTerritory kingdom = KingdomManager.getKingdom(level);
+                    KingdomTerritory kingdom = KingdomManager.getNearestKingdom(level, BlockPos.containing(source.getPosition()));
 
                     if (kingdom == null) {
                         source.sendFailure(Component.literal("В этом измерении нет королевства"));
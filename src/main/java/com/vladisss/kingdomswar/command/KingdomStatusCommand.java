@@ -5,6 +5,7 @@ import com.vladisss.kingdomswar.kingdom.KingdomManager;
 import com.vladisss.kingdomswar.kingdom.KingdomTerritory;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerLevel;
 
@@ -15,7 +16,7 @@ public class KingdomStatusCommand {
                 .executes(context -> {
                     CommandSourceStack source = context.getSource();
                     ServerLevel level = source.getLevel();
-                    KingdomTerritory kingdom = KingdomManager.getKingdom(level);
+                    KingdomTerritory kingdom = KingdomManager.getNearestKingdom(level, BlockPos.containing(source.getPosition()));
 
                     if (kingdom == null) {
                         source.sendFailure(Component.literal("§c[Королевство] Не найдено!"));
@@ -3,24 +3,34 @@ package com.vladisss.kingdomswar.command;
 import com.mojang.brigadier.CommandDispatcher;
 import com.vladisss.kingdomswar.entity.GuardEntity;
 import com.vladisss.kingdomswar.entity.KnightEntity;
+import com.vladisss.kingdomswar.kingdom.ActivityLog;
 import com.vladisss.kingdomswar.kingdom.KingdomManager;
 import com.vladisss.kingdomswar.kingdom.KingdomTerritory;
 import com.vladisss.kingdomswar.registry.ModEntities;
+import com.vladisss.kingdomswar.structure.CastleBlueprint;
+import com.vladisss.kingdomswar.structure.CastleBlueprints;
+import com.vladisss.kingdomswar.structure.CastleConstruction;
+import com.vladisss.kingdomswar.structure.CastleConstructionJob;
 import com.vladisss.kingdomswar.structure.CastleStructure;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 public class SpawnCastleCommand {
     private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
 
+    // Площадка строящегося замка (как стартовый радиус территории)
+    private static final int CONSTRUCTION_SITE_RADIUS = 50;
+
     public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
         dispatcher.register(Commands.literal("spawncastle")
                 .requires(source -> source.hasPermission(2))
@@ -28,67 +38,93 @@ public class SpawnCastleCommand {
                     CommandSourceStack source = context.getSource();
                     ServerLevel level = source.getLevel();
 
-                    if (KingdomManager.getKingdom(level) != null) {
-                        source.sendFailure(Component.literal("В этом измерении уже есть королевство!"));
+                    BlockPos pos = BlockPos.containing(source.getPosition());
+                    KingdomTerritory existing = KingdomManager.getKingdomAt(level, pos);
+                    if (existing != null) {
+                        source.sendFailure(Component.literal("Здесь уже территория королевства " + existing.getName() + "!"));
                         return 0;
                     }
 
-                    BlockPos pos = BlockPos.containing(source.getPosition());
+                    // ✅ Замок уже строится - показываем прогресс
+                    CastleConstructionJob building = CastleConstruction.getJobNear(level, pos, CONSTRUCTION_SITE_RADIUS);
+                    if (building != null) {
+                        CastleStructure.Phase phase = building.getPhase();
+                        source.sendSuccess(() -> Component.literal(
+                                "§eЗамок в " + building.getCenter().toShortString() + " строится: §f" +
+                                        building.getProgressPercent() + "%" +
+                                        (phase != null ? " §7(этап: " + phase + ")" : "")
+                        ), false);
+                        return 1;
+                    }
+
                     BlockPos castlePos = new BlockPos(pos.getX(),
                             level.getHeight(net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE_WG,
                                     pos.getX(), pos.getZ()),
                             pos.getZ());
 
-                    source.sendSuccess(() -> Component.literal("§eСтроим замок..."), true);
+                    source.sendSuccess(() -> Component.literal("§eСтроим замок... §7(прогресс - повторите /spawncastle)"), true);
                     LOGGER.info("[Kingdom] Начинается строительство замка в {}", castlePos.toShortString());
 
-                    // Генерируем замок
-                    CastleStructure.generate(level, castlePos);
-
-                    // Создаем территорию
-                    KingdomTerritory kingdom = new KingdomTerritory(castlePos, "Yellow Kingdom");
-
-                    // ✅ СТАРТОВЫЙ КАПИТАЛ 300 ОЧКОВ
-                    kingdom.addPoints(300, "Стартовый капитал (резерв на ЧС)");
-
-                    KingdomManager.registerKingdom(level, kingdom);
-
-                    // ✅ СПАВНИМ НАЧАЛЬНУЮ ОХРАНУ
-                    spawnInitialGuards(level, castlePos);
-
-                    source.sendSuccess(() -> Component.literal(
-                            "§6═══════════════════════════\n" +
-                                    "§e§lЖелтое Королевство основано!\n" +
-                                    "§6═══════════════════════════\n" +
-                                    "§7Замок: §f" + castlePos.toShortString() + "\n" +
-                                    "§7Территория: §e" + kingdom.getRadius() + " §7блоков\n" +
-                                    "§7Контроль: §e" + kingdom.getControlledChunksCount() + " §7чанков\n" +
-                                    "§7Начальная охрана: §a13 воинов\n" +
-                                    "§8 - 2 у ворот\n" +
-                                    "§8 - 3 внутри замка\n" +
-                                    "§8 - 4 патрульных\n" +
-                                    "§8 - 4 рыцаря\n" +
-                                    "§6Стартовый капитал: §e300 очков §7(резерв на ЧС)"
-                    ), true);
-
-                    // ✅ Устанавливаем начальные флаги на границе
-                    kingdom.placeBorderFlags(level);
+                    // ✅ Замок строится по частям за несколько тиков,
+                    // королевство основывается по завершении (onCastleBuilt)
+                    ServerPlayer player = source.getPlayer();
+                    CastleBlueprint blueprint = CastleBlueprints.get(level.getServer());
+                    CastleConstruction.start(level, new CastleConstructionJob(
+                            castlePos, player != null ? player.getUUID() : null, level.getGameTime(),
+                            blueprint.getReach()));
 
                     return 1;
                 })
         );
     }
 
+    /**
+     * Замок достроен - основываем королевство и ставим охрану
+     */
+    public static void onCastleBuilt(ServerLevel level, CastleConstructionJob job) {
+        BlockPos castlePos = job.getCenter();
+
+        // Создаем территорию
+        KingdomTerritory kingdom = new KingdomTerritory(castlePos, "Yellow Kingdom");
+
+        // ✅ СТАРТОВЫЙ КАПИТАЛ 300 ОЧКОВ
+        kingdom.addPoints(300, ActivityLog.Type.STARTING_POINTS);
+
+        KingdomManager.registerKingdom(level, kingdom);
+
+        // ✅ СПАВНИМ НАЧАЛЬНУЮ ОХРАНУ
+        spawnInitialGuards(level, kingdom, castlePos);
+
+        CastleConstruction.notifyOwner(level, job, Component.literal(
+                "§6═══════════════════════════\n" +
+                        "§e§lЖелтое Королевство основано!\n" +
+                        "§6═══════════════════════════\n" +
+                        "§7Замок: §f" + castlePos.toShortString() + "\n" +
+                        "§7Территория: §e" + kingdom.getRadius() + " §7блоков\n" +
+                        "§7Контроль: §e" + kingdom.getControlledChunksCount() + " §7чанков\n" +
+                        "§7Начальная охрана: §a13 воинов\n" +
+                        "§8 - 2 у ворот\n" +
+                        "§8 - 3 внутри замка\n" +
+                        "§8 - 4 патрульных\n" +
+                        "§8 - 4 рыцаря\n" +
+                        "§6Стартовый капитал: §e300 очков §7(резерв на ЧС)"
+        ));
+
+        // ✅ Устанавливаем начальные флаги на границе
+        kingdom.placeBorderFlags(level);
+    }
+
     // ✅ ЕДИНСТВЕННЫЙ правильный метод spawnInitialGuards
-    private static void spawnInitialGuards(ServerLevel level, BlockPos castleCenter) {
+    private static void spawnInitialGuards(ServerLevel level, KingdomTerritory kingdom, BlockPos castleCenter) {
+        UUID kingdomId = kingdom.getId();
         LOGGER.info("[Kingdom] Спавн начальных стражников...");
         int castleSize = 15;
 
         // ✅ Ворота - 2 стражника
         BlockPos gatePos = castleCenter.offset(0, 0, -castleSize - 2);
         int gateY = castleCenter.getY() + 1;
-        spawnGateGuard(level, new BlockPos(gatePos.getX() - 2, gateY, gatePos.getZ()));
-        spawnGateGuard(level, new BlockPos(gatePos.getX() + 2, gateY, gatePos.getZ()));
+        spawnGateGuard(level, kingdomId, new BlockPos(gatePos.getX() - 2, gateY, gatePos.getZ()));
+        spawnGateGuard(level, kingdomId, new BlockPos(gatePos.getX() + 2, gateY, gatePos.getZ()));
         LOGGER.info("[Kingdom] Спавн 2 стражников у ворот");
 
         // ✅ 3 стражника ВНУТРИ замка (разбросанно)
@@ -106,6 +142,7 @@ public class SpawnCastleCommand {
                 guard.finalizeSpawn(level, level.getCurrentDifficultyAt(pos),
                         net.minecraft.world.entity.MobSpawnType.COMMAND, null, null);
                 guard.setPersistenceRequired();
+                guard.setKingdomId(kingdomId);
                 level.addFreshEntity(guard);
             }
         }
@@ -121,7 +158,7 @@ public class SpawnCastleCommand {
                     castleCenter.getY() + 1,
                     spawnPos.getZ()
             );
-            spawnPatrolGuard(level, adjustedPos, guardPatrolPoints);
+            spawnPatrolGuard(level, kingdomId, adjustedPos, guardPatrolPoints);
         }
         LOGGER.info("[Kingdom] Спавн 4 патрульных стражников");
 
@@ -136,13 +173,13 @@ public class SpawnCastleCommand {
                     spawnPos.getZ()
             );
             BlockPos adjustedPos = new BlockPos(spawnPos.getX(), groundY, spawnPos.getZ());
-            spawnPatrolKnight(level, adjustedPos, knightPatrolPoints);
+            spawnPatrolKnight(level, kingdomId, adjustedPos, knightPatrolPoints);
         }
         LOGGER.info("[Kingdom] Спавн 4 рыцарей");
         LOGGER.info("[Kingdom] ✅ Всего создано 13 воинов!");
     }
 
-    private static void spawnGateGuard(ServerLevel level, BlockPos pos) {
+    private static void spawnGateGuard(ServerLevel level, UUID kingdomId, BlockPos pos) {
         GuardEntity guard = ModEntities.GUARD.get().create(level);
         if (guard != null) {
             guard.moveTo(pos.getX() + 0.5, pos.getY(), pos.getZ() + 0.5, 180.0F, 0.0F);
@@ -151,11 +188,12 @@ public class SpawnCastleCommand {
             guard.finalizeSpawn(level, level.getCurrentDifficultyAt(pos),
                     net.minecraft.world.entity.MobSpawnType.COMMAND, null, null);
             guard.setPersistenceRequired();
+            guard.setKingdomId(kingdomId);
             level.addFreshEntity(guard);
         }
     }
 
-    private static void spawnPatrolGuard(ServerLevel level, BlockPos pos, List<BlockPos> patrolRoute) {
+    private static void spawnPatrolGuard(ServerLevel level, UUID kingdomId, BlockPos pos, List<BlockPos> patrolRoute) {
         GuardEntity guard = ModEntities.GUARD.get().create(level);
         if (guard != null) {
             guard.moveTo(pos.getX() + 0.5, pos.getY(), pos.getZ() + 0.5, 0.0F, 0.0F);
@@ -164,11 +202,12 @@ public class SpawnCastleCommand {
             guard.finalizeSpawn(level, level.getCurrentDifficultyAt(pos),
                     net.minecraft.world.entity.MobSpawnType.COMMAND, null, null);
             guard.setPersistenceRequired();
+            guard.setKingdomId(kingdomId);
             level.addFreshEntity(guard);
         }
     }
 
-    private static void spawnPatrolKnight(ServerLevel level, BlockPos pos, List<BlockPos> patrolRoute) {
+    private static void spawnPatrolKnight(ServerLevel level, UUID kingdomId, BlockPos pos, List<BlockPos> patrolRoute) {
         KnightEntity knight = ModEntities.KNIGHT.get().create(level);
         if (knight != null) {
             knight.moveTo(pos.getX() + 0.5, pos.getY(), pos.getZ() + 0.5, 0.0F, 0.0F);
@@ -177,6 +216,7 @@ public class SpawnCastleCommand {
             knight.finalizeSpawn(level, level.getCurrentDifficultyAt(pos),
                     net.minecraft.world.entity.MobSpawnType.COMMAND, null, null);
             knight.setPersistenceRequired();
+            knight.setKingdomId(kingdomId);
             level.addFreshEntity(knight);
         }
     }
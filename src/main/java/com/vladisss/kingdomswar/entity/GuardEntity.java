@@ -1,5 +1,9 @@
 package com.vladisss.kingdomswar.entity;
 
+import com.vladisss.kingdomswar.kingdom.FlowFollower;
+import com.vladisss.kingdomswar.kingdom.KingdomManager;
+import com.vladisss.kingdomswar.kingdom.KingdomTerritory;
+import com.vladisss.kingdomswar.kingdom.SurfaceCache;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.syncher.EntityDataAccessor;
@@ -7,6 +11,7 @@ import net.minecraft.network.syncher.EntityDataSerializers;
 import net.minecraft.network.syncher.SynchedEntityData;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.DifficultyInstance;
+import net.minecraft.world.damagesource.DamageSource;
 import net.minecraft.world.entity.*;
 import net.minecraft.world.entity.ai.attributes.AttributeSupplier;
 import net.minecraft.world.entity.ai.attributes.Attributes;
@@ -22,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.UUID;
 
 /**
  * СТРАЖНИК - ЗАЩИТНИК ЗАМКА
@@ -32,18 +38,26 @@ import javax.annotation.Nullable;
  * - Атакует цели, назначенные KingdomAI
  * - Возвращается на пост после боя
  */
-public class GuardEntity extends PathfinderMob {
+public class GuardEntity extends PathfinderMob implements KingdomTroop {
     private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
     
     private static final EntityDataAccessor<Integer> VARIANT =
             SynchedEntityData.defineId(GuardEntity.class, EntityDataSerializers.INT);
 
+    // Королевство-владелец (null - воин из старого сохранения, см. KingdomManager.getOwner)
+    @Nullable
+    private UUID kingdomId;
+
     // Позиция поста стражника
     private BlockPos guardPost;
     
     // МАКСИМАЛЬНОЕ РАССТОЯНИЕ ОТ ПОСТА
     private static final int MAX_DISTANCE_FROM_POST = 5;
 
+    // ✅ Дальше этого от замка домой идем по полю потоков, до поста - навигацией
+    private static final int FLOW_RETURN_DISTANCE = 16;
+    private static final int FLOW_STOP_STEPS = 8;
+
     /**
      * ✅ Проверка что цель валидна (не под землёй, в зоне поста)
      /**
@@ -64,29 +78,21 @@ public class GuardEntity extends PathfinderMob {
             }
         }
 
-        // ✅ НОВАЯ ПРОВЕРКА: цель должна быть НА ПОВЕРХНОСТИ
-        BlockPos targetPos = target.blockPosition();
-        BlockPos belowTarget = targetPos.below();
+        // ✅ НОВАЯ ПРОВЕРКА: цель должна быть НА ПОВЕРХНОСТИ (общий кэш со сканером территории)
+        if (target.level() instanceof ServerLevel level) {
+            SurfaceCache surface = SurfaceCache.get(level);
+            BlockPos targetPos = target.blockPosition();
 
-        // Проверяем что под целью есть твердый блок
-        boolean hasGroundBelow = !target.level().getBlockState(belowTarget).isAir() ||
-                !target.level().getBlockState(belowTarget.below()).isAir();
-
-        if (!hasGroundBelow) {
-            // Цель летает или под землёй - игнорируем
-            return false;
-        }
-
-        // Проверяем что цель НЕ под землёй (есть небо над головой)
-        int surfaceY = target.level().getHeight(
-                net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE,
-                targetPos.getX(),
-                targetPos.getZ()
-        );
+            // Проверяем что под целью есть твердый блок
+            if (!surface.hasGround(level, targetPos)) {
+                // Цель летает или под землёй - игнорируем
+                return false;
+            }
 
-        // Цель должна быть НЕ НИЖЕ поверхности минус 5 блоков
-        if (targetPos.getY() < surfaceY - 5) {
-            return false;
+            // Цель должна быть НЕ НИЖЕ поверхности минус 5 блоков
+            if (surface.getDepthBelowSurface(level, targetPos) > 5) {
+                return false;
+            }
         }
 
         // ✅ Дополнительно: проверка видимости (raycast)
@@ -105,17 +111,36 @@ public class GuardEntity extends PathfinderMob {
     private int stuckTimer = 0;
     private BlockPos lastPos = null;
 
+    // ✅ Режим детализации: праздный воин вдали от игроков думает реже
+    private final TroopLod lod = new TroopLod();
+
+    // ✅ Движение домой по общему полю потоков королевства
+    private final FlowFollower flow = new FlowFollower();
+
     @Override
     public void tick() {
         super.tick();
 
+        if (!level().isClientSide) {
+            lod.update(this, isIdle());
+        }
+
         // ✅ ПРОВЕРКА ЗАСТРЕВАНИЯ: если не двигаемся 100 тиков (5 секунд)
-        if (!level().isClientSide && guardPost != null) {
+        if (!level().isClientSide && guardPost != null && lod.shouldRun(this)) {
             BlockPos currentPos = this.blockPosition();
 
+            if (flow.isActive()) {
+                KingdomTerritory kingdom = KingdomManager.getOwner(level(), this);
+                if (kingdom != null) {
+                    flow.tick(this, kingdom);
+                } else {
+                    flow.stop();
+                }
+            }
+
             // Проверяем двигаемся ли мы
             if (lastPos != null && lastPos.equals(currentPos)) {
-                stuckTimer++;
+                stuckTimer += lod.getInterval();
             } else {
                 stuckTimer = 0;
             }
@@ -148,7 +173,8 @@ public class GuardEntity extends PathfinderMob {
                 // Если цель дальше 50 блоков - отменяем
                 if (targetDistance > 50 * 50) {
                     this.setTarget(null);
-                    this.getNavigation().moveTo(guardPost.getX(), guardPost.getY(), guardPost.getZ(), 1.0D);
+                    this.getNavigation().stop();
+                    returnToPost();
                 }
             } else {
                 // Нет цели - возвращаемся на пост только если далеко
@@ -157,14 +183,64 @@ public class GuardEntity extends PathfinderMob {
                 );
 
                 if (distanceFromPost > 10 * 10) {
-                    this.getNavigation().moveTo(guardPost.getX(), guardPost.getY(), guardPost.getZ(), 1.0D);
+                    returnToPost();
                 }
             }
         }
     }
 
+    /**
+     * Идти на пост: издалека - по полю потоков к замку, вблизи - навигацией к посту.
+     * Пока уже идем (поле или путь навигации) - ничего не пересчитываем
+     */
+    private void returnToPost() {
+        if (flow.isActive() || !this.getNavigation().isDone()) {
+            return;
+        }
+
+        KingdomTerritory kingdom = KingdomManager.getOwner(level(), this);
+        if (kingdom != null) {
+            BlockPos castleCenter = kingdom.getCastleCenter();
+            if (this.distanceToSqr(castleCenter.getX(), castleCenter.getY(), castleCenter.getZ()) > FLOW_RETURN_DISTANCE * FLOW_RETURN_DISTANCE &&
+                    flow.start(this, kingdom, castleCenter, 1.0D, FLOW_STOP_STEPS)) {
+                return;
+            }
+        }
+        this.getNavigation().moveTo(guardPost.getX(), guardPost.getY(), guardPost.getZ(), 1.0D);
+    }
+
+
 
 
+    // Праздный: нет цели, никуда не идет, недавно не получал урон
+    private boolean isIdle() {
+        return this.getTarget() == null &&
+                this.getNavigation().isDone() &&
+                !flow.isActive() &&
+                this.getLastHurtByMob() == null;
+    }
+
+    /**
+     * ✅ В пропущенных LOD-тиках AI (цели, навигация, движение) не выполняется
+     */
+    @Override
+    protected boolean isImmobile() {
+        return super.isImmobile() || (!level().isClientSide && !lod.shouldRun(this));
+    }
+
+    @Override
+    public void setTarget(@Nullable LivingEntity target) {
+        super.setTarget(target);
+        if (target != null) {
+            lod.wake();
+        }
+    }
+
+    @Override
+    public boolean hurt(DamageSource source, float amount) {
+        lod.wake();
+        return super.hurt(source, amount);
+    }
 
     @Override
     protected void defineSynchedData() {
@@ -191,6 +267,22 @@ public class GuardEntity extends PathfinderMob {
         return guardPost;
     }
 
+    @Override
+    @Nullable
+    public UUID getKingdomId() {
+        return kingdomId;
+    }
+
+    @Override
+    public void setKingdomId(@Nullable UUID kingdomId) {
+        this.kingdomId = kingdomId;
+    }
+
+    @Override
+    public FlowFollower getFlowFollower() {
+        return flow;
+    }
+
     @Override
     public SpawnGroupData finalizeSpawn(ServerLevelAccessor level, DifficultyInstance difficulty,
                                         MobSpawnType spawnType, @Nullable SpawnGroupData spawnData,
@@ -204,6 +296,9 @@ public class GuardEntity extends PathfinderMob {
     public void addAdditionalSaveData(CompoundTag compound) {
         super.addAdditionalSaveData(compound);
         compound.putInt("Variant", this.getVariant());
+        if (kingdomId != null) {
+            compound.putUUID("KingdomId", kingdomId);
+        }
         if (guardPost != null) {
             compound.putInt("PostX", guardPost.getX());
             compound.putInt("PostY", guardPost.getY());
@@ -215,6 +310,9 @@ public class GuardEntity extends PathfinderMob {
     public void readAdditionalSaveData(CompoundTag compound) {
         super.readAdditionalSaveData(compound);
         this.setVariant(compound.getInt("Variant"));
+        if (compound.hasUUID("KingdomId")) {
+            this.kingdomId = compound.getUUID("KingdomId");
+        }
         if (compound.contains("PostX")) {
             this.guardPost = new BlockPos(
                 compound.getInt("PostX"),
@@ -305,8 +403,8 @@ public class GuardEntity extends PathfinderMob {
             // Если далеко от поста - идем к нему
             double distance = guard.distanceToSqr(guard.guardPost.getX(), guard.guardPost.getY(), guard.guardPost.getZ());
             if (distance > 4.0) { // Дальше 2 блоков
-                guard.getNavigation().moveTo(guard.guardPost.getX(), guard.guardPost.getY(), guard.guardPost.getZ(), 1.0D);
-            } else {
+                guard.returnToPost();
+            } else if (!guard.flow.isActive()) {
                 // На посту - стоим
                 guard.getNavigation().stop();
 
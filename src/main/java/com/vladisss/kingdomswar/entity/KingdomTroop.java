@@ -0,0 +1,24 @@
+package com.vladisss.kingdomswar.entity;
+
+import com.vladisss.kingdomswar.kingdom.FlowFollower;
+
+import javax.annotation.Nullable;
+import java.util.UUID;
+
+/**
+ * ВОИН КОРОЛЕВСТВА
+ *
+ * Общее для стражника и рыцаря: к какому королевству принадлежит воин.
+ * id королевства сохраняется в NBT сущности. У воинов из старых сохранений
+ * (и созданных командами) его нет - владельца определяет KingdomManager.getOwner.
+ * Дальние переходы (домой, в сектор) воин делает по общему полю потоков королевства.
+ */
+public interface KingdomTroop {
+
+    @Nullable
+    UUID getKingdomId();
+
+    void setKingdomId(@Nullable UUID kingdomId);
+
+    FlowFollower getFlowFollower();
+}
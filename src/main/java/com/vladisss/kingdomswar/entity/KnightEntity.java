@@ -1,5 +1,9 @@
 package com.vladisss.kingdomswar.entity;
 
+import com.vladisss.kingdomswar.kingdom.FlowFollower;
+import com.vladisss.kingdomswar.kingdom.KingdomManager;
+import com.vladisss.kingdomswar.kingdom.KingdomTerritory;
+import com.vladisss.kingdomswar.kingdom.SurfaceCache;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.syncher.EntityDataAccessor;
@@ -7,6 +11,7 @@ import net.minecraft.network.syncher.EntityDataSerializers;
 import net.minecraft.network.syncher.SynchedEntityData;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.DifficultyInstance;
+import net.minecraft.world.damagesource.DamageSource;
 import net.minecraft.world.entity.*;
 import net.minecraft.world.entity.ai.attributes.AttributeSupplier;
 import net.minecraft.world.entity.ai.attributes.Attributes;
@@ -22,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.UUID;
 
 /**
  * РЫЦАРЬ - ПАТРУЛЬНЫЙ ВОИН
@@ -32,12 +38,16 @@ import javax.annotation.Nullable;
  * - Атакует цели, назначенные KingdomAI
  * - Позиция патруля управляется KingdomAI
  */
-public class KnightEntity extends PathfinderMob {
+public class KnightEntity extends PathfinderMob implements KingdomTroop {
     private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
     
     private static final EntityDataAccessor<Integer> VARIANT = 
         SynchedEntityData.defineId(KnightEntity.class, EntityDataSerializers.INT);
 
+    // Королевство-владелец (null - воин из старого сохранения, см. KingdomManager.getOwner)
+    @Nullable
+    private UUID kingdomId;
+
     // Позиция патруля (устанавливается KingdomAI)
     private BlockPos patrolCenter;
     private int patrolRadius = 15; // Радиус патруля
@@ -65,27 +75,20 @@ public class KnightEntity extends PathfinderMob {
             }
         }
 
-        // ✅ НОВАЯ ПРОВЕРКА: цель должна быть НА ПОВЕРХНОСТИ
-        BlockPos targetPos = target.blockPosition();
-        BlockPos belowTarget = targetPos.below();
-
-        // Проверяем что под целью есть твердый блок
-        boolean hasGroundBelow = !target.level().getBlockState(belowTarget).isAir() ||
-                !target.level().getBlockState(belowTarget.below()).isAir();
+        // ✅ НОВАЯ ПРОВЕРКА: цель должна быть НА ПОВЕРХНОСТИ (общий кэш со сканером территории)
+        if (target.level() instanceof ServerLevel level) {
+            SurfaceCache surface = SurfaceCache.get(level);
+            BlockPos targetPos = target.blockPosition();
 
-        if (!hasGroundBelow) {
-            return false;
-        }
-
-        // Проверяем что цель НЕ под землёй
-        int surfaceY = target.level().getHeight(
-                net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE,
-                targetPos.getX(),
-                targetPos.getZ()
-        );
+            // Проверяем что под целью есть твердый блок
+            if (!surface.hasGround(level, targetPos)) {
+                return false;
+            }
 
-        if (targetPos.getY() < surfaceY - 5) {
-            return false;
+            // Цель должна быть НЕ НИЖЕ поверхности минус 5 блоков
+            if (surface.getDepthBelowSurface(level, targetPos) > 5) {
+                return false;
+            }
         }
 
         // ✅ Проверка видимости
@@ -105,16 +108,35 @@ public class KnightEntity extends PathfinderMob {
     private int stuckTimer = 0;
     private BlockPos lastPos = null;
 
+    // ✅ Режим детализации: праздный воин вдали от игроков думает реже
+    private final TroopLod lod = new TroopLod();
+
+    // ✅ Возврат в сектор по общему полю потоков королевства
+    private final FlowFollower flow = new FlowFollower();
+
     @Override
     public void tick() {
         super.tick();
 
+        if (!level().isClientSide) {
+            lod.update(this, isIdle());
+        }
+
         // ✅ ПРОВЕРКА ЗАСТРЕВАНИЯ
-        if (!level().isClientSide && patrolCenter != null) {
+        if (!level().isClientSide && patrolCenter != null && lod.shouldRun(this)) {
             BlockPos currentPos = this.blockPosition();
 
+            if (flow.isActive()) {
+                KingdomTerritory kingdom = KingdomManager.getOwner(level(), this);
+                if (kingdom != null) {
+                    flow.tick(this, kingdom);
+                } else {
+                    flow.stop();
+                }
+            }
+
             if (lastPos != null && lastPos.equals(currentPos)) {
-                stuckTimer++;
+                stuckTimer += lod.getInterval();
             } else {
                 stuckTimer = 0;
             }
@@ -154,16 +176,62 @@ public class KnightEntity extends PathfinderMob {
 
                 int maxDist = patrolRadius + 30;
                 if (distanceFromPatrol > maxDist * maxDist) {
-                    this.getNavigation().moveTo(
-                            patrolCenter.getX(), patrolCenter.getY(), patrolCenter.getZ(), 1.0D
-                    );
+                    returnToPatrol();
                 }
             }
         }
     }
 
+    /**
+     * Вернуться в сектор: по полю потоков к центру патруля, если оно есть, иначе навигацией.
+     * Пока уже идем (поле или путь навигации) - ничего не пересчитываем
+     */
+    private void returnToPatrol() {
+        if (flow.isActive() || !this.getNavigation().isDone()) {
+            return;
+        }
+
+        KingdomTerritory kingdom = KingdomManager.getOwner(level(), this);
+        if (kingdom != null && flow.start(this, kingdom, patrolCenter, 1.0D, patrolRadius / 2)) {
+            return;
+        }
+        this.getNavigation().moveTo(
+                patrolCenter.getX(), patrolCenter.getY(), patrolCenter.getZ(), 1.0D
+        );
+    }
+
 
 
+    // Праздный: нет цели, никуда не идет, недавно не получал урон
+    private boolean isIdle() {
+        return this.getTarget() == null &&
+                this.getNavigation().isDone() &&
+                !flow.isActive() &&
+                this.getLastHurtByMob() == null;
+    }
+
+    /**
+     * ✅ В пропущенных LOD-тиках AI (цели, навигация, движение) не выполняется
+     */
+    @Override
+    protected boolean isImmobile() {
+        return super.isImmobile() || (!level().isClientSide && !lod.shouldRun(this));
+    }
+
+    @Override
+    public void setTarget(@Nullable LivingEntity target) {
+        super.setTarget(target);
+        if (target != null) {
+            lod.wake();
+        }
+    }
+
+    @Override
+    public boolean hurt(DamageSource source, float amount) {
+        lod.wake();
+        return super.hurt(source, amount);
+    }
+
     @Override
     protected void defineSynchedData() {
         super.defineSynchedData();
@@ -200,6 +268,22 @@ public class KnightEntity extends PathfinderMob {
         return patrolRadius;
     }
 
+    @Override
+    @Nullable
+    public UUID getKingdomId() {
+        return kingdomId;
+    }
+
+    @Override
+    public void setKingdomId(@Nullable UUID kingdomId) {
+        this.kingdomId = kingdomId;
+    }
+
+    @Override
+    public FlowFollower getFlowFollower() {
+        return flow;
+    }
+
     @Override
     public SpawnGroupData finalizeSpawn(ServerLevelAccessor level, DifficultyInstance difficulty,
                                         MobSpawnType spawnType, @Nullable SpawnGroupData spawnData,
@@ -213,6 +297,9 @@ public class KnightEntity extends PathfinderMob {
     public void addAdditionalSaveData(CompoundTag compound) {
         super.addAdditionalSaveData(compound);
         compound.putInt("Variant", this.getVariant());
+        if (kingdomId != null) {
+            compound.putUUID("KingdomId", kingdomId);
+        }
         if (patrolCenter != null) {
             compound.putInt("PatrolX", patrolCenter.getX());
             compound.putInt("PatrolY", patrolCenter.getY());
@@ -225,6 +312,9 @@ public class KnightEntity extends PathfinderMob {
     public void readAdditionalSaveData(CompoundTag compound) {
         super.readAdditionalSaveData(compound);
         this.setVariant(compound.getInt("Variant"));
+        if (compound.hasUUID("KingdomId")) {
+            this.kingdomId = compound.getUUID("KingdomId");
+        }
         if (compound.contains("PatrolX")) {
             this.patrolCenter = new BlockPos(
                     compound.getInt("PatrolX"),
@@ -292,7 +382,7 @@ public class KnightEntity extends PathfinderMob {
                 return false;
             }
 
-            if (knight.patrolCenter == null) {
+            if (knight.patrolCenter == null || knight.flow.isActive()) {
                 return false;
             }
 
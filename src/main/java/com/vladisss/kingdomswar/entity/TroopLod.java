@@ -0,0 +1,79 @@
+package com.vladisss.kingdomswar.entity;
+
+import net.minecraft.util.Mth;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.entity.player.Player;
+
+/**
+ * УРОВЕНЬ ДЕТАЛИЗАЦИИ (LOD) ВОИНА
+ *
+ * Праздный воин (без цели, стоит на месте, его не били) далеко от игроков
+ * выполняет свою логику тика и AI (цели, навигация) не каждый тик, а раз в 4-20 тиков -
+ * чем дальше ближайший игрок, тем реже. Физика и анимации тикают как обычно.
+ * Урон или новая цель сразу возвращают полный режим.
+ */
+public class TroopLod {
+    // ✅ Ближе этого расстояния до игрока - полный режим
+    private static final double FULL_DETAIL_DISTANCE = 24.0;
+    // Дальше этого (или игроков нет) - самый редкий режим
+    private static final double MIN_DETAIL_DISTANCE = 128.0;
+
+    private static final int MIN_INTERVAL = 4;
+    private static final int MAX_INTERVAL = 20;
+
+    // Пересчет режима раз в секунду (поиск ближайшего игрока)
+    private static final int REEVALUATE_TICKS = 20;
+
+    private int interval = 1;
+    private int nextEvaluation = 0;
+
+    /**
+     * Обновить режим (каждый тик на сервере, дешево вне пересчета)
+     */
+    public void update(Mob troop, boolean idle) {
+        if (!idle) {
+            interval = 1;
+            return;
+        }
+        if (troop.tickCount < nextEvaluation) {
+            return;
+        }
+        nextEvaluation = troop.tickCount + REEVALUATE_TICKS;
+
+        Player player = troop.level().getNearestPlayer(troop, MIN_DETAIL_DISTANCE);
+        if (player == null) {
+            interval = MAX_INTERVAL;
+            return;
+        }
+
+        double distance = Math.sqrt(troop.distanceToSqr(player));
+        if (distance <= FULL_DETAIL_DISTANCE) {
+            interval = 1;
+        } else {
+            double ratio = (distance - FULL_DETAIL_DISTANCE) / (MIN_DETAIL_DISTANCE - FULL_DETAIL_DISTANCE);
+            interval = Mth.clamp(MIN_INTERVAL + (int) (ratio * (MAX_INTERVAL - MIN_INTERVAL)), MIN_INTERVAL, MAX_INTERVAL);
+        }
+    }
+
+    /**
+     * Выполнять ли логику в этом тике (воины одного режима разнесены по тикам по id)
+     */
+    public boolean shouldRun(Mob troop) {
+        return interval <= 1 || (troop.tickCount + troop.getId()) % interval == 0;
+    }
+
+    /**
+     * Сколько тиков прошло между запусками логики (для счетчиков в тиках)
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Урон или новая цель - сразу полный режим
+     */
+    public void wake() {
+        interval = 1;
+        nextEvaluation = 0;
+    }
+}
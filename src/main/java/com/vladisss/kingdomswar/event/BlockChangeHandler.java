@@ -0,0 +1,46 @@
+package com.vladisss.kingdomswar.event;
+
+import com.vladisss.kingdomswar.kingdom.FlowFields;
+import com.vladisss.kingdomswar.kingdom.SpawnPositionCache;
+import com.vladisss.kingdomswar.kingdom.SurfaceCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraftforge.event.level.BlockEvent;
+import net.minecraftforge.event.level.ChunkEvent;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+/**
+ * ✅ Изменения блоков мира -> сброс кэшей королевства
+ */
+@Mod.EventBusSubscriber(modid = "kingdomswar", bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class BlockChangeHandler {
+
+    @SubscribeEvent
+    public static void onNeighborNotify(BlockEvent.NeighborNotifyEvent event) {
+        if (event.getLevel() instanceof ServerLevel level) {
+            SurfaceCache.onBlockChanged(level, event.getPos());
+            SpawnPositionCache.onBlockChanged(level, event.getPos());
+            FlowFields.onBlockChanged(level, event.getPos());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        // Только готовые чанки на серверном потоке (остальные подберет перестройка кэша)
+        if (event.getLevel() instanceof ServerLevel level &&
+                event.getChunk() instanceof LevelChunk chunk &&
+                level.getServer().isSameThread()) {
+            SpawnPositionCache.onChunkLoaded(level, chunk);
+            FlowFields.onChunkLoaded(level, chunk);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLevelUnload(LevelEvent.Unload event) {
+        if (event.getLevel() instanceof ServerLevel level) {
+            SurfaceCache.onLevelUnload(level);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.vladisss.kingdomswar.event;
+
+import com.vladisss.kingdomswar.kingdom.TerritoryPresenceTracker;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraftforge.event.entity.EntityEvent;
+import net.minecraftforge.event.entity.EntityJoinLevelEvent;
+import net.minecraftforge.event.entity.EntityLeaveLevelEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+/**
+ * ✅ Перемещения игроков между чанками -> вход и выход с территорий королевств
+ *
+ * Территория состоит из чанков, поэтому проверять игрока нужно только при смене чанка
+ * (см. TerritoryPresenceTracker).
+ */
+@Mod.EventBusSubscriber(modid = "kingdomswar", bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class PlayerTerritoryHandler {
+
+    @SubscribeEvent
+    public static void onEnteringSection(EntityEvent.EnteringSection event) {
+        if (!event.didChunkChange() ||
+                !(event.getEntity() instanceof ServerPlayer player) ||
+                !(player.level() instanceof ServerLevel level)) {
+            return;
+        }
+
+        SectionPos pos = event.getNewPos();
+        TerritoryPresenceTracker.onPlayerMoved(level, player, pos.x(), pos.z());
+    }
+
+    @SubscribeEvent
+    public static void onPlayerJoin(EntityJoinLevelEvent event) {
+        // Вход на сервер, возрождение, смена измерения
+        if (!(event.getEntity() instanceof ServerPlayer player) || !(event.getLevel() instanceof ServerLevel level)) {
+            return;
+        }
+
+        ChunkPos pos = player.chunkPosition();
+        TerritoryPresenceTracker.onPlayerMoved(level, player, pos.x, pos.z);
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLeave(EntityLeaveLevelEvent event) {
+        if (!(event.getEntity() instanceof ServerPlayer player) || !(event.getLevel() instanceof ServerLevel level)) {
+            return;
+        }
+
+        TerritoryPresenceTracker.onPlayerLeft(level, player);
+    }
+}
@@ -0,0 +1,59 @@
+package com.vladisss.kingdomswar.event;
+
+import com.vladisss.kingdomswar.kingdom.KingdomManager;
+import com.vladisss.kingdomswar.kingdom.KingdomTerritory;
+import com.vladisss.kingdomswar.kingdom.TroopRegistry;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Mob;
+import net.minecraftforge.event.entity.EntityJoinLevelEvent;
+import net.minecraftforge.event.entity.EntityLeaveLevelEvent;
+import net.minecraftforge.event.entity.living.LivingDeathEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+/**
+ * ✅ Поддержка реестра войск королевства в актуальном состоянии
+ *
+ * LOWEST приоритет: учитываем только события, которые никто не отменил.
+ */
+@Mod.EventBusSubscriber(modid = "kingdomswar", bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class TroopRegistryHandler {
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onEntityJoin(EntityJoinLevelEvent event) {
+        if (!TroopRegistry.isTroop(event.getEntity()) || !(event.getLevel() instanceof ServerLevel level)) {
+            return;
+        }
+
+        KingdomTerritory kingdom = KingdomManager.getOwner(level, (Mob) event.getEntity());
+        if (kingdom != null) {
+            kingdom.getTroops().add((Mob) event.getEntity());
+        }
+    }
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onEntityLeave(EntityLeaveLevelEvent event) {
+        if (!TroopRegistry.isTroop(event.getEntity()) || !(event.getLevel() instanceof ServerLevel level)) {
+            return;
+        }
+
+        KingdomTerritory kingdom = KingdomManager.getOwner(level, (Mob) event.getEntity());
+        if (kingdom != null) {
+            kingdom.getTroops().remove((Mob) event.getEntity());
+        }
+    }
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onTroopDeath(LivingDeathEvent event) {
+        if (!TroopRegistry.isTroop(event.getEntity()) || !(event.getEntity().level() instanceof ServerLevel level)) {
+            return;
+        }
+
+        // Сущность ещё ~20 тиков остаётся в мире (анимация смерти) - убираем сразу
+        KingdomTerritory kingdom = KingdomManager.getOwner(level, (Mob) event.getEntity());
+        if (kingdom != null) {
+            kingdom.getTroops().remove((Mob) event.getEntity());
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.entity.EntityType;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ЖУРНАЛ СОБЫТИЙ КОРОЛЕВСТВА
+ *
+ * Кольцевой буфер фиксированного размера из структурированных записей:
+ * тип, число, второе число, игровое время, необязательная строка (id типа сущности)
+ * и для наград за убийства - до KILL_TYPES пар "тип моба / число убитых".
+ * Запись - несколько присваиваний в массивы, без сборки строк; текст собирается
+ * только при показе. В NBT - упакованные массивы примитивов + таблица строк.
+ */
+public class ActivityLog {
+
+    /**
+     * Тип записи. Порядок не менять - в сохранениях хранится номер
+     */
+    public enum Type {
+        ADMIN_POINTS,       // amount - очки
+        STARTING_POINTS,    // amount - очки
+        TERRITORY_INCOME,   // amount - очки
+        KILL_REWARD,        // amount - очки, count - убито, разбивка по типам - killTypes/killCounts
+        EXPANSION,          // amount - новый радиус, count - прежний
+        RESERVE_HIRED,      // amount - нанято в резерв, count - резерв после найма
+        RESERVE_DEPLOYED,   // amount - вышло из резерва, count - осталось
+        HIRE_PLANNED,       // amount - стражники, count - рыцари
+        HIRE_EMERGENCY,
+        HIRE_REPLENISH,
+        HIRE_MANUAL,
+        RECRUITMENT_CANCELLED, // amount - сколько, detail - тип воина
+        LEGACY              // detail - текст записи из старого сохранения
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    // ✅ Сколько последних записей хранится
+    public static final int CAPACITY = 50;
+
+    private final byte[] types = new byte[CAPACITY];
+    private final int[] amounts = new int[CAPACITY];
+    private final int[] counts = new int[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    private final String[] details = new String[CAPACITY];
+
+    // ✅ Разбивка наград за убийства: KILL_TYPES ячеек на запись (id типа моба и число убитых)
+    public static final int KILL_TYPES = 3;
+    private final String[] killTypes = new String[CAPACITY * KILL_TYPES];
+    private final int[] killCounts = new int[CAPACITY * KILL_TYPES];
+
+    private int head = 0;   // Куда пойдет следующая запись
+    private int size = 0;
+
+    public void add(Type type, int amount, int count, @Nullable String detail, long gameTime) {
+        types[head] = (byte) type.ordinal();
+        amounts[head] = amount;
+        counts[head] = count;
+        times[head] = gameTime;
+        details[head] = detail;
+        Arrays.fill(killTypes, head * KILL_TYPES, (head + 1) * KILL_TYPES, null);
+
+        head = (head + 1) % CAPACITY;
+        if (size < CAPACITY) {
+            size++;
+        }
+    }
+
+    /**
+     * Награда за убийства с разбивкой по типам мобов (первые listed пар, не больше KILL_TYPES)
+     */
+    public void addKills(int points, int kills, String[] typeIds, int[] typeKills, int listed, long gameTime) {
+        int base = head * KILL_TYPES;
+        add(Type.KILL_REWARD, points, kills, null, gameTime);
+        for (int i = 0; i < Math.min(listed, KILL_TYPES); i++) {
+            killTypes[base + i] = typeIds[i];
+            killCounts[base + i] = typeKills[i];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Индекс в массивах для i-й записи от самой старой
+    private int slot(int i) {
+        return Math.floorMod(head - size + i, CAPACITY);
+    }
+
+    public Type getType(int i) {
+        return TYPES[types[slot(i)]];
+    }
+
+    public long getGameTime(int i) {
+        return times[slot(i)];
+    }
+
+    // ==================== ТЕКСТ ====================
+
+    /**
+     * Все записи текстом, от старых к новым
+     */
+    public List<String> format() {
+        List<String> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            lines.add(format(i));
+        }
+        return lines;
+    }
+
+    /**
+     * Последняя запись текстом (для лога сервера)
+     */
+    public String formatLatest() {
+        return size > 0 ? format(size - 1) : "";
+    }
+
+    public String format(int i) {
+        int slot = slot(i);
+        int amount = amounts[slot];
+        int count = counts[slot];
+        String detail = details[slot];
+
+        switch (TYPES[types[slot]]) {
+            case ADMIN_POINTS:
+                return "+" + amount + " очков: команда администратора";
+            case STARTING_POINTS:
+                return "+" + amount + " очков: стартовый капитал (резерв на ЧС)";
+            case TERRITORY_INCOME:
+                return "+" + amount + " очков: доход от территории";
+            case KILL_REWARD:
+                return "+" + amount + " очков: " + formatKills(slot, count, detail);
+            case EXPANSION:
+                return "Территория расширена с " + count + " до " + amount;
+            case RESERVE_HIRED:
+                return "Нанято рыцарей в РЕЗЕРВ: " + amount + " (-" +
+                        amount * KingdomTerritory.getRecruitCost(RecruitmentPlanner.TroopType.KNIGHT) +
+                        " очков). Резерв: " + count;
+            case RESERVE_DEPLOYED:
+                return "Рыцари из резерва вступают в бой: " + amount + ". Осталось резерва: " + count;
+            case HIRE_PLANNED:
+                return formatHire("план AI", amount, count);
+            case HIRE_EMERGENCY:
+                return formatHire("ЭКСТРЕННЫЙ НАЙМ", amount, count);
+            case HIRE_REPLENISH:
+                return formatHire("пополнение армии", amount, count);
+            case HIRE_MANUAL:
+                return formatHire("вручную", amount, count);
+            case RECRUITMENT_CANCELLED:
+                return "Найм отменен: " + amount + " × " + entityName(detail);
+            default:
+                return detail != null ? detail : "";
+        }
+    }
+
+    private static String formatHire(String reason, int guards, int knights) {
+        int cost = guards * KingdomTerritory.getRecruitCost(RecruitmentPlanner.TroopType.GUARD) +
+                knights * KingdomTerritory.getRecruitCost(RecruitmentPlanner.TroopType.KNIGHT);
+        return "Найм (" + reason + "): стражников " + guards + ", рыцарей " + knights + " (-" + cost + " очков)";
+    }
+
+    // "убито 12 (Зомби ×7, Скелет ×5)" или "убит Зомби" для одного моба
+    private String formatKills(int slot, int kills, @Nullable String detail) {
+        int base = slot * KILL_TYPES;
+        if (killTypes[base] == null) {
+            // Запись без разбивки (прежний формат: detail - самый частый тип)
+            if (detail == null) {
+                return "убито " + kills;
+            }
+            return kills == 1 ? "убит " + entityName(detail) : "убито " + kills + ", больше всего - " + entityName(detail);
+        }
+        if (kills == 1) {
+            return "убит " + entityName(killTypes[base]);
+        }
+
+        StringBuilder text = new StringBuilder("убито ").append(kills).append(" (");
+        int listedKills = 0;
+        for (int i = 0; i < KILL_TYPES && killTypes[base + i] != null; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(entityName(killTypes[base + i])).append(" ×").append(killCounts[base + i]);
+            listedKills += killCounts[base + i];
+        }
+        if (listedKills < kills) {
+            text.append(", ..."); // Перечислены не все типы
+        }
+        return text.append(')').toString();
+    }
+
+    private static String entityName(@Nullable String entityTypeId) {
+        if (entityTypeId == null) {
+            return "?";
+        }
+        return EntityType.byString(entityTypeId)
+                .map(type -> type.getDescription().getString())
+                .orElse(entityTypeId);
+    }
+
+    // ==================== NBT ====================
+
+    public CompoundTag save() {
+        byte[] savedTypes = new byte[size];
+        int[] savedAmounts = new int[size];
+        int[] savedCounts = new int[size];
+        long[] savedTimes = new long[size];
+        int[] savedDetails = new int[size];
+        int[] savedKillTypes = new int[size * KILL_TYPES];
+        int[] savedKillCounts = new int[size * KILL_TYPES];
+
+        // Строки - таблицей без повторов, в записях только номер (-1 - нет строки)
+        ListTag palette = new ListTag();
+        Map<String, Integer> paletteIndex = new HashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            int slot = slot(i);
+            savedTypes[i] = types[slot];
+            savedAmounts[i] = amounts[slot];
+            savedCounts[i] = counts[slot];
+            savedTimes[i] = times[slot];
+
+            savedDetails[i] = paletteId(details[slot], palette, paletteIndex);
+            for (int k = 0; k < KILL_TYPES; k++) {
+                savedKillTypes[i * KILL_TYPES + k] = paletteId(killTypes[slot * KILL_TYPES + k], palette, paletteIndex);
+                savedKillCounts[i * KILL_TYPES + k] = killCounts[slot * KILL_TYPES + k];
+            }
+        }
+
+        CompoundTag tag = new CompoundTag();
+        tag.putByteArray("types", savedTypes);
+        tag.putIntArray("amounts", savedAmounts);
+        tag.putIntArray("counts", savedCounts);
+        tag.putLongArray("times", savedTimes);
+        tag.putIntArray("details", savedDetails);
+        tag.putIntArray("killTypes", savedKillTypes);
+        tag.putIntArray("killCounts", savedKillCounts);
+        tag.put("palette", palette);
+        return tag;
+    }
+
+    private static int paletteId(@Nullable String value, ListTag palette, Map<String, Integer> paletteIndex) {
+        if (value == null) {
+            return -1;
+        }
+        return paletteIndex.computeIfAbsent(value, key -> {
+            palette.add(StringTag.valueOf(key));
+            return palette.size() - 1;
+        });
+    }
+
+    @Nullable
+    private static String paletteString(int[] ids, int index, ListTag palette) {
+        int id = index < ids.length ? ids[index] : -1;
+        return id >= 0 && id < palette.size() ? palette.getString(id) : null;
+    }
+
+    public void load(CompoundTag tag) {
+        clear();
+        byte[] savedTypes = tag.getByteArray("types");
+        int[] savedAmounts = tag.getIntArray("amounts");
+        int[] savedCounts = tag.getIntArray("counts");
+        long[] savedTimes = tag.getLongArray("times");
+        int[] savedDetails = tag.getIntArray("details");
+        int[] savedKillTypes = tag.getIntArray("killTypes");
+        int[] savedKillCounts = tag.getIntArray("killCounts");
+        ListTag palette = tag.getList("palette", Tag.TAG_STRING);
+
+        for (int i = 0; i < savedTypes.length; i++) {
+            int typeIndex = savedTypes[i];
+            if (typeIndex < 0 || typeIndex >= TYPES.length) {
+                continue; // Неизвестный тип (сохранение новее кода)
+            }
+            int base = head * KILL_TYPES;
+            add(TYPES[typeIndex],
+                    i < savedAmounts.length ? savedAmounts[i] : 0,
+                    i < savedCounts.length ? savedCounts[i] : 0,
+                    paletteString(savedDetails, i, palette),
+                    i < savedTimes.length ? savedTimes[i] : 0);
+
+            for (int k = 0; k < KILL_TYPES; k++) {
+                int saved = i * KILL_TYPES + k;
+                killTypes[base + k] = paletteString(savedKillTypes, saved, palette);
+                killCounts[base + k] = saved < savedKillCounts.length ? savedKillCounts[saved] : 0;
+            }
+        }
+    }
+
+    /**
+     * Старый формат: список записей с готовым текстом
+     */
+    public void loadLegacy(ListTag list) {
+        clear();
+        for (int i = 0; i < list.size(); i++) {
+            add(Type.LEGACY, 0, 0, list.getCompound(i).getString("message"), 0);
+        }
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        Arrays.fill(details, null);
+        Arrays.fill(killTypes, null);
+    }
+}
@@ -0,0 +1,127 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import com.vladisss.kingdomswar.entity.KnightEntity;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.Mob;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * ПЛАН ДЕЙСТВИЙ ВОЙСК
+ *
+ * Результат рабочего потока планирования по снимку поля боя (KingdomWorldView):
+ * уровень угрозы и команды "воин -> цель" (по id сущностей).
+ * Применяется на серверном потоке в следующем тике (apply):
+ * команды к погибшим/выгруженным сущностям просто пропускаются.
+ */
+public final class AssignmentPlan {
+    private final KingdomWorldView snapshot;
+
+    private KingdomAI.ThreatLevel threatLevel = KingdomAI.ThreatLevel.NONE;
+    private boolean widenKnightPatrol = false;
+
+    // Команды: слот воина в снимке -> id цели
+    private int[] troopSlots = new int[16];
+    private int[] targetIds = new int[16];
+    private boolean[] onlyIfFree = new boolean[16];
+    private int size = 0;
+
+    // Воины, уже получившие команду в этом плане
+    private final BitSet assigned = new BitSet();
+
+    public AssignmentPlan(KingdomWorldView snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public KingdomWorldView getSnapshot() {
+        return snapshot;
+    }
+
+    // ==================== ЗАПОЛНЕНИЕ (рабочий поток) ====================
+
+    public void setThreatLevel(KingdomAI.ThreatLevel threatLevel) {
+        this.threatLevel = threatLevel;
+    }
+
+    /**
+     * Мирное время: рыцари патрулируют шире
+     */
+    public void widenKnightPatrol() {
+        this.widenKnightPatrol = true;
+    }
+
+    /**
+     * Назначить цель воину
+     *
+     * @param troop      слот воина в снимке
+     * @param threat     слот угрозы в снимке
+     * @param onlyIfFree применять, только если у воина к моменту применения нет живой цели
+     */
+    public void assign(int troop, int threat, boolean onlyIfFree) {
+        if (size == troopSlots.length) {
+            int capacity = size * 2;
+            troopSlots = Arrays.copyOf(troopSlots, capacity);
+            targetIds = Arrays.copyOf(targetIds, capacity);
+            this.onlyIfFree = Arrays.copyOf(this.onlyIfFree, capacity);
+        }
+        troopSlots[size] = troop;
+        targetIds[size] = snapshot.getThreatId(threat);
+        this.onlyIfFree[size] = onlyIfFree;
+        size++;
+        assigned.set(troop);
+    }
+
+    public boolean isAssigned(int troop) {
+        return assigned.get(troop);
+    }
+
+    public KingdomAI.ThreatLevel getThreatLevel() {
+        return threatLevel;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // ==================== ПРИМЕНЕНИЕ (серверный поток) ====================
+
+    /**
+     * Применить команды к живым сущностям
+     *
+     * @return сколько команд применено
+     */
+    public int apply(ServerLevel level) {
+        int applied = 0;
+
+        for (int i = 0; i < size; i++) {
+            Entity troopEntity = level.getEntity(snapshot.getTroopId(troopSlots[i]));
+            Entity targetEntity = level.getEntity(targetIds[i]);
+
+            if (!(troopEntity instanceof Mob troop) || !troop.isAlive() || !TroopRegistry.isTroop(troop)) {
+                continue;
+            }
+            if (!(targetEntity instanceof LivingEntity target) || !target.isAlive()) {
+                continue;
+            }
+            if (onlyIfFree[i] && troop.getTarget() != null && troop.getTarget().isAlive()) {
+                continue; // Воин успел вступить в бой сам
+            }
+
+            troop.setTarget(target);
+            applied++;
+        }
+
+        if (widenKnightPatrol) {
+            for (int slot = snapshot.getFirstKnightSlot(); slot < snapshot.getTroopCount(); slot++) {
+                Entity entity = level.getEntity(snapshot.getTroopId(slot));
+                if (entity instanceof KnightEntity knight && knight.isAlive()) {
+                    knight.setPatrolRadius(20); // Больший радиус патруля
+                }
+            }
+        }
+        return applied;
+    }
+}
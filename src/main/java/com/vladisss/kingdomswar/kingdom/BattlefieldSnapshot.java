@@ -0,0 +1,240 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.Mob;
+
+import java.util.List;
+
+/**
+ * НЕИЗМЕНЯЕМЫЙ СНИМОК ПОЛЯ БОЯ
+ *
+ * Снимается на серверном потоке (позиции, здоровье, занятость войск и зоны угроз)
+ * и дальше читается только рабочим потоком планирования - без обращений к миру и сущностям.
+ * Сущности идентифицируются по id (level.getEntity при применении плана).
+ *
+ * Воины: сначала стражники, затем рыцари (порядок реестра).
+ * Угрозы: по расстоянию до замка (порядок ThreatSnapshot).
+ */
+public final class BattlefieldSnapshot implements KingdomWorldView {
+    // Дополнительный флаг угрозы (к зонам ThreatSnapshot): моб на поверхности - цель для сканера
+    public static final int ON_SURFACE = 16;
+
+    private final String kingdomName;
+    private final double castleX, castleY, castleZ;
+    private final int radius;
+    private final long gameTime;
+
+    // Воины
+    private final int guardCount;
+    private final int troopCount;
+    private final int[] troopIds;
+    private final double[] troopX, troopY, troopZ;
+    private final float[] troopHealth;
+    private final boolean[] troopBusy;       // Есть живая цель
+
+    // Угрозы
+    private final int threatCount;
+    private final int[] threatIds;
+    private final double[] threatX, threatY, threatZ;
+    private final float[] threatHealth;
+    private final int[] threatZones;
+
+    private BattlefieldSnapshot(KingdomTerritory kingdom, List<Mob> troops, int guardCount,
+                                List<Mob> threats, long gameTime) {
+        BlockPos center = kingdom.getCastleCenter();
+        this.kingdomName = kingdom.getName();
+        this.castleX = center.getX();
+        this.castleY = center.getY();
+        this.castleZ = center.getZ();
+        this.radius = kingdom.getRadius();
+        this.gameTime = gameTime;
+
+        this.guardCount = guardCount;
+        this.troopCount = troops.size();
+        this.troopIds = new int[troopCount];
+        this.troopX = new double[troopCount];
+        this.troopY = new double[troopCount];
+        this.troopZ = new double[troopCount];
+        this.troopHealth = new float[troopCount];
+        this.troopBusy = new boolean[troopCount];
+
+        for (int i = 0; i < troopCount; i++) {
+            Mob troop = troops.get(i);
+            LivingEntity target = troop.getTarget();
+            troopIds[i] = troop.getId();
+            troopX[i] = troop.getX();
+            troopY[i] = troop.getY();
+            troopZ[i] = troop.getZ();
+            troopHealth[i] = troop.getHealth();
+            troopBusy[i] = target != null && target.isAlive();
+        }
+
+        this.threatCount = threats.size();
+        this.threatIds = new int[threatCount];
+        this.threatX = new double[threatCount];
+        this.threatY = new double[threatCount];
+        this.threatZ = new double[threatCount];
+        this.threatHealth = new float[threatCount];
+        this.threatZones = new int[threatCount];
+
+        for (int i = 0; i < threatCount; i++) {
+            Mob threat = threats.get(i);
+            int zones = ThreatSnapshot.classify(threat, castleX, castleY, castleZ);
+
+            // Проверка поверхности обращается к блокам - только здесь, на серверном потоке
+            if ((zones & ThreatSnapshot.IN_SURFACE_BAND) != 0 && TerritoryScanner.isOnSurface(threat)) {
+                zones |= ON_SURFACE;
+            }
+
+            threatIds[i] = threat.getId();
+            threatX[i] = threat.getX();
+            threatY[i] = threat.getY();
+            threatZ[i] = threat.getZ();
+            threatHealth[i] = threat.getHealth();
+            threatZones[i] = zones;
+        }
+    }
+
+    /**
+     * Снять поле боя (только серверный поток)
+     */
+    public static BattlefieldSnapshot capture(KingdomTerritory kingdom, ThreatSnapshot threats) {
+        TroopRegistry registry = kingdom.getTroops();
+        return new BattlefieldSnapshot(kingdom, registry.getAll(), registry.getGuardCount(),
+                threats.getAllThreats(), threats.getGameTime());
+    }
+
+    // ==================== ЗАМОК ====================
+
+    @Override
+    public String getKingdomName() {
+        return kingdomName;
+    }
+
+    @Override
+    public double getCastleX() {
+        return castleX;
+    }
+
+    @Override
+    public double getCastleY() {
+        return castleY;
+    }
+
+    @Override
+    public double getCastleZ() {
+        return castleZ;
+    }
+
+    @Override
+    public int getRadius() {
+        return radius;
+    }
+
+    @Override
+    public long getGameTime() {
+        return gameTime;
+    }
+
+    // ==================== ВОИНЫ ====================
+
+    @Override
+    public int getTroopCount() {
+        return troopCount;
+    }
+
+    @Override
+    public int getGuardCount() {
+        return guardCount;
+    }
+
+    @Override
+    public int getTroopId(int troop) {
+        return troopIds[troop];
+    }
+
+    @Override
+    public double getTroopX(int troop) {
+        return troopX[troop];
+    }
+
+    @Override
+    public double getTroopY(int troop) {
+        return troopY[troop];
+    }
+
+    @Override
+    public double getTroopZ(int troop) {
+        return troopZ[troop];
+    }
+
+    @Override
+    public float getTroopHealth(int troop) {
+        return troopHealth[troop];
+    }
+
+    @Override
+    public boolean isTroopBusy(int troop) {
+        return troopBusy[troop];
+    }
+
+    // ==================== УГРОЗЫ ====================
+
+    @Override
+    public int getThreatCount() {
+        return threatCount;
+    }
+
+    @Override
+    public int getThreatId(int threat) {
+        return threatIds[threat];
+    }
+
+    @Override
+    public double getThreatX(int threat) {
+        return threatX[threat];
+    }
+
+    @Override
+    public double getThreatY(int threat) {
+        return threatY[threat];
+    }
+
+    @Override
+    public double getThreatZ(int threat) {
+        return threatZ[threat];
+    }
+
+    @Override
+    public float getThreatHealth(int threat) {
+        return threatHealth[threat];
+    }
+
+    @Override
+    public boolean isThreatIn(int threat, int zone) {
+        return (threatZones[threat] & zone) != 0;
+    }
+
+    @Override
+    public int countThreatsIn(int zone) {
+        int count = 0;
+        for (int i = 0; i < threatCount; i++) {
+            if ((threatZones[i] & zone) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Квадрат расстояния от угрозы до центра замка
+     */
+    @Override
+    public double threatDistanceToCastleSqr(int threat) {
+        double dx = threatX[threat] - castleX;
+        double dy = threatY[threat] - castleY;
+        double dz = threatZ[threat] - castleZ;
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
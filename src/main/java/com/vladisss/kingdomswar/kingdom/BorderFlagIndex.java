@@ -0,0 +1,90 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.world.level.ChunkPos;
+
+/**
+ * ПОСТАВЛЕННЫЕ ФЛАГИ ГРАНИЦЫ КОРОЛЕВСТВА
+ *
+ * Колонка (x, z) флага -> позиция его нижнего столбика (BlockPos.asLong).
+ * Хранится в KingdomData: при расширении территории убираются ровно записанные
+ * флаги, которых нет в новой границе, - без поиска по объему вокруг границы.
+ */
+public class BorderFlagIndex {
+    private final Long2LongOpenHashMap flags = new Long2LongOpenHashMap();
+
+    // Сохранение до индекса: флаги старой границы еще не записаны (ищутся один раз)
+    private boolean legacy;
+
+    public static long column(int x, int z) {
+        return ChunkPos.asLong(x, z);
+    }
+
+    public static int columnX(long column) {
+        return ChunkPos.getX(column);
+    }
+
+    public static int columnZ(long column) {
+        return ChunkPos.getZ(column);
+    }
+
+    public boolean contains(long column) {
+        return flags.containsKey(column);
+    }
+
+    /**
+     * Нижний столбик флага в колонке
+     */
+    public long get(long column) {
+        return flags.get(column);
+    }
+
+    public void put(long column, long basePos) {
+        flags.put(column, basePos);
+    }
+
+    public void remove(long column) {
+        flags.remove(column);
+    }
+
+    public LongSet columns() {
+        return flags.keySet();
+    }
+
+    public int size() {
+        return flags.size();
+    }
+
+    public boolean isLegacy() {
+        return legacy;
+    }
+
+    public void setLegacy(boolean legacy) {
+        this.legacy = legacy;
+    }
+
+    // ==================== NBT ====================
+
+    /**
+     * Пары (колонка, низ флага)
+     */
+    public long[] toLongArray() {
+        long[] data = new long[flags.size() * 2];
+        int i = 0;
+        for (Long2LongMap.Entry entry : flags.long2LongEntrySet()) {
+            data[i++] = entry.getLongKey();
+            data[i++] = entry.getLongValue();
+        }
+        return data;
+    }
+
+    public static BorderFlagIndex fromLongArray(long[] data) {
+        BorderFlagIndex index = new BorderFlagIndex();
+        for (int i = 0; i + 1 < data.length; i += 2) {
+            index.flags.put(data[i], data[i + 1]);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,252 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.function.LongConsumer;
+
+/**
+ * КАРТА ЧАНКОВ ТЕРРИТОРИИ (битовая, плитками 8x8)
+ *
+ * Чанки хранятся битами в long: одна плитка 8x8 чанков = один long,
+ * плитки лежат в Long2LongOpenHashMap по координатам плитки.
+ * Проверка чанка - один поиск в хэш-таблице и битовая маска, форма территории любая,
+ * пустые области места не занимают.
+ *
+ * Сохраняется как long[] пар (ключ плитки, биты) - см. toLongArray / readLongArray.
+ */
+public class ChunkBitmap {
+    private static final int TILE_SHIFT = 3;                 // Плитка 8x8 чанков
+    private static final int TILE_MASK = (1 << TILE_SHIFT) - 1;
+
+    private final Long2LongOpenHashMap tiles = new Long2LongOpenHashMap();
+    private int size = 0;
+
+    // Границы занятых чанков (только растут - при удалении не сжимаются)
+    private int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+    private int maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+
+    public boolean contains(int chunkX, int chunkZ) {
+        long bits = tiles.get(tileKey(chunkX, chunkZ));
+        return (bits & bit(chunkX, chunkZ)) != 0;
+    }
+
+    public boolean contains(long chunkPos) {
+        return contains(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos));
+    }
+
+    /**
+     * @return true - чанк добавлен (раньше его не было)
+     */
+    public boolean add(int chunkX, int chunkZ) {
+        long key = tileKey(chunkX, chunkZ);
+        long bits = tiles.get(key);
+        long mask = bit(chunkX, chunkZ);
+        if ((bits & mask) != 0) {
+            return false;
+        }
+        tiles.put(key, bits | mask);
+        size++;
+        minX = Math.min(minX, chunkX);
+        minZ = Math.min(minZ, chunkZ);
+        maxX = Math.max(maxX, chunkX);
+        maxZ = Math.max(maxZ, chunkZ);
+        return true;
+    }
+
+    /**
+     * @return true - чанк удален (он был в карте)
+     */
+    public boolean remove(int chunkX, int chunkZ) {
+        long key = tileKey(chunkX, chunkZ);
+        long bits = tiles.get(key);
+        long mask = bit(chunkX, chunkZ);
+        if ((bits & mask) == 0) {
+            return false;
+        }
+        bits &= ~mask;
+        if (bits == 0) {
+            tiles.remove(key);
+        } else {
+            tiles.put(key, bits);
+        }
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        tiles.clear();
+        size = 0;
+        minX = minZ = Integer.MAX_VALUE;
+        maxX = maxZ = Integer.MIN_VALUE;
+    }
+
+    // Границы (в чанках) - для области поиска сущностей; у пустой карты min > max
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    /**
+     * Дорастить круг: добавить чанки, чьи центры ближе newRadius к центру (и дальше oldRadius).
+     * Внутренняя часть не пересчитывается - для каждой строки чанков считаются
+     * только две полосы между старой и новой окружностью.
+     *
+     * @param oldRadius предыдущий радиус в блоках (-1 - карта пустая)
+     * @param added     получает упакованную позицию (ChunkPos.asLong) каждого нового чанка, может быть null
+     * @return сколько чанков добавлено
+     */
+    public int growCircle(int centerX, int centerZ, int oldRadius, int newRadius, LongConsumer added) {
+        int count = 0;
+        int minRow = Math.floorDiv(centerX - newRadius - 8, 16);
+        int maxRow = Math.floorDiv(centerX + newRadius - 8, 16) + 1;
+
+        for (int chunkX = minRow; chunkX <= maxRow; chunkX++) {
+            long dx = (long) chunkX * 16 + 8 - centerX;
+            int newHalf = halfChord(newRadius, dx);
+            if (newHalf < 0) {
+                continue;
+            }
+
+            // Диапазон чанков строки внутри новой окружности
+            int newMinZ = minChunkZ(centerZ, newHalf);
+            int newMaxZ = maxChunkZ(centerZ, newHalf);
+
+            int oldHalf = oldRadius < 0 ? -1 : halfChord(oldRadius, dx);
+            if (oldHalf < 0) {
+                count += addRow(chunkX, newMinZ, newMaxZ, added);
+                continue;
+            }
+
+            int oldMinZ = minChunkZ(centerZ, oldHalf);
+            int oldMaxZ = maxChunkZ(centerZ, oldHalf);
+            count += addRow(chunkX, newMinZ, Math.min(oldMinZ - 1, newMaxZ), added);
+            count += addRow(chunkX, Math.max(oldMaxZ + 1, newMinZ), newMaxZ, added);
+        }
+        return count;
+    }
+
+    private int addRow(int chunkX, int fromZ, int toZ, LongConsumer added) {
+        int count = 0;
+        for (int chunkZ = fromZ; chunkZ <= toZ; chunkZ++) {
+            if (add(chunkX, chunkZ)) {
+                count++;
+                if (added != null) {
+                    added.accept(ChunkPos.asLong(chunkX, chunkZ));
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Обход всех чанков (упакованные ChunkPos.asLong)
+     */
+    public void forEach(LongConsumer action) {
+        ObjectIterator<Long2LongMap.Entry> it = tiles.long2LongEntrySet().fastIterator();
+        while (it.hasNext()) {
+            Long2LongMap.Entry entry = it.next();
+            long key = entry.getLongKey();
+            long bits = entry.getLongValue();
+            int baseX = ChunkPos.getX(key) << TILE_SHIFT;
+            int baseZ = ChunkPos.getZ(key) << TILE_SHIFT;
+
+            while (bits != 0) {
+                int index = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                action.accept(ChunkPos.asLong(baseX + (index & TILE_MASK), baseZ + (index >>> TILE_SHIFT)));
+            }
+        }
+    }
+
+    // ==================== СОХРАНЕНИЕ ====================
+
+    public long[] toLongArray() {
+        long[] data = new long[tiles.size() * 2];
+        int i = 0;
+        ObjectIterator<Long2LongMap.Entry> it = tiles.long2LongEntrySet().fastIterator();
+        while (it.hasNext()) {
+            Long2LongMap.Entry entry = it.next();
+            data[i++] = entry.getLongKey();
+            data[i++] = entry.getLongValue();
+        }
+        return data;
+    }
+
+    /**
+     * Заменить содержимое данными из toLongArray
+     */
+    public void readLongArray(long[] data) {
+        clear();
+        for (int i = 0; i + 1 < data.length; i += 2) {
+            long bits = data[i + 1];
+            if (bits == 0) {
+                continue;
+            }
+            tiles.put(data[i], bits);
+            size += Long.bitCount(bits);
+
+            // Границы плитки по занятым битам
+            int baseX = ChunkPos.getX(data[i]) << TILE_SHIFT;
+            int baseZ = ChunkPos.getZ(data[i]) << TILE_SHIFT;
+            while (bits != 0) {
+                int index = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int chunkX = baseX + (index & TILE_MASK);
+                int chunkZ = baseZ + (index >>> TILE_SHIFT);
+                minX = Math.min(minX, chunkX);
+                minZ = Math.min(minZ, chunkZ);
+                maxX = Math.max(maxX, chunkX);
+                maxZ = Math.max(maxZ, chunkZ);
+            }
+        }
+    }
+
+    // ==================== ВСПОМОГАТЕЛЬНОЕ ====================
+
+    private static long tileKey(int chunkX, int chunkZ) {
+        return ChunkPos.asLong(chunkX >> TILE_SHIFT, chunkZ >> TILE_SHIFT);
+    }
+
+    private static long bit(int chunkX, int chunkZ) {
+        return 1L << (((chunkZ & TILE_MASK) << TILE_SHIFT) | (chunkX & TILE_MASK));
+    }
+
+    /**
+     * Половина хорды окружности на смещении dx (в блоках), -1 - строка вне окружности
+     */
+    private static int halfChord(int radius, long dx) {
+        long rest = (long) radius * radius - dx * dx;
+        return rest < 0 ? -1 : (int) Math.floor(Math.sqrt(rest));
+    }
+
+    // Чанки, чей центр (z*16+8) попадает в [centerZ - half, centerZ + half]
+    private static int minChunkZ(int centerZ, int half) {
+        return Math.floorDiv(centerZ - half - 8 + 15, 16);
+    }
+
+    private static int maxChunkZ(int centerZ, int half) {
+        return Math.floorDiv(centerZ + half - 8, 16);
+    }
+}
@@ -0,0 +1,195 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import com.vladisss.kingdomswar.entity.GuardEntity;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.damagesource.DamageSource;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.entity.player.Player;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * СМЕРТИ НА ТЕРРИТОРИИ КОРОЛЕВСТВА
+ *
+ * Единая точка обработки смертей: KingdomEventHandler один раз определяет, что случилось
+ * (воин убил моба или воина убили), и записывает событие сюда. Раз в тик накопленное
+ * отрабатывается пачкой:
+ * - награды за убийства - в KillRewardAccumulator (зачисление окнами);
+ * - одна тревога мести на каждого игрока-убийцу;
+ * - один проход по свободным войскам на все подкрепления.
+ */
+public class DeathPipeline {
+    private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
+
+    private final KingdomTerritory kingdom;
+    private final KillRewardAccumulator rewards;
+    private final List<Loss> losses = new ArrayList<>();
+
+    public DeathPipeline(KingdomTerritory kingdom) {
+        this.kingdom = kingdom;
+        this.rewards = new KillRewardAccumulator(kingdom);
+    }
+
+    // ==================== ЗАПИСЬ ====================
+
+    /**
+     * Воин королевства убил моба
+     */
+    public void recordKill(LivingEntity killed) {
+        rewards.add(killed, killed.level().getGameTime());
+    }
+
+    /**
+     * Воина королевства убили
+     */
+    public void recordLoss(Mob warrior, DamageSource source) {
+        // Убийца: тот, кто нанес удар (стрела - стрелок через getEntity)
+        LivingEntity killer = null;
+        if (source.getDirectEntity() instanceof LivingEntity direct) {
+            killer = direct;
+        } else if (source.getEntity() instanceof LivingEntity owner) {
+            killer = owner;
+        }
+
+        Player player = source.getEntity() instanceof Player p ? p : null;
+        losses.add(new Loss(warrior.blockPosition(), warrior instanceof GuardEntity, killer, player));
+    }
+
+    /**
+     * Еще не зачисленные очки за убийства
+     */
+    public int getPendingRewardPoints() {
+        return rewards.getPendingPoints();
+    }
+
+    // ==================== ОБРАБОТКА ====================
+
+    /**
+     * Отработать всё накопленное за тик
+     */
+    public void flush(ServerLevel level) {
+        rewards.tick(level);
+
+        if (!losses.isEmpty()) {
+            dispatchRevenge(level);
+            dispatchReinforcements();
+            losses.clear();
+        }
+    }
+
+    /**
+     * Месть: один раз на каждого игрока-убийцу за тик
+     */
+    private void dispatchRevenge(ServerLevel level) {
+        Set<UUID> avenged = new HashSet<>();
+        for (Loss loss : losses) {
+            if (loss.player != null && avenged.add(loss.player.getUUID())) {
+                kingdom.getRevengeSystem().onWarriorKilled(level, loss.deathPos, loss.player.getUUID());
+            }
+        }
+    }
+
+    // ============================================
+    // СИСТЕМА ПОДКРЕПЛЕНИЙ
+    // ============================================
+
+    /**
+     * Подкрепления на все потери тика: свободные войска собираются один раз
+     * и раздаются по убийцам (один отряд на убийцу)
+     */
+    private void dispatchReinforcements() {
+        List<Mob> availableTroops = null;
+        int cursor = 0;
+        Set<LivingEntity> handledKillers = new HashSet<>();
+        BlockPos castlePos = kingdom.getCastleCenter();
+
+        for (Loss loss : losses) {
+            if (loss.killer == null || !handledKillers.add(loss.killer)) {
+                continue;
+            }
+
+            LOGGER.warn("[Kingdom] 🚨 {} УБИТ в {}! Убийца: {}",
+                    loss.guard ? "Стражник" : "Рыцарь", loss.deathPos.toShortString(),
+                    loss.killer.getType().getDescription().getString());
+
+            // Находим всех СВОБОДНЫХ воинов (без цели) - один раз на весь тик
+            if (availableTroops == null) {
+                availableTroops = new ArrayList<>();
+                for (Mob troop : kingdom.getTroops().getAll()) {
+                    if (troop.getTarget() == null && troop.isAlive()) {
+                        availableTroops.add(troop);
+                    }
+                }
+            }
+
+            int remaining = availableTroops.size() - cursor;
+            if (remaining <= 0) {
+                LOGGER.error("[Kingdom] ⚠️ Нет свободных войск для подкрепления!");
+                continue;
+            }
+
+            // Определяем сколько войск отправить
+            double distanceToCastle = loss.deathPos.distSqr(castlePos);
+            int troopsToSend;
+            if (distanceToCastle < 30 * 30) { // Близко к замку (< 30 блоков)
+                // КРИТИЧЕСКАЯ УГРОЗА → 50% свободных войск
+                troopsToSend = Math.max(3, remaining / 2);
+                LOGGER.error("[Kingdom] 🔴 КРИТИЧЕСКАЯ УГРОЗА У ЗАМКА! Отправляем {} войск (50%)", troopsToSend);
+            } else if (distanceToCastle < 60 * 60) { // Средняя дистанция (30-60 блоков)
+                // Средняя угроза → 5 войск
+                troopsToSend = Math.min(5, remaining);
+                LOGGER.warn("[Kingdom] 🟠 Угроза в территории! Отправляем {} войск", troopsToSend);
+            } else {
+                // Далеко → 3 война
+                troopsToSend = Math.min(3, remaining);
+                LOGGER.info("[Kingdom] 🟡 Дальняя угроза. Отправляем {} войск", troopsToSend);
+            }
+
+            int sent = Math.min(troopsToSend, remaining);
+            for (int i = 0; i < sent; i++) {
+                sendReinforcement(availableTroops.get(cursor++), loss);
+            }
+
+            LOGGER.warn("[Kingdom] ✅ ПОДКРЕПЛЕНИЕ ОТПРАВЛЕНО: {} войск → {}",
+                    sent, loss.deathPos.toShortString());
+        }
+    }
+
+    private static void sendReinforcement(Mob troop, Loss loss) {
+        String troopType = troop instanceof GuardEntity ? "Стражник" : "Рыцарь";
+        if (loss.killer.isAlive() && !loss.killer.isRemoved()) {
+            // Устанавливаем цель = убийца
+            troop.setTarget(loss.killer);
+            troop.getNavigation().moveTo(loss.killer, 1.5D); // Быстрая скорость!
+            LOGGER.info("[Kingdom] → {} #{} бежит мстить!", troopType, troop.getId());
+        } else {
+            // Убийца мертв/исчез → идем к месту смерти и патрулируем
+            troop.getNavigation().moveTo(loss.deathPos.getX(), loss.deathPos.getY(), loss.deathPos.getZ(), 1.2D);
+            LOGGER.info("[Kingdom] → {} #{} патрулирует место смерти", troopType, troop.getId());
+        }
+    }
+
+    /**
+     * Погибший воин
+     */
+    private static class Loss {
+        private final BlockPos deathPos;
+        private final boolean guard;
+        @Nullable
+        private final LivingEntity killer;
+        @Nullable
+        private final Player player;
+
+        Loss(BlockPos deathPos, boolean guard, @Nullable LivingEntity killer, @Nullable Player player) {
+            this.deathPos = deathPos;
+            this.guard = guard;
+            this.killer = killer;
+            this.player = player;
+        }
+    }
+}
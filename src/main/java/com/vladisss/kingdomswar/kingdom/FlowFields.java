@@ -0,0 +1,529 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntCollection;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongHeapPriorityQueue;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.levelgen.Heightmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ПОЛЯ ПОТОКОВ КОРОЛЕВСТВА
+ *
+ * Общая сетка поверхности территории (высота, на которой можно стоять, по колонкам)
+ * и поля расстояний (BFS по сетке) к замку и точкам патруля секторов.
+ * Воины, идущие домой или в свой сектор, спускаются по полю (FlowFollower) -
+ * без отдельного A* на каждого.
+ *
+ * Сетка строится по загруженным чанкам и обновляется по событиям: загрузка чанка,
+ * изменение блока (колонка), пакетная запись блоков. Изменившаяся колонка чинит поля
+ * локально (сбрасываются только колонки, чье расстояние шло через нее); загрузка чанков
+ * и большие изменения помечают поля на полный пересчет. Всё - задачей планировщика
+ * в пределах бюджета тика.
+ */
+public class FlowFields {
+    private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
+
+    // ✅ Запас сетки за границей территории и предел размера (полуразмер в блоках)
+    private static final int GRID_MARGIN = 8;
+    private static final int MAX_HALF_SIZE = 192;
+
+    // Значения сетки поверхности
+    private static final int UNKNOWN = Integer.MIN_VALUE;     // Чанк не загружен
+    private static final int BLOCKED = Integer.MIN_VALUE + 1; // Стоять нельзя (вода, лава, нет опоры)
+
+    // Шаг между соседними колонками - не больше блока вверх/вниз
+    private static final int MAX_STEP = 1;
+
+    // ✅ Больше изменившихся колонок за цикл - полный пересчет вместо локальной починки
+    private static final int MAX_CHANGED_CELLS = 256;
+    // Больше колонок сбрасывает одна починка - полный пересчет поля
+    private static final int MAX_REPAIR_REGION = 2048;
+
+    public static final long NO_WAYPOINT = Long.MIN_VALUE;
+
+    private final KingdomTerritory owner;
+
+    // Сетка: квадрат вокруг замка
+    private int minX, minZ, size;
+    private int[] surface = new int[0];
+
+    private final LongLinkedOpenHashSet pendingChunks = new LongLinkedOpenHashSet();
+    private final IntLinkedOpenHashSet changedCells = new IntLinkedOpenHashSet(); // ✅ Колонки на локальную починку
+    private final Long2ObjectLinkedOpenHashMap<FlowField> fields = new Long2ObjectLinkedOpenHashMap<>();
+    private int builtRadius = -1;
+
+    // Буферы BFS и починки (общие для всех полей, пересчет идет по одному полю)
+    private final IntArrayFIFOQueue bfsQueue = new IntArrayFIFOQueue();
+    private final IntArrayList repairRegion = new IntArrayList();
+    private final IntOpenHashSet repairSeen = new IntOpenHashSet();
+    private final LongHeapPriorityQueue repairQueue = new LongHeapPriorityQueue();
+
+    public FlowFields(KingdomTerritory owner) {
+        this.owner = owner;
+    }
+
+    // ==================== СОБЫТИЯ ====================
+
+    public static void onChunkLoaded(ServerLevel level, LevelChunk chunk) {
+        for (KingdomTerritory kingdom : KingdomManager.getKingdoms(level)) {
+            kingdom.getFlowFields().queueChunk(chunk.getPos().x, chunk.getPos().z);
+        }
+    }
+
+    public static void onBlockChanged(ServerLevel level, BlockPos pos) {
+        for (KingdomTerritory kingdom : KingdomManager.getKingdoms(level)) {
+            kingdom.getFlowFields().updateColumn(level, pos.getX(), pos.getZ());
+        }
+    }
+
+    /**
+     * Массовая запись блоков мимо событий - пересканировать все чанки сетки (поля остаются до пересчета)
+     */
+    public static void onBulkChange(ServerLevel level) {
+        for (KingdomTerritory kingdom : KingdomManager.getKingdoms(level)) {
+            kingdom.getFlowFields().queueAllChunks();
+        }
+    }
+
+    // ==================== ЦЕЛИ ====================
+
+    /**
+     * Точки патруля секторов (поле к замку есть всегда).
+     * Поля к пропавшим точкам удаляются, к новым - строятся
+     */
+    public void setSectorGoals(List<BlockPos> sectorGoals) {
+        BlockPos home = owner.getCastleCenter();
+        long homeKey = columnKey(home.getX(), home.getZ());
+
+        fields.long2ObjectEntrySet().removeIf(entry -> entry.getLongKey() != homeKey &&
+                sectorGoals.stream().noneMatch(goal -> columnKey(goal.getX(), goal.getZ()) == entry.getLongKey()));
+
+        for (BlockPos goal : sectorGoals) {
+            fields.computeIfAbsent(columnKey(goal.getX(), goal.getZ()), key -> new FlowField(goal));
+        }
+    }
+
+    // ==================== ЗАДАЧА ПЛАНИРОВЩИКА ====================
+
+    /**
+     * Обновить сетку и пересчитать помеченные поля, пока есть время
+     *
+     * @return true - всё актуально
+     */
+    public boolean update(ServerLevel level, long deadlineNanos) {
+        if (builtRadius != owner.getRadius()) {
+            resize();
+        }
+
+        // 1. Колонки загруженных чанков
+        while (!pendingChunks.isEmpty()) {
+            long chunkKey = pendingChunks.removeFirstLong();
+            LevelChunk chunk = level.getChunkSource().getChunkNow(ChunkPos.getX(chunkKey), ChunkPos.getZ(chunkKey));
+            if (chunk != null) {
+                scanChunk(chunk);
+            }
+            if (KingdomScheduler.outOfTime(deadlineNanos)) {
+                return false;
+            }
+        }
+
+        // 2. Изменившиеся колонки - одна локальная починка каждого построенного поля на все изменения
+        if (!changedCells.isEmpty()) {
+            if (changedCells.size() > MAX_CHANGED_CELLS) {
+                markAllDirty();
+            } else {
+                for (FlowField field : fields.values()) {
+                    if (field.built && !field.dirty && !field.repair(changedCells)) {
+                        field.dirty = true;
+                    }
+                }
+            }
+            changedCells.clear();
+            if (KingdomScheduler.outOfTime(deadlineNanos)) {
+                return false;
+            }
+        }
+
+        // 3. Поля на полный пересчет (каждое - целиком за раз)
+        for (FlowField field : fields.values()) {
+            if (field.dirty) {
+                field.build();
+                if (KingdomScheduler.outOfTime(deadlineNanos)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Сетка под текущий радиус: все загруженные чанки в очередь, все поля - на пересчет
+     */
+    private void resize() {
+        BlockPos center = owner.getCastleCenter();
+        int half = Math.min(owner.getRadius() + GRID_MARGIN, MAX_HALF_SIZE);
+        minX = center.getX() - half;
+        minZ = center.getZ() - half;
+        size = half * 2 + 1;
+        surface = new int[size * size];
+        Arrays.fill(surface, UNKNOWN);
+        builtRadius = owner.getRadius();
+        pendingChunks.clear();
+        changedCells.clear();
+
+        fields.computeIfAbsent(columnKey(center.getX(), center.getZ()), key -> new FlowField(center));
+        for (FlowField field : fields.values()) {
+            field.resize();
+        }
+
+        queueAllChunks();
+        LOGGER.debug("[Flow] {} - сетка {}x{}, полей: {}", owner.getName(), size, size, fields.size());
+    }
+
+    private void queueAllChunks() {
+        if (builtRadius < 0) {
+            return;
+        }
+        for (int chunkX = SectionPos.blockToSectionCoord(minX); chunkX <= SectionPos.blockToSectionCoord(minX + size - 1); chunkX++) {
+            for (int chunkZ = SectionPos.blockToSectionCoord(minZ); chunkZ <= SectionPos.blockToSectionCoord(minZ + size - 1); chunkZ++) {
+                pendingChunks.add(ChunkPos.asLong(chunkX, chunkZ));
+            }
+        }
+    }
+
+    private void queueChunk(int chunkX, int chunkZ) {
+        if (builtRadius < 0) {
+            return; // Сетки еще нет - resize поставит все чанки
+        }
+        if (chunkX * 16 + 15 < minX || chunkX * 16 > minX + size - 1 ||
+                chunkZ * 16 + 15 < minZ || chunkZ * 16 > minZ + size - 1) {
+            return;
+        }
+        pendingChunks.add(ChunkPos.asLong(chunkX, chunkZ));
+    }
+
+    private void scanChunk(LevelChunk chunk) {
+        int fromX = Math.max(minX, chunk.getPos().getMinBlockX());
+        int toX = Math.min(minX + size - 1, chunk.getPos().getMaxBlockX());
+        int fromZ = Math.max(minZ, chunk.getPos().getMinBlockZ());
+        int toZ = Math.min(minZ + size - 1, chunk.getPos().getMaxBlockZ());
+
+        boolean changed = false;
+        for (int x = fromX; x <= toX; x++) {
+            for (int z = fromZ; z <= toZ; z++) {
+                changed |= setSurface(x, z, standingY(chunk, x, z));
+            }
+        }
+        if (changed) {
+            markAllDirty();
+        }
+    }
+
+    private void updateColumn(ServerLevel level, int x, int z) {
+        if (builtRadius < 0 || !inGrid(x, z)) {
+            return;
+        }
+
+        LevelChunk chunk = level.getChunkSource().getChunkNow(
+                SectionPos.blockToSectionCoord(x), SectionPos.blockToSectionCoord(z));
+        if (chunk != null && setSurface(x, z, standingY(chunk, x, z))) {
+            changedCells.add(cell(x, z));
+        }
+    }
+
+    private boolean setSurface(int x, int z, int y) {
+        int cell = cell(x, z);
+        if (surface[cell] == y) {
+            return false;
+        }
+        surface[cell] = y;
+        return true;
+    }
+
+    private void markAllDirty() {
+        for (FlowField field : fields.values()) {
+            field.dirty = true;
+        }
+    }
+
+    /**
+     * Высота, на которой можно стоять в колонке: верх без листвы, твердая опора, 2 блока свободно
+     */
+    private static int standingY(LevelChunk chunk, int x, int z) {
+        int y = chunk.getHeight(Heightmap.Types.MOTION_BLOCKING_NO_LEAVES, x & 15, z & 15) + 1;
+        BlockPos pos = new BlockPos(x, y, z);
+
+        BlockState ground = chunk.getBlockState(pos.below());
+        if (!ground.isSolid() || !ground.getFluidState().isEmpty()) {
+            return BLOCKED;
+        }
+        if (chunk.getBlockState(pos).blocksMotion() || chunk.getBlockState(pos.above()).blocksMotion()) {
+            return BLOCKED;
+        }
+        return y;
+    }
+
+    // ==================== ЗАПРОСЫ ====================
+
+    /**
+     * Расстояние по полю от колонки до цели (в шагах), -1 - поля нет или не дойти
+     */
+    public int distanceTo(BlockPos goal, int x, int z) {
+        FlowField field = fields.get(columnKey(goal.getX(), goal.getZ()));
+        if (field == null || !field.built || !inGrid(x, z)) {
+            return -1;
+        }
+        return field.distance[cell(x, z)];
+    }
+
+    /**
+     * Точка на несколько шагов вниз по полю (BlockPos.asLong) или NO_WAYPOINT.
+     * На перепаде высоты точка - сразу соседняя колонка, чтобы воин запрыгнул на ступеньку
+     */
+    public long nextWaypoint(BlockPos goal, int x, int z, int steps) {
+        FlowField field = fields.get(columnKey(goal.getX(), goal.getZ()));
+        if (field == null || !field.built || !inGrid(x, z)) {
+            return NO_WAYPOINT;
+        }
+
+        int cell = cell(x, z);
+        if (field.distance[cell] <= 0) {
+            return NO_WAYPOINT;
+        }
+
+        int startY = surface[cell];
+        for (int step = 0; step < steps && field.distance[cell] > 0; step++) {
+            int next = field.downhill(cell);
+            if (next < 0) {
+                break;
+            }
+            cell = next;
+            if (surface[next] != startY) {
+                break;
+            }
+        }
+
+        int y = surface[cell];
+        if (y == UNKNOWN || y == BLOCKED) {
+            return NO_WAYPOINT;
+        }
+        return BlockPos.asLong(minX + cell % size, y, minZ + cell / size);
+    }
+
+    // ==================== СЕТКА ====================
+
+    private boolean inGrid(int x, int z) {
+        return x >= minX && z >= minZ && x < minX + size && z < minZ + size;
+    }
+
+    private int cell(int x, int z) {
+        return (z - minZ) * size + (x - minX);
+    }
+
+    private static long columnKey(int x, int z) {
+        return ChunkPos.asLong(x, z);
+    }
+
+    private boolean isStandable(int cell) {
+        int y = surface[cell];
+        return y != UNKNOWN && y != BLOCKED;
+    }
+
+    /**
+     * Соседняя колонка по направлению 0..3 (-1 - за краем сетки)
+     */
+    private int neighbour(int cell, int direction) {
+        switch (direction) {
+            case 0:
+                return cell % size > 0 ? cell - 1 : -1;
+            case 1:
+                return cell % size < size - 1 ? cell + 1 : -1;
+            case 2:
+                return cell >= size ? cell - size : -1;
+            default:
+                return cell < size * (size - 1) ? cell + size : -1;
+        }
+    }
+
+    /**
+     * Можно ли шагнуть между колонками (в сторону от цели: from ближе к цели).
+     * Цель может стоять в непроходимой колонке (центр замка) - из нее выходим с любого перепада
+     */
+    private boolean canStep(int from, int to, int goalCell) {
+        return isStandable(to) && (from == goalCell || Math.abs(surface[to] - surface[from]) <= MAX_STEP);
+    }
+
+    /**
+     * Поле расстояний к одной цели
+     */
+    private class FlowField {
+        private final BlockPos goal;
+        private int[] distance = new int[0];
+        private boolean dirty = true;
+        private boolean built = false;
+
+        FlowField(BlockPos goal) {
+            this.goal = goal;
+            resize();
+        }
+
+        void resize() {
+            distance = new int[size * size];
+            Arrays.fill(distance, -1);
+            dirty = true;
+            built = false;
+        }
+
+        /**
+         * BFS от цели по проходимым колонкам (4 соседа, перепад не больше MAX_STEP)
+         */
+        void build() {
+            Arrays.fill(distance, -1);
+            dirty = false;
+            built = true;
+            if (!inGrid(goal.getX(), goal.getZ())) {
+                return;
+            }
+
+            IntArrayFIFOQueue queue = bfsQueue;
+            queue.clear();
+            int start = cell(goal.getX(), goal.getZ());
+            distance[start] = 0;
+            queue.enqueue(start);
+
+            while (!queue.isEmpty()) {
+                int current = queue.dequeueInt();
+                int next = distance[current] + 1;
+                for (int direction = 0; direction < 4; direction++) {
+                    int to = neighbour(current, direction);
+                    if (to >= 0 && distance[to] < 0 && canStep(current, to, start)) {
+                        distance[to] = next;
+                        queue.enqueue(to);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Локальная починка после изменения колонок: сбросить колонки, чье расстояние могло
+         * идти через измененные (потомки по полю), и заново разлить расстояния от их соседей.
+         * Уменьшения (открылся проход) расходятся дальше сами. Все изменения - одной починкой:
+         * по очереди нельзя, расстояния вокруг еще не исправленной колонки устаревшие
+         *
+         * @return false - изменилась колонка цели или область слишком велика, нужен полный пересчет
+         */
+        boolean repair(IntCollection changed) {
+            if (!inGrid(goal.getX(), goal.getZ())) {
+                return true; // Поле пустое, чинить нечего
+            }
+            int start = cell(goal.getX(), goal.getZ());
+
+            // 1. Измененные колонки и те, чье расстояние могло идти через них
+            IntArrayList region = repairRegion;
+            IntOpenHashSet seen = repairSeen;
+            region.clear();
+            seen.clear();
+            for (IntIterator it = changed.iterator(); it.hasNext(); ) {
+                int cell = it.nextInt();
+                if (cell == start) {
+                    return false;
+                }
+                if (seen.add(cell)) {
+                    region.add(cell);
+                }
+            }
+            for (int i = 0; i < region.size(); i++) {
+                int cell = region.getInt(i);
+                if (distance[cell] < 0) {
+                    continue; // Недостижимая колонка - через нее ничего не шло
+                }
+                int child = distance[cell] + 1;
+                for (int direction = 0; direction < 4; direction++) {
+                    int next = neighbour(cell, direction);
+                    if (next >= 0 && distance[next] == child && seen.add(next)) {
+                        if (region.size() >= MAX_REPAIR_REGION) {
+                            return false;
+                        }
+                        region.add(next);
+                    }
+                }
+            }
+            for (int i = 0; i < region.size(); i++) {
+                distance[region.getInt(i)] = -1;
+            }
+
+            // 2. Начальные расстояния сброшенных колонок - от уцелевших соседей
+            LongHeapPriorityQueue queue = repairQueue;
+            queue.clear();
+            for (int i = 0; i < region.size(); i++) {
+                int cell = region.getInt(i);
+                int best = -1;
+                for (int direction = 0; direction < 4; direction++) {
+                    int from = neighbour(cell, direction);
+                    if (from >= 0 && distance[from] >= 0 && canStep(from, cell, start) &&
+                            (best < 0 || distance[from] + 1 < best)) {
+                        best = distance[from] + 1;
+                    }
+                }
+                if (best >= 0) {
+                    distance[cell] = best;
+                    queue.enqueue(queueEntry(best, cell));
+                }
+            }
+
+            // 3. Дейкстра от них: заполняет сброшенное и уменьшает расстояния дальше по полю
+            while (!queue.isEmpty()) {
+                long entry = queue.dequeueLong();
+                int cell = (int) entry;
+                int dist = (int) (entry >>> 32);
+                if (distance[cell] != dist) {
+                    continue; // Уже нашли короче
+                }
+                for (int direction = 0; direction < 4; direction++) {
+                    int to = neighbour(cell, direction);
+                    if (to >= 0 && (distance[to] < 0 || distance[to] > dist + 1) && canStep(cell, to, start)) {
+                        distance[to] = dist + 1;
+                        queue.enqueue(queueEntry(dist + 1, to));
+                    }
+                }
+            }
+            return true;
+        }
+
+        private long queueEntry(int dist, int cell) {
+            return ((long) dist << 32) | cell;
+        }
+
+        /**
+         * Соседняя колонка ближе к цели (-1 - нет)
+         */
+        int downhill(int cell) {
+            int best = -1;
+            int bestDistance = distance[cell];
+            for (int direction = 0; direction < 4; direction++) {
+                int next = neighbour(cell, direction);
+                if (next >= 0 && distance[next] >= 0 && distance[next] < bestDistance) {
+                    best = next;
+                    bestDistance = distance[next];
+                }
+            }
+            return best;
+        }
+    }
+}
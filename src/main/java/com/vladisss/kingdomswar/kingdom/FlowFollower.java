@@ -0,0 +1,108 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.entity.Mob;
+
+import javax.annotation.Nullable;
+
+/**
+ * ДВИЖЕНИЕ ВОИНА ПО ПОЛЮ ПОТОКОВ
+ *
+ * Вместо PathNavigation (свой A* на каждого воина) воин каждый тик берет точку
+ * на несколько шагов вниз по общему полю к цели и передает ее в MoveControl.
+ * Следование прекращается, когда воин дошел, получил цель, включил обычную навигацию
+ * или перестал приближаться (тогда поле для него на время не используется).
+ */
+public class FlowFollower {
+    // ✅ На сколько колонок вперед смотреть по полю (до первого перепада высоты)
+    private static final int LOOKAHEAD = 3;
+    // Без приближения к цели столько тиков - застряли, отдаем навигации
+    private static final int STALL_TICKS = 60;
+    private static final int STALL_COOLDOWN_TICKS = 200;
+
+    @Nullable
+    private BlockPos goal;
+    private double speed;
+    private int stopDistance;
+    private int bestDistance;
+    private int stallTicks;
+    private int cooldownUntil;
+
+    /**
+     * Начать движение к цели поля
+     *
+     * @return false - поля нет, цель недостижима по полю или недавно застревали
+     */
+    public boolean start(Mob mob, KingdomTerritory kingdom, BlockPos goal, double speed, int stopDistance) {
+        if (mob.tickCount < cooldownUntil) {
+            return false;
+        }
+
+        BlockPos pos = mob.blockPosition();
+        int distance = kingdom.getFlowFields().distanceTo(goal, pos.getX(), pos.getZ());
+        if (distance < 0) {
+            return false;
+        }
+        if (distance <= stopDistance) {
+            return true; // Уже на месте
+        }
+
+        this.goal = goal;
+        this.speed = speed;
+        this.stopDistance = stopDistance;
+        this.bestDistance = distance;
+        this.stallTicks = 0;
+        mob.getNavigation().stop();
+        return true;
+    }
+
+    /**
+     * Шаг следования (каждый тик логики воина)
+     */
+    public void tick(Mob mob, KingdomTerritory kingdom) {
+        if (goal == null) {
+            return;
+        }
+        if (mob.getTarget() != null || !mob.getNavigation().isDone()) {
+            stop(); // Бой или обычная навигация важнее
+            return;
+        }
+
+        FlowFields fields = kingdom.getFlowFields();
+        BlockPos pos = mob.blockPosition();
+        int distance = fields.distanceTo(goal, pos.getX(), pos.getZ());
+
+        if (distance >= 0 && distance <= stopDistance) {
+            stop();
+            return;
+        }
+
+        if (distance >= 0 && distance < bestDistance) {
+            bestDistance = distance;
+            stallTicks = 0;
+        } else if (++stallTicks > STALL_TICKS) {
+            stop();
+            cooldownUntil = mob.tickCount + STALL_COOLDOWN_TICKS;
+            return;
+        }
+
+        long waypoint = fields.nextWaypoint(goal, pos.getX(), pos.getZ(), LOOKAHEAD);
+        if (waypoint != FlowFields.NO_WAYPOINT) {
+            mob.getMoveControl().setWantedPosition(
+                    BlockPos.getX(waypoint) + 0.5, BlockPos.getY(waypoint), BlockPos.getZ(waypoint) + 0.5, speed);
+
+            // Ступенька вверх: MoveControl сам прыгает только вплотную к точке - прыгаем явно
+            if (mob.onGround() && (BlockPos.getY(waypoint) > pos.getY() || mob.horizontalCollision)) {
+                mob.getJumpControl().jump();
+            }
+        }
+    }
+
+    public boolean isActive() {
+        return goal != null;
+    }
+
+    public void stop() {
+        goal = null;
+    }
+}
@@ -0,0 +1,83 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.LivingEntity;
+
+/**
+ * НАГРАДЫ ЗА УБИЙСТВА ПАЧКОЙ
+ *
+ * Очки за убитых воинами мобов копятся в окне WINDOW_TICKS тиков от первого убийства
+ * и зачисляются одной записью журнала ("+37 очков: убито 12 (Зомби ×7, Скелет ×5)") с одной
+ * проверкой расширения на окно - вместо записи в журнал, строки в лог и проверки
+ * расширения на каждого моба.
+ */
+public class KillRewardAccumulator {
+    // ✅ Окно накопления (тиков) и сколько типов мобов перечислять в записи
+    private static final int WINDOW_TICKS = 100;
+    private static final int MAX_LISTED_TYPES = ActivityLog.KILL_TYPES;
+
+    private final KingdomTerritory kingdom;
+    private final Object2IntLinkedOpenHashMap<EntityType<?>> killsByType = new Object2IntLinkedOpenHashMap<>();
+    private final String[] listedTypes = new String[MAX_LISTED_TYPES];
+    private final int[] listedKills = new int[MAX_LISTED_TYPES];
+    private int points = 0;
+    private int kills = 0;
+    private long windowEnd = -1;
+
+    public KillRewardAccumulator(KingdomTerritory kingdom) {
+        this.kingdom = kingdom;
+    }
+
+    /**
+     * Воин убил моба: очки по здоровью (1 очко за 10 HP, минимум 1)
+     */
+    public void add(LivingEntity killed, long gameTime) {
+        if (kills == 0) {
+            windowEnd = gameTime + WINDOW_TICKS;
+        }
+        points += Math.max(1, (int) (killed.getMaxHealth() / 10.0));
+        kills++;
+        killsByType.addTo(killed.getType(), 1);
+    }
+
+    /**
+     * Окно закончилось - зачислить накопленное и один раз проверить расширение
+     */
+    public void tick(ServerLevel level) {
+        if (kills == 0 || level.getGameTime() < windowEnd) {
+            return;
+        }
+
+        kingdom.addKillReward(points, kills, listedTypes, listedKills, listKills());
+        points = 0;
+        kills = 0;
+        killsByType.clear();
+
+        kingdom.expandTerritory(level); // Флаги границы переносит само расширение
+    }
+
+    /**
+     * Еще не зачисленные очки (учитываются при сохранении)
+     */
+    public int getPendingPoints() {
+        return points;
+    }
+
+    // Разбивка по типам для записи журнала: первые MAX_LISTED_TYPES по порядку убийств
+    // (текст собирает ActivityLog при показе)
+    private int listKills() {
+        int listed = 0;
+        for (Object2IntMap.Entry<EntityType<?>> entry : killsByType.object2IntEntrySet()) {
+            if (listed == MAX_LISTED_TYPES) {
+                break;
+            }
+            listedTypes[listed] = EntityType.getKey(entry.getKey()).toString();
+            listedKills[listed] = entry.getIntValue();
+            listed++;
+        }
+        return listed;
+    }
+}
@@ -4,11 +4,6 @@ import com.vladisss.kingdomswar.entity.GuardEntity;
 import com.vladisss.kingdomswar.entity.KnightEntity;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.world.entity.LivingEntity;
-import net.minecraft.world.entity.Mob;
-import net.minecraft.world.entity.monster.Monster;
-import net.minecraft.world.entity.player.Player;
-import net.minecraft.world.phys.AABB;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,13 +21,11 @@ public class KingdomAI {
     private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
     
     // ==================== КОНСТАНТЫ ====================
-    private static final int CASTLE_DETECTION_RADIUS = 16;  // Радиус видимости замка
-    private static final int CRITICAL_THREAT_RADIUS = 32;   // Радиус критической угрозы
     private static final int GUARD_MAX_DISTANCE = 5;        // Стражники не убегают дальше 5 блоков от замка
     private static final int KNIGHT_MAX_DISTANCE = 5;       // Рыцари не уходят дальше 5 блоков от границы территории
     
     private static final int MAX_ATTACKERS_PER_TARGET = 3;  // Максимум атакующих на одну цель
-    private static final int THREAT_CHECK_INTERVAL = 40;   // Проверка угроз каждые 5 секунд
+    private static final int MAX_SECTORS = 8;               // Максимум секторов патруля рыцарей
     
     // ==================== СОСТОЯНИЕ ====================
     public enum ThreatLevel {
@@ -42,391 +35,358 @@ public class KingdomAI {
         CRITICAL        // Критическая угроза - ВСЕ ВОЙСКА НА ЗАЩИТУ!
     }
     
+    // Меняется только на серверном потоке (applyThreatLevel)
     private ThreatLevel currentThreatLevel = ThreatLevel.NONE;
-    private long lastThreatCheck = 0;
-    private long lastOptimization = 0;
     
-    // Карта атакующих: цель -> список атакующих
-    private Map<UUID, Set<UUID>> targetAssignments = new HashMap<>();
+    // Переиспользуемые индекс войск и решатель распределения (только поток планирования)
+    private final TroopSpatialIndex troopIndex = new TroopSpatialIndex();
+    private final TargetAssigner assigner = new TargetAssigner();
+    
+    // Текущий проход распределения (обработчик создается один раз, без захвата списков)
+    private AssignmentPlan planning;
+    private int planningTroopBase;                  // Слот снимка для слота 0 индекса
+    private int[] planningThreatSlots = new int[16]; // Номер угрозы в решателе -> слот снимка
+    private final TargetAssigner.Sink targetSink = this::recordTarget;
+    
+    // Проход оптимизации позиций, нарезанный по тикам (см. KingdomScheduler)
+    private List<GuardEntity> positioningGuards = List.of();
+    private List<KnightEntity> positioningKnights = List.of();
+    private int positioningCursor = -1; // -1 - проход не начат
     
     // ==================== ГЛАВНЫЙ ЦИКЛ AI ====================
     
     /**
-     * Главный метод AI - вызывается каждый тик
+     * Главный метод AI - планирование обороны по снимку поля боя.
+     * Вызывается в потоке планирования (ThreatPlanner): мир и сущности здесь не трогаем,
+     * команды складываются в план и применяются серверным потоком.
+     * Оптимизация позиций вынесена в отдельную задачу планировщика (optimizeTroopPositions).
      */
-    public void evaluateSituation(ServerLevel level, KingdomTerritory kingdom) {
-        long currentTime = level.getGameTime();
-        
-        // 1. Обновляем оценку угрозы каждые 5 секунд
-        if (currentTime - lastThreatCheck >= THREAT_CHECK_INTERVAL) {
-            updateThreatLevel(level, kingdom);
-            lastThreatCheck = currentTime;
-        }
+    public void planDefense(KingdomWorldView battlefield, AssignmentPlan plan) {
+        // 1. Оценка угрозы
+        ThreatLevel threatLevel = assessThreatLevel(battlefield);
+        plan.setThreatLevel(threatLevel);
         
         // 2. Управляем войсками в зависимости от угрозы
-        manageTroops(level, kingdom);
-        
-        // 3. Оптимизируем распределение войск каждые 10 секунд
-        if (currentTime - lastOptimization >= 40) {
-            optimizeTroopPositions(level, kingdom);
-            lastOptimization = currentTime;
+        switch (threatLevel) {
+            case CRITICAL:
+                // ВСЕ ВОЙСКА К ЗАМКУ!
+                defendCastleAllForces(battlefield, plan);
+                break;
+                
+            case MEDIUM:
+                // Усиленная оборона - распределяем умно
+                smartDefense(battlefield, plan);
+                break;
+                
+            case LOW:
+                // Патрулирование территории (уже управляется через optimizeTroopPositions)
+                break;
+                
+            case NONE:
+                // Мирное время - рыцари могут исследовать дальше для расширения
+                plan.widenKnightPatrol();
+                break;
         }
     }
     
     // ==================== СИСТЕМА ОБНАРУЖЕНИЯ УГРОЗ ====================
     
     /**
-     * Обновление уровня угрозы для королевства
+     * Уровень угрозы по зонам снимка
      */
-    private void updateThreatLevel(ServerLevel level, KingdomTerritory kingdom) {
-        BlockPos castleCenter = kingdom.getCastleCenter();
-        int territoryRadius = kingdom.getRadius();
-        
-        // Ищем всех потенциальных врагов в зоне видимости замка (16 блоков)
-        List<LivingEntity> nearCastleThreats = findThreatsInRadius(level, castleCenter, CASTLE_DETECTION_RADIUS);
-        
-        // Ищем врагов в критической зоне (32 блока)
-        List<LivingEntity> criticalThreats = findThreatsInRadius(level, castleCenter, CRITICAL_THREAT_RADIUS);
-        
-        // Ищем врагов на территории
-        List<LivingEntity> territoryThreats = findThreatsInRadius(level, castleCenter, territoryRadius);
-        
-        // Определяем уровень угрозы
-        ThreatLevel oldLevel = currentThreatLevel;
-        
-        if (!nearCastleThreats.isEmpty()) {
+    private ThreatLevel assessThreatLevel(KingdomWorldView battlefield) {
+        if (battlefield.countThreatsIn(ThreatSnapshot.NEAR_CASTLE) > 0) {
             // КРИТИЧЕСКАЯ УГРОЗА: враги у самого замка!
-            currentThreatLevel = ThreatLevel.CRITICAL;
-        } else if (!criticalThreats.isEmpty()) {
+            return ThreatLevel.CRITICAL;
+        } else if (battlefield.countThreatsIn(ThreatSnapshot.IN_CRITICAL_ZONE) > 0) {
             // СРЕДНЯЯ УГРОЗА: враги близко к замку
-            currentThreatLevel = ThreatLevel.MEDIUM;
-        } else if (!territoryThreats.isEmpty()) {
+            return ThreatLevel.MEDIUM;
+        } else if (battlefield.countThreatsIn(ThreatSnapshot.IN_TERRITORY) > 0) {
             // НИЗКАЯ УГРОЗА: враги на территории
-            currentThreatLevel = ThreatLevel.LOW;
-        } else {
-            // НЕТ УГРОЗ
-            currentThreatLevel = ThreatLevel.NONE;
+            return ThreatLevel.LOW;
         }
+        // НЕТ УГРОЗ
+        return ThreatLevel.NONE;
+    }
+    
+    /**
+     * Применить рассчитанный уровень угрозы (серверный поток, вместе с планом)
+     */
+    public void applyThreatLevel(KingdomTerritory kingdom, AssignmentPlan plan) {
+        ThreatLevel oldLevel = currentThreatLevel;
+        currentThreatLevel = plan.getThreatLevel();
         
         // Логируем изменение уровня угрозы
         if (oldLevel != currentThreatLevel) {
+            KingdomWorldView battlefield = plan.getSnapshot();
             LOGGER.warn("[AI] {} - Уровень угрозы: {} -> {} (Врагов: у замка={}, критич={}, террит={}) ",
                 kingdom.getName(), oldLevel, currentThreatLevel,
-                nearCastleThreats.size(), criticalThreats.size(), territoryThreats.size());
+                battlefield.countThreatsIn(ThreatSnapshot.NEAR_CASTLE),
+                battlefield.countThreatsIn(ThreatSnapshot.IN_CRITICAL_ZONE),
+                battlefield.countThreatsIn(ThreatSnapshot.IN_TERRITORY));
         }
-    }
-    
-    /**
-     * Поиск угроз в указанном радиусе
-     */
-    private List<LivingEntity> findThreatsInRadius(ServerLevel level, BlockPos center, int radius) {
-        AABB searchArea = new AABB(
-            center.offset(-radius, -50, -radius),
-            center.offset(radius, 100, radius)
-        );
-        
-        List<LivingEntity> threats = new ArrayList<>();
-        
-        // Ищем монстров
-        threats.addAll(level.getEntitiesOfClass(Monster.class, searchArea, 
-            monster -> monster.isAlive()));
         
         // TODO: Когда добавите дипломатию, здесь будет проверка враждебности игроков
         // Пока считаем всех игроков нейтральными
-        // threats.addAll(level.getEntitiesOfClass(Player.class, searchArea,
-        //     player -> kingdom.isHostile(player)));
-        
-        return threats;
     }
     
     // ==================== УПРАВЛЕНИЕ ВОЙСКАМИ ====================
     
-    /**
-     * Управление войсками в зависимости от уровня угрозы
-     */
-    private void manageTroops(ServerLevel level, KingdomTerritory kingdom) {
-        BlockPos castleCenter = kingdom.getCastleCenter();
-        int territoryRadius = kingdom.getRadius();
-        
-        // Получаем всех войск
-        List<GuardEntity> guards = getGuards(level, castleCenter, territoryRadius);
-        List<KnightEntity> knights = getKnights(level, castleCenter, territoryRadius);
-        
-        switch (currentThreatLevel) {
-            case CRITICAL:
-                // ВСЕ ВОЙСКА К ЗАМКУ!
-                defendCastleAllForces(level, kingdom, guards, knights);
-                break;
-                
-            case MEDIUM:
-                // Усиленная оборона - распределяем умно
-                smartDefense(level, kingdom, guards, knights);
-                break;
-                
-            case LOW:
-                // Патрулирование территории
-                patrolTerritory(level, kingdom, guards, knights);
-                break;
-                
-            case NONE:
-                // Мирное время - расширение и патруль
-                peacefulExpansion(level, kingdom, guards, knights);
-                break;
-        }
-    }
-    
     /**
      * КРИТИЧЕСКАЯ ЗАЩИТА: Все войска защищают замок
      */
-    private void defendCastleAllForces(ServerLevel level, KingdomTerritory kingdom, 
-                                       List<GuardEntity> guards, List<KnightEntity> knights) {
-        BlockPos castleCenter = kingdom.getCastleCenter();
-        
-        // Находим все угрозы в критической зоне
-        List<LivingEntity> threats = findThreatsInRadius(level, castleCenter, CRITICAL_THREAT_RADIUS);
+    private void defendCastleAllForces(KingdomWorldView battlefield, AssignmentPlan plan) {
+        // Все угрозы в критической зоне (уже отсортированы: ближайшие к замку - первые)
+        int threatCount = collectThreats(battlefield, ThreatSnapshot.IN_CRITICAL_ZONE);
         
-        if (threats.isEmpty()) return;
+        if (threatCount == 0) return;
         
-        LOGGER.info("[AI] {} - КРИТИЧЕСКАЯ ЗАЩИТА! Все {} войск атакуют {} врагов",
-            kingdom.getName(), guards.size() + knights.size(), threats.size());
+        LOGGER.debug("[AI] {} - КРИТИЧЕСКАЯ ЗАЩИТА! Все {} войск атакуют {} врагов",
+            battlefield.getKingdomName(), battlefield.getTroopCount(), threatCount);
         
-        // Приоритетные цели - ближайшие к замку
-        threats.sort(Comparator.comparingDouble(e -> e.distanceToSqr(castleCenter.getX(), castleCenter.getY(), castleCenter.getZ())));
-        
-        // Отправляем всех на ближайшие цели
-        int targetIndex = 0;
-        for (GuardEntity guard : guards) {
-            LivingEntity target = threats.get(targetIndex % threats.size());
-            guard.setTarget(target);
-            targetIndex++;
-        }
-        
-        for (KnightEntity knight : knights) {
-            LivingEntity target = threats.get(targetIndex % threats.size());
-            knight.setTarget(target);
-            targetIndex++;
+        // Отправляем всех на ближайшие цели (сначала стражники, затем рыцари)
+        for (int troop = 0; troop < battlefield.getTroopCount(); troop++) {
+            plan.assign(troop, planningThreatSlots[troop % threatCount], false);
         }
     }
     
     /**
      * УМНАЯ ЗАЩИТА: Распределяем войска группами по 2-3 человека
      */
-    private void smartDefense(ServerLevel level, KingdomTerritory kingdom,
-                              List<GuardEntity> guards, List<KnightEntity> knights) {
-        BlockPos castleCenter = kingdom.getCastleCenter();
-        int territoryRadius = kingdom.getRadius();
-        
-        // Находим все угрозы на территории
-        List<LivingEntity> threats = findThreatsInRadius(level, castleCenter, territoryRadius);
+    private void smartDefense(KingdomWorldView battlefield, AssignmentPlan plan) {
+        // Все угрозы на территории (приоритет: ближайшие к замку - уже отсортированы)
+        int threatCount = collectThreats(battlefield, ThreatSnapshot.IN_TERRITORY);
         
-        if (threats.isEmpty()) {
-            // Если нет угроз, возвращаемся к патрулю
-            patrolTerritory(level, kingdom, guards, knights);
+        if (threatCount == 0) {
+            // Если нет угроз, войска продолжают патруль
             return;
         }
         
-        // Очищаем старые назначения
-        targetAssignments.clear();
-        
-        // Приоритет: ближайшие к замку враги
-        threats.sort(Comparator.comparingDouble(e -> 
-            e.distanceToSqr(castleCenter.getX(), castleCenter.getY(), castleCenter.getZ())));
-        
-        // Распределяем стражников (они ближе к замку)
-        assignTroopsToTargets(guards, threats, castleCenter);
+        // Очищаем старые назначения (лимит атакующих на цель - в решателе)
+        assigner.clearThreats();
+        for (int i = 0; i < threatCount; i++) {
+            int threat = planningThreatSlots[i];
+            assigner.addThreat(battlefield.getThreatX(threat), battlefield.getThreatY(threat), battlefield.getThreatZ(threat));
+        }
+        assigner.setAllCapacities(MAX_ATTACKERS_PER_TARGET);
         
-        // Распределяем рыцарей (они могут уходить дальше)
-        assignTroopsToTargets(knights, threats, castleCenter);
+        // Распределяем стражников (они ближе к замку), затем рыцарей -
+        // лимит атакующих на цель общий для обоих проходов
+        assignTroopsToTargets(battlefield, plan, 0, battlefield.getGuardCount());
+        assignTroopsToTargets(battlefield, plan, battlefield.getFirstKnightSlot(), battlefield.getTroopCount());
     }
     
     /**
-     * Умное распределение войск по целям (макс 2-3 на цель)
+     * Умное распределение войск по целям (макс 2-3 на цель).
+     * Цели идут по приоритету (ближайшие к замку первыми), каждой - ближайшие свободные воины.
+     *
+     * @param from первый слот воина в снимке (включительно)
+     * @param to   последний слот (не включительно)
      */
-    private <T extends Mob> void assignTroopsToTargets(
-            List<T> troops,
-            List<LivingEntity> enemies,
-            BlockPos castlePos) {  // ✅ Круглая скобка!
-
-        for (T troop : troops) {
-            LivingEntity bestTarget = null;
-            double bestScore = Double.MAX_VALUE;
-
-            for (LivingEntity threat : enemies) {
-                int currentAttackers = targetAssignments
-                        .getOrDefault(threat.getUUID(), new HashSet<>()).size();
-
-                if (currentAttackers >= MAX_ATTACKERS_PER_TARGET) {
-                    continue;
-                }
-
-                double distanceToTroop = troop.distanceToSqr(threat);
-                double distanceToCastle = threat.distanceToSqr(
-                        castlePos.getX(),
-                        castlePos.getY(),
-                        castlePos.getZ()
-                );
-                double score = distanceToTroop + (distanceToCastle * 0.5);
-
-                if (score < bestScore) {
-                    bestScore = score;
-                    bestTarget = threat;
-                }
-            }
-
-            if (bestTarget != null) {
-                troop.setTarget(bestTarget);
-                targetAssignments.computeIfAbsent(bestTarget.getUUID(),
-                        k -> new HashSet<>()).add(troop.getUUID());
-            }
+    private void assignTroopsToTargets(KingdomWorldView battlefield, AssignmentPlan plan, int from, int to) {
+        if (from >= to) return;
+        
+        troopIndex.clear();
+        for (int troop = from; troop < to; troop++) {
+            troopIndex.add(battlefield.getTroopX(troop), battlefield.getTroopY(troop), battlefield.getTroopZ(troop));
         }
+        
+        planning = plan;
+        planningTroopBase = from;
+        assigner.assign(troopIndex, null, targetSink);
+        planning = null;
     }
-
-
-    /**
-     * ПАТРУЛЬ ТЕРРИТОРИИ: Войска патрулируют свои зоны
-     */
-    private void patrolTerritory(ServerLevel level, KingdomTerritory kingdom,
-                                 List<GuardEntity> guards, List<KnightEntity> knights) {
-        // Рыцари патрулируют границы территории (уже управляется через optimizeTroopPositions)
-        // Стражники стоят у замка (уже управляется через optimizeTroopPositions)
+    
+    private void recordTarget(int troopSlot, int threatIndex) {
+        int troop = planningTroopBase + troopSlot;
+        int threat = planningThreatSlots[threatIndex];
+        planning.assign(troop, threat, false);
     }
     
     /**
-     * МИРНОЕ РАСШИРЕНИЕ: Фокус на росте территории
+     * Собрать слоты угроз зоны в planningThreatSlots (порядок снимка - по близости к замку)
+     *
+     * @return количество угроз
      */
-    private void peacefulExpansion(ServerLevel level, KingdomTerritory kingdom,
-                                   List<GuardEntity> guards, List<KnightEntity> knights) {
-        // В мирное время просто патрулируем
-        patrolTerritory(level, kingdom, guards, knights);
+    private int collectThreats(KingdomWorldView battlefield, int zone) {
+        if (planningThreatSlots.length < battlefield.getThreatCount()) {
+            planningThreatSlots = new int[Math.max(battlefield.getThreatCount(), planningThreatSlots.length * 2)];
+        }
         
-        // Рыцари могут исследовать дальше для расширения
-        for (KnightEntity knight : knights) {
-            knight.setPatrolRadius(20); // Больший радиус патруля
+        int count = 0;
+        for (int threat = 0; threat < battlefield.getThreatCount(); threat++) {
+            if (battlefield.isThreatIn(threat, zone)) {
+                planningThreatSlots[count++] = threat;
+            }
         }
+        return count;
     }
     
     // ==================== ОПТИМИЗАЦИЯ ПОЗИЦИЙ ====================
     
     /**
-     * Оптимизация распределения войск
+     * Оптимизация распределения войск (по частям).
+     * Составы войск фиксируются в начале прохода, за тик обрабатывается столько воинов,
+     * сколько позволяет бюджет - остаток продолжается в следующем тике.
+     *
+     * @return true - проход завершен
      */
-    private void optimizeTroopPositions(ServerLevel level, KingdomTerritory kingdom) {
+    public boolean optimizeTroopPositions(KingdomTerritory kingdom, long deadlineNanos) {
+        if (positioningCursor < 0) {
+            positioningGuards = kingdom.getTroops().getGuards();
+            positioningKnights = kingdom.getTroops().getKnights();
+            positioningCursor = 0;
+
+            // ✅ Поля потоков к точкам патруля секторов этого прохода
+            kingdom.getFlowFields().setSectorGoals(sectorPoints(
+                    kingdom.getCastleCenter(), kingdom.getRadius(), positioningKnights.size()));
+        }
+        
         BlockPos castleCenter = kingdom.getCastleCenter();
         int territoryRadius = kingdom.getRadius();
-        
-        List<GuardEntity> guards = getGuards(level, castleCenter, territoryRadius);
-        List<KnightEntity> knights = getKnights(level, castleCenter, territoryRadius);
-        
-        // Стражники - вокруг замка
-        distributeGuardsAroundCastle(guards, castleCenter);
-        
-        // Рыцари - по секторам территории
-        distributeKnightsInSectors(knights, castleCenter, territoryRadius);
+        int guardCount = positioningGuards.size();
+        int knightCount = positioningKnights.size();
+        
+        while (positioningCursor < guardCount + knightCount) {
+            int i = positioningCursor++;
+            if (i < guardCount) {
+                // Стражники - вокруг замка
+                placeGuardAroundCastle(positioningGuards.get(i), i, guardCount, castleCenter);
+            } else {
+                // Рыцари - по секторам территории
+                placeKnightInSector(positioningKnights.get(i - guardCount), i - guardCount, knightCount,
+                        castleCenter, territoryRadius);
+            }
+            
+            if (positioningCursor < guardCount + knightCount && KingdomScheduler.outOfTime(deadlineNanos)) {
+                return false; // Продолжим со следующего воина в следующем тике
+            }
+        }
+        return finishPositioning();
+    }
+    
+    private boolean finishPositioning() {
+        positioningGuards = List.of();
+        positioningKnights = List.of();
+        positioningCursor = -1;
+        return true;
     }
     
-    private void distributeGuardsAroundCastle(List<GuardEntity> guards, BlockPos castleCenter) {
-        int guardCount = guards.size();
-        if (guardCount == 0) return;
+    private void placeGuardAroundCastle(GuardEntity guard, int i, int guardCount, BlockPos castleCenter) {
+        if (!guard.isAlive()) return;
         
-        for (int i = 0; i < guardCount; i++) {
-            GuardEntity guard = guards.get(i);
-            double angle = (2 * Math.PI * i) / guardCount;
-            int x = castleCenter.getX() + (int)(Math.cos(angle) * 8);
-            int z = castleCenter.getZ() + (int)(Math.sin(angle) * 8);
-            BlockPos guardPost = new BlockPos(x, castleCenter.getY(), z);
-            
-            // Устанавливаем пост стражника
-            guard.setGuardPos(guardPost);
-        }
+        double angle = (2 * Math.PI * i) / guardCount;
+        int x = castleCenter.getX() + (int)(Math.cos(angle) * 8);
+        int z = castleCenter.getZ() + (int)(Math.sin(angle) * 8);
+        BlockPos guardPost = new BlockPos(x, castleCenter.getY(), z);
+        
+        // Устанавливаем пост стражника
+        guard.setGuardPos(guardPost);
     }
     
-    private void distributeKnightsInSectors(List<KnightEntity> knights, BlockPos castleCenter, int territoryRadius) {
-        int knightCount = knights.size();
-        if (knightCount == 0) return;
+    private void placeKnightInSector(KnightEntity knight, int i, int knightCount,
+                                     BlockPos castleCenter, int territoryRadius) {
+        if (!knight.isAlive()) return;
         
-        int sectors = Math.min(knightCount, 8); // Максимум 8 секторов
+        int sectors = Math.min(knightCount, MAX_SECTORS);
+        BlockPos patrolPos = sectorPoint(castleCenter, territoryRadius, i % sectors, sectors);
         
-        for (int i = 0; i < knightCount; i++) {
-            KnightEntity knight = knights.get(i);
-            double angle = (2 * Math.PI * i) / sectors;
-            int patrolDistance = territoryRadius - 15; // Патрулируют у границы
-            int x = castleCenter.getX() + (int)(Math.cos(angle) * patrolDistance);
-            int z = castleCenter.getZ() + (int)(Math.sin(angle) * patrolDistance);
-            BlockPos patrolPos = new BlockPos(x, castleCenter.getY(), z);
-            
-            knight.setPatrolCenter(patrolPos);
-            knight.setPatrolRadius(15);
+        knight.setPatrolCenter(patrolPos);
+        knight.setPatrolRadius(15);
+    }
+    
+    /**
+     * Центр патруля сектора (у границы территории)
+     */
+    private static BlockPos sectorPoint(BlockPos castleCenter, int territoryRadius, int sector, int sectors) {
+        double angle = (2 * Math.PI * sector) / sectors;
+        int patrolDistance = territoryRadius - 15; // Патрулируют у границы
+        int x = castleCenter.getX() + (int)(Math.cos(angle) * patrolDistance);
+        int z = castleCenter.getZ() + (int)(Math.sin(angle) * patrolDistance);
+        return new BlockPos(x, castleCenter.getY(), z);
+    }
+    
+    private static List<BlockPos> sectorPoints(BlockPos castleCenter, int territoryRadius, int knightCount) {
+        int sectors = Math.min(knightCount, MAX_SECTORS);
+        List<BlockPos> points = new ArrayList<>(sectors);
+        for (int sector = 0; sector < sectors; sector++) {
+            points.add(sectorPoint(castleCenter, territoryRadius, sector, sectors));
         }
+        return points;
     }
     
     // ==================== НАЙМ ВОЙСК ====================
     
     /**
-     * Умный найм войск
+     * Умный найм войск: приоритеты проходятся, пока есть очки и места,
+     * и весь недобор нанимается одной пачкой (спавн - отрядами через очередь найма)
      */
     public void smartRecruit(ServerLevel level, KingdomTerritory kingdom) {
+        RecruitmentPlanner recruitment = kingdom.getRecruitment();
         int points = kingdom.getPoints();
-        int guards = kingdom.countGuards(level);
-        int knights = kingdom.countKnights(level);
-        int totalTroops = guards + knights;
+        int guards = kingdom.countGuards(level) + recruitment.getPendingGuards();
+        int knights = kingdom.countKnights(level) + recruitment.getPendingKnights();
+        int slots = kingdom.getFreeTroopSlots(level);
         int territoryRadius = kingdom.getRadius();
         
         // Минимальное количество войск для защиты
         int minGuards = 4; // Минимум 4 стражника у замка
         int optimalKnights = Math.max(3, territoryRadius / 30); // 1 рыцарь на 30 блоков радиуса
         
-        // КРИТИЧЕСКАЯ СИТУАЦИЯ: нанимаем любой ценой
-        if (currentThreatLevel == ThreatLevel.CRITICAL && totalTroops < 5) {
-            if (points >= 50) { // Минимальная цена
-                kingdom.recruitGuard(level);
-                LOGGER.warn("[AI] {} - ЭКСТРЕННЫЙ НАЙМ! Критическая угроза!", kingdom.getName());
-                return;
-            }
-        }
+        int guardCost = KingdomTerritory.getRecruitCost(RecruitmentPlanner.TroopType.GUARD);
+        int knightCost = KingdomTerritory.getRecruitCost(RecruitmentPlanner.TroopType.KNIGHT);
+        int hireGuards = 0;
+        int hireKnights = 0;
+        boolean extraHired = false;
         
-        // ПРИОРИТЕТ 1: Минимальная защита замка
-        if (guards < minGuards && points >= 100) {
-            kingdom.recruitGuard(level);
-            LOGGER.info("[AI] {} - нанимает стражника для защиты замка ({}/{})", 
-                kingdom.getName(), guards + 1, minGuards);
-            return;
+        while (slots > 0) {
+            boolean guard;
+            
+            if (currentThreatLevel == ThreatLevel.CRITICAL && guards + knights < 5 && points >= 50) {
+                // КРИТИЧЕСКАЯ СИТУАЦИЯ: нанимаем любой ценой
+                guard = true;
+            } else if (guards < minGuards && points >= 100) {
+                // ПРИОРИТЕТ 1: Минимальная защита замка
+                guard = true;
+            } else if (knights < optimalKnights && points >= 200) {
+                // ПРИОРИТЕТ 2: Рыцари для патруля территории
+                guard = false;
+            } else if (!extraHired && points >= 500) {
+                // ПРИОРИТЕТ 3: Одно дополнительное войско за цикл при достатке очков
+                // (баланс 50/50 между стражниками и рыцарями)
+                guard = guards < knights;
+                extraHired = true;
+            } else {
+                break;
+            }
+            
+            if (guard) {
+                hireGuards++;
+                guards++;
+                points -= guardCost;
+            } else {
+                hireKnights++;
+                knights++;
+                points -= knightCost;
+            }
+            slots--;
         }
         
-        // ПРИОРИТЕТ 2: Рыцари для патруля территории
-        if (knights < optimalKnights && points >= 200) {
-            kingdom.recruitKnight(level);
-            LOGGER.info("[AI] {} - нанимает рыцаря для территории ({}/{})", 
-                kingdom.getName(), knights + 1, optimalKnights);
+        if (hireGuards + hireKnights == 0) {
             return;
         }
         
-        // ПРИОРИТЕТ 3: Дополнительные войска при достатке очков
-        if (points >= 500) {
-            // Баланс 50/50 между стражниками и рыцарями
-            if (guards < knights && points >= 100) {
-                kingdom.recruitGuard(level);
-            } else if (points >= 200) {
-                kingdom.recruitKnight(level);
-            }
+        ActivityLog.Type reason = currentThreatLevel == ThreatLevel.CRITICAL
+                ? ActivityLog.Type.HIRE_EMERGENCY
+                : ActivityLog.Type.HIRE_PLANNED;
+        if (kingdom.hireBatch(level, hireGuards, hireKnights, reason)) {
+            LOGGER.info("[AI] {} - найм пачкой: стражников {} ({}/{}), рыцарей {} ({}/{})",
+                kingdom.getName(), hireGuards, guards, minGuards, hireKnights, knights, optimalKnights);
         }
     }
     
     // ==================== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ====================
     
-    private List<GuardEntity> getGuards(ServerLevel level, BlockPos center, int radius) {
-        return level.getEntitiesOfClass(GuardEntity.class,
-            new AABB(center.offset(-radius, -50, -radius), center.offset(radius, 100, radius)),
-            guard -> guard.isAlive()
-        );
-    }
-    
-    private List<KnightEntity> getKnights(ServerLevel level, BlockPos center, int radius) {
-        return level.getEntitiesOfClass(KnightEntity.class,
-            new AABB(center.offset(-radius, -50, -radius), center.offset(radius, 100, radius)),
-            knight -> knight.isAlive()
-        );
-    }
-    
     /**
      * Проверка, должно ли королевство расширяться
      */
@@ -445,6 +405,6 @@ public class KingdomAI {
     
     // Для совместимости со старым кодом
     public void optimizeKnightDistribution(ServerLevel level, KingdomTerritory kingdom) {
-        optimizeTroopPositions(level, kingdom);
+        optimizeTroopPositions(kingdom, Long.MAX_VALUE);
     }
 }
@@ -1,17 +1,26 @@
 package com.vladisss.kingdomswar.kingdom;
 
 import com.vladisss.kingdomswar.KingdomsWarMod;
+import com.vladisss.kingdomswar.structure.CastleConstructionJob;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.saveddata.SavedData;
 
-import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 public class KingdomData extends SavedData {
     private static final String DATA_NAME = KingdomsWarMod.MODID + "_kingdom_data";
 
-    @Nullable
-    private KingdomTerritory kingdom;
+    private final List<KingdomTerritory> kingdoms = new ArrayList<>();
+    private final List<CastleConstructionJob> constructions = new ArrayList<>(); // ✅ Недостроенные замки
+    private final Map<UUID, BorderFlagIndex> borderFlags = new HashMap<>(); // ✅ Поставленные флаги границ
 
     public KingdomData() {
     }
@@ -27,8 +36,34 @@ public class KingdomData extends SavedData {
     public static KingdomData load(CompoundTag tag) {
         KingdomData data = new KingdomData();
 
-        if (tag.contains("Kingdom")) {
-            data.kingdom = KingdomTerritory.load(tag.getCompound("Kingdom"));
+        if (tag.contains("Kingdoms")) {
+            ListTag list = tag.getList("Kingdoms", Tag.TAG_COMPOUND);
+            for (int i = 0; i < list.size(); i++) {
+                data.kingdoms.add(KingdomTerritory.load(list.getCompound(i)));
+            }
+        } else if (tag.contains("Kingdom")) {
+            // Старый формат: одно королевство на измерение
+            data.kingdoms.add(KingdomTerritory.load(tag.getCompound("Kingdom")));
+        }
+
+        ListTag constructionList = tag.getList("Constructions", Tag.TAG_COMPOUND);
+        for (int i = 0; i < constructionList.size(); i++) {
+            data.constructions.add(CastleConstructionJob.load(constructionList.getCompound(i)));
+        }
+
+        if (tag.contains("BorderFlags")) {
+            ListTag flagList = tag.getList("BorderFlags", Tag.TAG_COMPOUND);
+            for (int i = 0; i < flagList.size(); i++) {
+                CompoundTag entry = flagList.getCompound(i);
+                data.borderFlags.put(entry.getUUID("kingdom"), BorderFlagIndex.fromLongArray(entry.getLongArray("flags")));
+            }
+        } else {
+            // Старое сохранение: флаги уже стоят, но не записаны
+            for (KingdomTerritory kingdom : data.kingdoms) {
+                BorderFlagIndex index = new BorderFlagIndex();
+                index.setLegacy(true);
+                data.borderFlags.put(kingdom.getId(), index);
+            }
         }
 
         return data;
@@ -36,19 +71,57 @@ public class KingdomData extends SavedData {
 
     @Override
     public CompoundTag save(CompoundTag tag) {
-        if (kingdom != null) {
-            tag.put("Kingdom", kingdom.save());
+        ListTag list = new ListTag();
+        for (KingdomTerritory kingdom : kingdoms) {
+            list.add(kingdom.save());
+        }
+        tag.put("Kingdoms", list);
+
+        ListTag constructionList = new ListTag();
+        for (CastleConstructionJob job : constructions) {
+            constructionList.add(job.save());
+        }
+        tag.put("Constructions", constructionList);
+
+        ListTag flagList = new ListTag();
+        for (Map.Entry<UUID, BorderFlagIndex> entry : borderFlags.entrySet()) {
+            CompoundTag flags = new CompoundTag();
+            flags.putUUID("kingdom", entry.getKey());
+            flags.putLongArray("flags", entry.getValue().toLongArray());
+            flagList.add(flags);
         }
+        tag.put("BorderFlags", flagList);
         return tag;
     }
 
-    public void setKingdom(KingdomTerritory kingdom) {
-        this.kingdom = kingdom;
+    public void addKingdom(KingdomTerritory kingdom) {
+        if (!kingdoms.contains(kingdom)) {
+            kingdoms.add(kingdom);
+        }
+        setDirty();
+    }
+
+    public List<KingdomTerritory> getKingdoms() {
+        return Collections.unmodifiableList(kingdoms);
+    }
+
+    public void addConstruction(CastleConstructionJob job) {
+        if (!constructions.contains(job)) {
+            constructions.add(job);
+        }
+        setDirty();
+    }
+
+    public void removeConstruction(CastleConstructionJob job) {
+        constructions.remove(job);
         setDirty();
     }
 
-    @Nullable
-    public KingdomTerritory getKingdom() {
-        return kingdom;
+    public BorderFlagIndex getBorderFlags(KingdomTerritory kingdom) {
+        return borderFlags.computeIfAbsent(kingdom.getId(), id -> new BorderFlagIndex());
+    }
+
+    public List<CastleConstructionJob> getConstructions() {
+        return Collections.unmodifiableList(constructions);
     }
 }
@@ -1,53 +1,251 @@
 package com.vladisss.kingdomswar.kingdom;
 
+import com.vladisss.kingdomswar.entity.KingdomTroop;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 
 import javax.annotation.Nullable;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 
+/**
+ * МЕНЕДЖЕР КОРОЛЕВСТВ
+ *
+ * Несколько королевств в каждом измерении (ключ - ResourceKey<Level>, без сборки строк).
+ * Индекс "чанк -> королевство" делает getKingdomAt O(1) вместо перебора королевств.
+ * Индекс строится из битовых карт чанков (ChunkBitmap) и обновляется по изменившимся чанкам.
+ */
 public class KingdomManager {
-    private static final Map<String, KingdomTerritory> kingdoms = new HashMap<>();
+    private static final Map<ResourceKey<Level>, DimensionKingdoms> dimensions = new HashMap<>();
+
+    /**
+     * Королевства одного измерения
+     */
+    private static class DimensionKingdoms {
+        final List<KingdomTerritory> kingdoms = new ArrayList<>();
+        final List<KingdomTerritory> view = Collections.unmodifiableList(kingdoms);
+        final Map<UUID, KingdomTerritory> byId = new HashMap<>();
+        final Long2ObjectOpenHashMap<KingdomTerritory> chunkIndex = new Long2ObjectOpenHashMap<>();
+        // Какие чанки занесены в индекс за каждым королевством
+        final Map<KingdomTerritory, LongSet> indexedChunks = new HashMap<>();
+    }
 
     public static void registerKingdom(ServerLevel level, KingdomTerritory kingdom) {
-        String dimensionKey = level.dimension().location().toString();
-        kingdoms.put(dimensionKey, kingdom);
+        if (addKingdom(level, kingdom)) {
+            kingdom.getTroops().rebuild(level, kingdom);
+        }
 
         // Сохраняем в SavedData
         KingdomData data = KingdomData.get(level);
-        data.setKingdom(kingdom);
+        data.addKingdom(kingdom);
         data.setDirty();
     }
 
+    private static boolean addKingdom(ServerLevel level, KingdomTerritory kingdom) {
+        DimensionKingdoms dimension = dimensions.computeIfAbsent(level.dimension(), key -> new DimensionKingdoms());
+        if (dimension.byId.putIfAbsent(kingdom.getId(), kingdom) != null) {
+            return false;
+        }
+
+        dimension.kingdoms.add(kingdom);
+        indexTerritory(dimension, kingdom);
+        kingdom.getPresence().refresh(level);
+        return true;
+    }
+
+    /**
+     * Все королевства измерения (неизменяемый список, без копирования)
+     */
+    public static List<KingdomTerritory> getKingdoms(Level level) {
+        DimensionKingdoms dimension = dimensions.get(level.dimension());
+        return dimension != null ? dimension.view : List.of();
+    }
+
+    public static boolean hasKingdoms(Level level) {
+        DimensionKingdoms dimension = dimensions.get(level.dimension());
+        return dimension != null && !dimension.kingdoms.isEmpty();
+    }
+
     @Nullable
-    public static KingdomTerritory getKingdom(Level level) {
-        String dimensionKey = level.dimension().location().toString();
-        return kingdoms.get(dimensionKey);
+    public static KingdomTerritory getKingdomById(Level level, UUID id) {
+        DimensionKingdoms dimension = dimensions.get(level.dimension());
+        return dimension != null ? dimension.byId.get(id) : null;
     }
 
+    /**
+     * Королевство, на территории которого находится позиция (O(1) по индексу чанков).
+     * В индексе только чанки из карт территорий - дополнительная проверка не нужна.
+     */
     @Nullable
     public static KingdomTerritory getKingdomAt(Level level, BlockPos pos) {
-        KingdomTerritory kingdom = getKingdom(level);
-        if (kingdom != null && kingdom.isInTerritory(pos)) {
+        DimensionKingdoms dimension = dimensions.get(level.dimension());
+        if (dimension == null) {
+            return null;
+        }
+
+        return dimension.chunkIndex.get(ChunkPos.asLong(
+                SectionPos.blockToSectionCoord(pos.getX()), SectionPos.blockToSectionCoord(pos.getZ())));
+    }
+
+    /**
+     * Королевство на позиции, а если его нет - ближайшее по замку (для команд администратора)
+     */
+    @Nullable
+    public static KingdomTerritory getNearestKingdom(Level level, BlockPos pos) {
+        KingdomTerritory kingdom = getKingdomAt(level, pos);
+        if (kingdom != null) {
             return kingdom;
         }
+
+        KingdomTerritory nearest = null;
+        double bestDistance = Double.MAX_VALUE;
+        for (KingdomTerritory candidate : getKingdoms(level)) {
+            double distance = candidate.getCastleCenter().distSqr(pos);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                nearest = candidate;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Королевство-владелец воина.
+     * Воины без сохраненного владельца (старые сохранения, команды) закрепляются
+     * за королевством, на территории которого стоят, иначе - за ближайшим.
+     */
+    @Nullable
+    public static KingdomTerritory getOwner(Level level, Mob troop) {
+        if (!(troop instanceof KingdomTroop kingdomTroop)) {
+            return null;
+        }
+
+        UUID kingdomId = kingdomTroop.getKingdomId();
+        if (kingdomId != null) {
+            return getKingdomById(level, kingdomId);
+        }
+
+        KingdomTerritory kingdom = getNearestKingdom(level, troop.blockPosition());
+        if (kingdom != null) {
+            kingdomTroop.setKingdomId(kingdom.getId());
+        }
+        return kingdom;
+    }
+
+    /**
+     * Территория королевства изменилась целиком - переиндексировать все его чанки
+     */
+    public static void onTerritoryChanged(Level level, KingdomTerritory kingdom) {
+        DimensionKingdoms dimension = getRegistered(level, kingdom);
+        if (dimension != null) {
+            indexTerritory(dimension, kingdom);
+            refreshPresence(level, kingdom);
+        }
+    }
+
+    /**
+     * Королевство заняло новые чанки (расширение, claimChunk) - дописать только их
+     */
+    public static void onChunksClaimed(Level level, KingdomTerritory kingdom, LongList chunks) {
+        DimensionKingdoms dimension = getRegistered(level, kingdom);
+        if (dimension == null) {
+            return;
+        }
+
+        LongSet indexed = dimension.indexedChunks.computeIfAbsent(kingdom, key -> new LongOpenHashSet());
+        for (int i = 0; i < chunks.size(); i++) {
+            long chunk = chunks.getLong(i);
+            if (dimension.chunkIndex.putIfAbsent(chunk, kingdom) == null) {
+                indexed.add(chunk);
+            }
+        }
+        refreshPresence(level, kingdom);
+    }
+
+    /**
+     * Королевство отдало чанк - он переходит к другому королевству, если тот тоже его занимает
+     */
+    public static void onChunkReleased(Level level, KingdomTerritory kingdom, long chunk) {
+        DimensionKingdoms dimension = getRegistered(level, kingdom);
+        if (dimension == null) {
+            return;
+        }
+
+        refreshPresence(level, kingdom);
+
+        LongSet indexed = dimension.indexedChunks.get(kingdom);
+        if (indexed == null || !indexed.remove(chunk)) {
+            return;
+        }
+        dimension.chunkIndex.remove(chunk);
+
+        int chunkX = ChunkPos.getX(chunk);
+        int chunkZ = ChunkPos.getZ(chunk);
+        for (KingdomTerritory other : dimension.kingdoms) {
+            if (other != kingdom && other.isChunkControlled(chunkX, chunkZ)) {
+                dimension.chunkIndex.put(chunk, other);
+                dimension.indexedChunks.computeIfAbsent(other, key -> new LongOpenHashSet()).add(chunk);
+                break;
+            }
+        }
+    }
+
+    // Игроки, стоявшие на изменившихся чанках, вошли или вышли без смены чанка
+    private static void refreshPresence(Level level, KingdomTerritory kingdom) {
+        if (level instanceof ServerLevel serverLevel) {
+            kingdom.getPresence().refresh(serverLevel);
+        }
+    }
+
+    @Nullable
+    private static DimensionKingdoms getRegistered(Level level, KingdomTerritory kingdom) {
+        DimensionKingdoms dimension = dimensions.get(level.dimension());
+        if (dimension != null && dimension.byId.get(kingdom.getId()) == kingdom) {
+            return dimension;
+        }
         return null;
     }
 
+    /**
+     * Занести в индекс все чанки территории (по карте чанков королевства).
+     * При пересечении территорий чанк остается за тем, кто занял его первым.
+     */
+    private static void indexTerritory(DimensionKingdoms dimension, KingdomTerritory kingdom) {
+        LongSet previous = dimension.indexedChunks.remove(kingdom);
+        if (previous != null) {
+            previous.forEach((long chunk) -> dimension.chunkIndex.remove(chunk, kingdom));
+        }
+
+        LongSet indexed = new LongOpenHashSet();
+        kingdom.getControlledChunks().forEach(chunk -> {
+            if (dimension.chunkIndex.putIfAbsent(chunk, kingdom) == null) {
+                indexed.add(chunk);
+            }
+        });
+        dimension.indexedChunks.put(kingdom, indexed);
+    }
+
     public static void loadKingdoms(ServerLevel level) {
         KingdomData data = KingdomData.get(level);
-        KingdomTerritory kingdom = data.getKingdom();
+        for (KingdomTerritory kingdom : data.getKingdoms()) {
+            addKingdom(level, kingdom);
+        }
 
-        if (kingdom != null) {
-            String dimensionKey = level.dimension().location().toString();
-            kingdoms.put(dimensionKey, kingdom);
+        // Реестры войск - когда известны все королевства (владельцы старых воинов - по позиции)
+        for (KingdomTerritory kingdom : getKingdoms(level)) {
+            kingdom.getTroops().rebuild(level, kingdom);
         }
     }
 
     public static void clearKingdoms() {
-        kingdoms.clear();
+        dimensions.clear();
     }
 }
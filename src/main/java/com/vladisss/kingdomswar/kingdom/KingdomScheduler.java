@@ -0,0 +1,130 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import net.minecraft.server.level.ServerLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ПЛАНИРОВЩИК ЗАДАЧ КОРОЛЕВСТВА
+ *
+ * Раньше оценка угроз, сканер, подкрепления и найм срабатывали в одном тике
+ * (каждые 200 тиков - все сразу). Теперь:
+ * - у каждой задачи свой интервал и сдвиг фазы, поэтому они не совпадают;
+ * - у всего королевства общий бюджет времени на тик;
+ * - задача может выполняться частями (по кускам списка войск) -
+ *   незаконченная часть переносится на следующий тик.
+ *
+ * Фаза всего королевства сдвинута по id, чтобы несколько королевств тоже не совпадали.
+ */
+public class KingdomScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
+
+    // Бюджет на тик для одного королевства (2 мс из 50 мс тика)
+    public static final long TICK_BUDGET_NANOS = 2_000_000L;
+
+    /**
+     * Задача королевства
+     */
+    public interface Job {
+        /**
+         * Выполнить очередную часть работы
+         *
+         * @param deadlineNanos момент (System.nanoTime), после которого нужно остановиться
+         * @return true - работа завершена, false - продолжить в следующем тике
+         */
+        boolean run(ServerLevel level, long deadlineNanos);
+    }
+
+    private static class Entry {
+        final String name;
+        final int interval;
+        final int offset;
+        final Job job;
+        long nextRun = -1;
+        boolean running = false;
+        int slices = 0;
+
+        Entry(String name, int interval, int offset, Job job) {
+            this.name = name;
+            this.interval = interval;
+            this.offset = offset;
+            this.job = job;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final int phase;
+
+    /**
+     * @param phase общий сдвиг фазы всех задач королевства (в тиках)
+     */
+    public KingdomScheduler(int phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Зарегистрировать периодическую задачу
+     *
+     * @param interval период запуска в тиках
+     * @param offset   сдвиг внутри периода (разводит задачи с общим периодом по разным тикам)
+     */
+    public void register(String name, int interval, int offset, Job job) {
+        entries.add(new Entry(name, interval, offset, job));
+    }
+
+    /**
+     * Вызывается каждый тик: запускает созревшие задачи и продолжает начатые, пока хватает бюджета
+     */
+    public void tick(ServerLevel level) {
+        long gameTime = level.getGameTime();
+        long deadline = System.nanoTime() + TICK_BUDGET_NANOS;
+        boolean ranAny = false;
+
+        for (Entry entry : entries) {
+            if (!entry.running) {
+                if (entry.nextRun < 0) {
+                    entry.nextRun = firstRunAfter(gameTime, entry);
+                }
+                if (gameTime < entry.nextRun) {
+                    continue;
+                }
+                entry.running = true;
+                entry.slices = 0;
+                entry.nextRun = firstRunAfter(gameTime + 1, entry);
+            }
+
+            // Бюджет исчерпан - задача подождет следующего тика
+            // (но хотя бы одна часть за тик выполняется всегда, чтобы не было голодания)
+            if (ranAny && System.nanoTime() >= deadline) {
+                continue;
+            }
+
+            ranAny = true;
+            entry.slices++;
+            if (entry.job.run(level, deadline)) {
+                entry.running = false;
+                if (entry.slices > 1) {
+                    LOGGER.debug("[Scheduler] Задача {} выполнена за {} тиков", entry.name, entry.slices);
+                }
+            }
+        }
+    }
+
+    /**
+     * Первый тик >= from, попадающий в фазу задачи
+     */
+    private long firstRunAfter(long from, Entry entry) {
+        long shift = Math.floorMod(from - phase - entry.offset, (long) entry.interval);
+        return shift == 0 ? from : from + entry.interval - shift;
+    }
+
+    /**
+     * Остаток бюджета исчерпан? (для нарезки циклов по войскам)
+     */
+    public static boolean outOfTime(long deadlineNanos) {
+        return System.nanoTime() >= deadlineNanos;
+    }
+}
@@ -3,16 +3,22 @@ package com.vladisss.kingdomswar.kingdom;
 import com.vladisss.kingdomswar.entity.GuardEntity;
 import com.vladisss.kingdomswar.entity.KnightEntity;
 import com.vladisss.kingdomswar.registry.ModEntities;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.world.entity.Mob;
+import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.level.ChunkPos;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
 public class KingdomTerritory {
@@ -24,20 +30,52 @@ public class KingdomTerritory {
 
     private RevengeSystem revengeSystem; // НОВОЕ ПОЛЕ
 
+    // ✅ Игроки на территории (обновляется по смене чанка, см. PlayerTerritoryHandler)
+    private final TerritoryPresenceTracker presence = new TerritoryPresenceTracker(this);
+
+    // ✅ Смерти воинов и убийства воинами - пачкой раз в тик
+    private final DeathPipeline deaths = new DeathPipeline(this);
+
+    // ✅ Реестр живых войск (обновляется событиями, см. TroopRegistryHandler)
+    private final TroopRegistry troops = new TroopRegistry();
+
+    // ✅ Проверенные позиции спавна (кольцо замка и кольцо территории)
+    private final SpawnPositionCache spawnPositions = new SpawnPositionCache(this);
+
+    // ✅ Очередь найма: оплаченные пачки, спавн отрядами по тикам
+    private final RecruitmentPlanner recruitment = new RecruitmentPlanner(this);
+
+    // ✅ Рыцари вне мира (далеко от игроков и угроз) - простые записи вместо сущностей
+    private final VirtualTroops virtualTroops = new VirtualTroops();
+
+    // ✅ Общие поля потоков (путь к замку и точкам патруля секторов)
+    private final FlowFields flowFields = new FlowFields(this);
+
+    // ✅ Снимок угроз последнего цикла оценки
+    private ThreatSnapshot threatSnapshot = ThreatSnapshot.empty();
+
+    // ✅ Снимок поля боя последнего цикла и фоновый расчет плана обороны по нему
+    private BattlefieldSnapshot battlefield;
+    private final ThreatPlanner planner = new ThreatPlanner();
+
 
     private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
     private final KingdomAI ai = new KingdomAI();
 
 
-    private long lastAIUpdate = 0;
     private int tickCounter = 0; // ✅ ДОБАВЛЕНО
 
+    // ✅ Планировщик задач AI (разнесены по тикам, общий бюджет времени)
+    private final KingdomScheduler scheduler;
+
+    private final UUID id;
     private final BlockPos centerPos;
     private final String name;
     private int radius;
     private int points;
-    private final Set<ChunkPos> controlledChunks;
-    private final List<String> activityLog;
+    private final ChunkBitmap controlledChunks; // ✅ Битовая карта чанков территории
+    private final ActivityLog activityLog = new ActivityLog(); // ✅ Кольцевой буфер, текст - при показе
+    private long gameTime = 0; // Игровое время последнего тика (для записей журнала)
 
     // ✅ Лимиты армии
     private static final int MAX_ACTIVE_TROOPS = 50;
@@ -55,35 +93,74 @@ public class KingdomTerritory {
     // ✅ Соотношение армии: 80% рыцари, 20% стражники
     private static final double KNIGHT_RATIO = 0.8;
 
-    private long lastRecruitmentCheck = 0;
-    private long lastReinforcementCheck = 0;
+    // ✅ Флаги границы: шаг по окружности (меньше - гуще) и высота столбика
+    private static final int FLAG_STEP_DEGREES = 45;
+    private static final int FLAG_HEIGHT = 3;
+
+    // ✅ Интервалы и сдвиги задач планировщика (в тиках).
+    // Сдвиги подобраны так, чтобы задачи никогда не совпадали в одном тике.
+    // Расстановка по постам - до сканера: патруль сектора, назначенный сканером, главнее
+    private static final int AI_INTERVAL = 40;
+    private static final int RECRUITMENT_INTERVAL = 100;
+    private static final int THREAT_EVALUATION_OFFSET = 0;
+    private static final int FLOW_FIELD_OFFSET = 5;
+    private static final int POSITIONING_OFFSET = 15;
+    private static final int SCANNER_OFFSET = 20;
+    private static final int REINFORCEMENT_OFFSET = 25;
+    private static final int RECRUITMENT_OFFSET = 30;
+    private static final int VIRTUALIZATION_OFFSET = 35;
 
     public KingdomTerritory(BlockPos centerPos, String name) {
+        this(UUID.randomUUID(), centerPos, name);
+    }
+
+    private KingdomTerritory(UUID id, BlockPos centerPos, String name) {
+        this.id = id;
         this.centerPos = centerPos;
         this.name = name;
         this.radius = 50;
         this.points = 0;
-        this.controlledChunks = new HashSet<>();
-        this.activityLog = new ArrayList<>();
-        updateControlledChunks();
+        this.controlledChunks = new ChunkBitmap();
+        this.controlledChunks.growCircle(centerPos.getX(), centerPos.getZ(), -1, this.radius, null);
         this.revengeSystem = new RevengeSystem(this);
+        this.presence.addListener(revengeSystem);
+        this.scheduler = createScheduler();
 
     }
-    public void addPoints(int amount, String reason) {
+    public void addPoints(int amount, ActivityLog.Type reason) {
         this.points += amount;
-        addLog("+" + amount + " очков: " + reason);
-        LOGGER.info("[Kingdom] {} получил {} очков ({}). Всего: {}", this.name, amount, reason, this.points);
+        addLog(reason, amount, 0, null);
+        logPoints();
     }
 
+    /**
+     * Награда за убийства воинов: одна запись журнала с разбивкой по типам мобов
+     */
+    public void addKillReward(int amount, int kills, String[] typeIds, int[] typeKills, int listed) {
+        this.points += amount;
+        this.activityLog.addKills(amount, kills, typeIds, typeKills, listed, this.gameTime);
+        logPoints();
+    }
 
-    private void addLog(String message) {
-        this.activityLog.add(message);
-        if (this.activityLog.size() > 50) {
-            this.activityLog.remove(0);
+    private void logPoints() {
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("[Kingdom] {}: {}. Всего: {}", this.name, activityLog.formatLatest(), this.points);
         }
     }
 
-    // ✅ Обновленная логика расширения с удалением старых флагов
+
+    private void addLog(ActivityLog.Type type, int amount, int count, @Nullable String detail) {
+        this.activityLog.add(type, amount, count, detail, this.gameTime);
+    }
+
+    /**
+     * Сохраняемое состояние королевства изменилось - KingdomData пишется на диск только помеченной
+     */
+    public void markDirty(ServerLevel level) {
+        KingdomData.get(level).setDirty();
+    }
+
+    // ✅ Обновленная логика расширения с переносом флагов границы
     public void expandTerritory(ServerLevel level) {
         int troopCount = countLivingTroops(level);
         int requiredTroops = getRequiredTroopsCount();
@@ -99,83 +176,170 @@ public class KingdomTerritory {
             this.radius += 10;
             this.points -= getExpansionCost();
 
-            removeOldFlags(level, oldRadius);
-            updateControlledChunks();
+            // ✅ Добавляем только кольцо новых чанков
+            LongList claimed = new LongArrayList();
+            controlledChunks.growCircle(centerPos.getX(), centerPos.getZ(), oldRadius, this.radius, claimed::add);
+            KingdomManager.onChunksClaimed(level, this, claimed);
+
+            // ✅ Флаги переносятся на новую границу (по индексу поставленных)
+            updateBorderFlags(level, oldRadius);
 
-            addLog("Территория расширена с " + oldRadius + " до " + this.radius);
+            addLog(ActivityLog.Type.EXPANSION, this.radius, oldRadius, null);
             LOGGER.info("[Kingdom] {} расширил территорию до {}", this.name, this.radius);
         }
     }
 
-    // ✅ Удаление старых флагов-столбиков
-    private void removeOldFlags(ServerLevel level, int oldRadius) {
-        for (int angle = 0; angle < 360; angle += 45) {
+    // ✅ Колонки флагов границы заданного радиуса
+    private LongSet borderFlagColumns(int radius) {
+        LongSet columns = new LongOpenHashSet();
+        for (int angle = 0; angle < 360; angle += FLAG_STEP_DEGREES) {
             double rad = Math.toRadians(angle);
-            int x = centerPos.getX() + (int) (Math.cos(rad) * oldRadius);
-            int z = centerPos.getZ() + (int) (Math.sin(rad) * oldRadius);
-
-            for (int dx = -2; dx <= 2; dx++) {
-                for (int dz = -2; dz <= 2; dz++) {
-                    BlockPos checkPos = new BlockPos(
-                            x + dx,
-                            level.getHeight(net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE_WG,
-                                    x + dx, z + dz),
-                            z + dz
-                    );
-
-                    for (int dy = -3; dy <= 7; dy++) {
-                        BlockPos flagPos = checkPos.offset(0, dy, 0);
-
-                        if (level.getBlockState(flagPos).is(net.minecraft.world.level.block.Blocks.OAK_FENCE) ||
-                                level.getBlockState(flagPos).is(net.minecraft.world.level.block.Blocks.YELLOW_WOOL)) {
-                            level.removeBlock(flagPos, false);
-                        }
-                    }
-                }
-            }
+            int x = centerPos.getX() + (int) (Math.cos(rad) * radius);
+            int z = centerPos.getZ() + (int) (Math.sin(rad) * radius);
+            columns.add(BorderFlagIndex.column(x, z));
         }
+        return columns;
     }
 
     // ✅ Установка флагов-столбиков на границе территории
     public void placeBorderFlags(ServerLevel level) {
-        for (int angle = 0; angle < 360; angle += 45) {
-            double rad = Math.toRadians(angle);
-            int x = centerPos.getX() + (int) (Math.cos(rad) * radius);
-            int z = centerPos.getZ() + (int) (Math.sin(rad) * radius);
+        updateBorderFlags(level, this.radius);
+    }
+
+    /**
+     * Привести флаги к текущей границе: разница между записанными в KingdomData
+     * и нужными колонками. Трогаются только записанные позиции - чужие заборы
+     * и шерсть рядом с границей не удаляются
+     *
+     * @param previousRadius радиус, на котором стоят флаги старого сохранения (без индекса)
+     */
+    private void updateBorderFlags(ServerLevel level, int previousRadius) {
+        KingdomData data = KingdomData.get(level);
+        BorderFlagIndex index = data.getBorderFlags(this);
+        if (index.isLegacy()) {
+            adoptLegacyFlags(level, index, previousRadius);
+            data.setDirty();
+        }
+
+        LongSet wanted = borderFlagColumns(this.radius);
+        int removed = 0;
+        int placed = 0;
+
+        // Убираем флаги, которых нет в новой границе
+        LongIterator it = index.columns().iterator();
+        while (it.hasNext()) {
+            long column = it.nextLong();
+            if (!wanted.contains(column)) {
+                removeFlag(level, BlockPos.of(index.get(column)));
+                it.remove();
+                removed++;
+            }
+        }
+
+        // Ставим недостающие
+        LongIterator wantedIt = wanted.iterator();
+        while (wantedIt.hasNext()) {
+            long column = wantedIt.nextLong();
+            if (index.contains(column)) {
+                continue;
+            }
+            BlockPos base = placeFlag(level, BorderFlagIndex.columnX(column), BorderFlagIndex.columnZ(column));
+            if (base != null) {
+                index.put(column, base.asLong());
+                placed++;
+            }
+        }
+
+        if (removed > 0 || placed > 0) {
+            data.setDirty();
+            LOGGER.debug("[Kingdom] {} - флаги границы: убрано {}, поставлено {}", this.name, removed, placed);
+        }
+    }
+
+    /**
+     * Флаг в колонке: столбики забора на поверхности, сверху шерсть
+     *
+     * @return нижний столбик или null, если под ним нет твердой опоры
+     */
+    private static BlockPos placeFlag(ServerLevel level, int x, int z) {
+        int y = level.getHeight(
+                net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE_WG,
+                x, z
+        );
+
+        BlockPos flagPos = new BlockPos(x, y, z);
+        if (!level.getBlockState(flagPos.below()).isSolid()) {
+            return null;
+        }
+
+        for (int i = 0; i < FLAG_HEIGHT; i++) {
+            level.setBlock(flagPos.above(i),
+                    net.minecraft.world.level.block.Blocks.OAK_FENCE.defaultBlockState(), 3);
+        }
+
+        level.setBlock(flagPos.above(FLAG_HEIGHT),
+                net.minecraft.world.level.block.Blocks.YELLOW_WOOL.defaultBlockState(), 3);
+        return flagPos;
+    }
 
-            int y = level.getHeight(
+    // ✅ Удаление флага по записанной позиции (только если блоки все еще наши)
+    private static void removeFlag(ServerLevel level, BlockPos base) {
+        for (int i = 0; i <= FLAG_HEIGHT; i++) {
+            BlockPos pos = base.above(i);
+            net.minecraft.world.level.block.Block expected = i < FLAG_HEIGHT
+                    ? net.minecraft.world.level.block.Blocks.OAK_FENCE
+                    : net.minecraft.world.level.block.Blocks.YELLOW_WOOL;
+
+            if (level.getBlockState(pos).is(expected)) {
+                level.removeBlock(pos, false);
+            }
+        }
+    }
+
+    /**
+     * Сохранение до индекса флагов: найти флаги старой границы по точному рисунку
+     * (столбики забора и шерсть сверху) в их колонках и записать в индекс
+     */
+    private void adoptLegacyFlags(ServerLevel level, BorderFlagIndex index, int oldRadius) {
+        LongIterator it = borderFlagColumns(oldRadius).iterator();
+        while (it.hasNext()) {
+            long column = it.nextLong();
+            int x = BorderFlagIndex.columnX(column);
+            int z = BorderFlagIndex.columnZ(column);
+            int surfaceY = level.getHeight(
                     net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE_WG,
                     x, z
             );
 
-            BlockPos flagPos = new BlockPos(x, y, z);
-
-            if (level.getBlockState(flagPos.below()).isSolid()) {
-                for (int i = 0; i < 3; i++) {
-                    level.setBlock(flagPos.above(i),
-                            net.minecraft.world.level.block.Blocks.OAK_FENCE.defaultBlockState(), 3);
+            for (int y = surfaceY - FLAG_HEIGHT - 1; y <= surfaceY + 1; y++) {
+                BlockPos base = new BlockPos(x, y, z);
+                if (isFlagAt(level, base)) {
+                    index.put(column, base.asLong());
+                    break;
                 }
+            }
+        }
 
-                level.setBlock(flagPos.above(3),
-                        net.minecraft.world.level.block.Blocks.YELLOW_WOOL.defaultBlockState(), 3);
+        index.setLegacy(false);
+        LOGGER.info("[Kingdom] {} - найдено {} флагов границы старого сохранения", this.name, index.size());
+    }
+
+    private static boolean isFlagAt(ServerLevel level, BlockPos base) {
+        for (int i = 0; i < FLAG_HEIGHT; i++) {
+            if (!level.getBlockState(base.above(i)).is(net.minecraft.world.level.block.Blocks.OAK_FENCE)) {
+                return false;
             }
         }
+        return level.getBlockState(base.above(FLAG_HEIGHT)).is(net.minecraft.world.level.block.Blocks.YELLOW_WOOL);
     }
 
     public int getExpansionCost() {
         return 100 + (this.radius * 2);
     }
 
-    // ✅ Подсчет живых войск
+    // ✅ Подсчет живых войск (O(1) из реестра)
     public int countLivingTroops(ServerLevel level) {
-        List<Mob> troops = level.getEntitiesOfClass(Mob.class,
-                new net.minecraft.world.phys.AABB(
-                        centerPos.offset(-radius, -50, -radius),
-                        centerPos.offset(radius, 100, radius)
-                ),
-                mob -> mob instanceof GuardEntity || mob instanceof KnightEntity
-        );
-        return troops.size();
+        return troops.getTotalCount() + virtualTroops.size();
     }
 
     // ✅ Требуемое количество войск
@@ -185,297 +349,359 @@ public class KingdomTerritory {
 
     public void tick(ServerLevel level) {
         tickCounter++;
+        gameTime = level.getGameTime();
         if (revengeSystem != null) {
-            revengeSystem.checkForRememberedPlayers(level);
+            revengeSystem.tick(level);
         }
+        // ✅ Награды, месть и подкрепления за смерти этого тика
+        deaths.flush(level);
+
         // Пассивный доход от патрулирующих рыцарей
         incomeSystem.tick(level, this);
 
-        long currentTime = level.getGameTime();
+        // ✅ Спавн нанятых отрядов (бюджет на тик)
+        recruitment.tick(level);
 
-        // ✅ УМНОЕ СКАНИРОВАНИЕ каждые 2 секунды
-        if (currentTime - lastAIUpdate >= 40) {
-            lastAIUpdate = currentTime;
-
-            // Старый AI для стратегии (найм, расширение)
-            ai.evaluateSituation(level, this);
-
-            // ✅ НОВЫЙ: Умное сканирование территории
-            territoryScanner.scanAndAssignTroops(level, this);
+        // ✅ План обороны, рассчитанный в фоне, применяем на серверном потоке
+        AssignmentPlan plan = planner.pollCompleted();
+        if (plan != null) {
+            ai.applyThreatLevel(this, plan);
+            plan.apply(level);
         }
 
+        // ✅ Оценка угроз, сканирование, подкрепления и найм - через планировщик
+        scheduler.tick(level);
+    } // ✅ ИСПРАВЛЕНО - закрыта скобка метода tick()
 
-        // Найм каждые 5 секунд
-        if (currentTime - lastRecruitmentCheck >= 100) {
-            lastRecruitmentCheck = currentTime;
-            ai.smartRecruit(level, this);
+    /**
+     * Задачи AI королевства. Фаза всего королевства сдвинута по id
+     * (имена у королевств одинаковые), чтобы разные королевства не выполняли свои циклы в одном тике
+     */
+    private KingdomScheduler createScheduler() {
+        KingdomScheduler tasks = new KingdomScheduler(Math.floorMod(id.hashCode(), AI_INTERVAL));
+
+        // ✅ Один снимок угроз на весь цикл (AI + сканер), расчет обороны - в фоновом потоке
+        tasks.register("threats", AI_INTERVAL, THREAT_EVALUATION_OFFSET, (level, deadline) -> {
+            if (planner.isBusy()) {
+                LOGGER.debug("[Kingdom] {} - план обороны еще считается, цикл пропущен", this.name);
+                return true;
+            }
+            threatSnapshot = ThreatSnapshot.capture(level, this);
+            battlefield = BattlefieldSnapshot.capture(this, threatSnapshot);
+            planner.submit(battlefield, ai, territoryScanner);
+            return true;
+        });
+
+        // ✅ Сетка поверхности и поля потоков (пересчет помеченных полей, нарезается по полям)
+        tasks.register("flowfields", AI_INTERVAL, FLOW_FIELD_OFFSET, (level, deadline) ->
+                flowFields.update(level, deadline));
+
+        // Расстановка стражников и рыцарей по постам (нарезается по войскам)
+        tasks.register("positions", AI_INTERVAL, POSITIONING_OFFSET, (level, deadline) ->
+                ai.optimizeTroopPositions(this, deadline));
+
+        // ✅ Патруль секторов, если на поверхности нет угроз (по снимку этого цикла)
+        tasks.register("scanner", AI_INTERVAL, SCANNER_OFFSET, (level, deadline) ->
+                territoryScanner.patrolSectors(this, battlefield, deadline));
+
+        // ✅ Рыцари вне поля зрения игроков - в записи и обратно
+        tasks.register("virtualization", AI_INTERVAL, VIRTUALIZATION_OFFSET, (level, deadline) -> {
+            virtualTroops.update(level, this, threatSnapshot);
+            return true;
+        });
+
+        // Подкрепления из резерва
+        tasks.register("reinforcements", AI_INTERVAL, REINFORCEMENT_OFFSET, (level, deadline) -> {
+            checkReinforcements(level);
+            return true;
+        });
 
-            // Проверка расширения
+        // Найм и проверка расширения
+        tasks.register("recruitment", RECRUITMENT_INTERVAL, RECRUITMENT_OFFSET, (level, deadline) -> {
+            ai.smartRecruit(level, this);
             if (ai.shouldExpand(this, level)) {
                 expandTerritory(level);
             }
-        }
+            return true;
+        });
 
-        // Подкрепления каждые 2 секунды
-        if (currentTime - lastReinforcementCheck >= 40) {
-            lastReinforcementCheck = currentTime;
-            checkReinforcements(level);
-        }
-    } // ✅ ИСПРАВЛЕНО - закрыта скобка метода tick()
+        return tasks;
+    }
 
     public int getControlledBlocksByKnights(ServerLevel level) {
         return (int) (this.radius * 2);
     }
 
-    // ✅ Автоматический найм войск (с лимитом 50 активных)
+    // ✅ Автоматический найм войск (с лимитом 50 активных): весь недобор одной пачкой
     public void checkRecruitment(ServerLevel level) {
-        int activeTroops = countLivingTroops(level);
         int requiredTroops = getRequiredTroopsCount();
-
-        int knightCount = countKnights(level);
-        int guardCount = countGuards(level);
+        int knightCount = countKnights(level) + recruitment.getPendingKnights();
+        int guardCount = countGuards(level) + recruitment.getPendingGuards();
+        int activeTroops = knightCount + guardCount;
 
         int targetKnights = (int) (requiredTroops * KNIGHT_RATIO);
         int targetGuards = requiredTroops - targetKnights;
 
         // ✅ ЛИМИТ: Если 50 активных - покупаем в резерв
         if (activeTroops >= MAX_ACTIVE_TROOPS) {
-            if (activeTroops + reserveTroops < requiredTroops) {
-                if (this.points >= KNIGHT_COST + RESERVE_FUND) {
-                    this.points -= KNIGHT_COST;
-                    this.reserveTroops++;
-                    addLog("Нанят рыцарь в РЕЗЕРВ (-" + KNIGHT_COST + " очков). Резерв: " + reserveTroops);
-                    LOGGER.info("[Kingdom] Нанят рыцарь в резерв. Всего резерва: {}", reserveTroops);
-                }
+            int missing = requiredTroops - activeTroops - reserveTroops;
+            int affordable = Math.max(0, (this.points - RESERVE_FUND) / KNIGHT_COST);
+            int count = Math.min(missing, affordable);
+            if (count > 0) {
+                this.points -= count * KNIGHT_COST;
+                this.reserveTroops += count;
+                addLog(ActivityLog.Type.RESERVE_HIRED, count, reserveTroops, null);
+                markDirty(level);
+                LOGGER.info("[Kingdom] Нанято {} рыцарей в резерв. Всего резерва: {}", count, reserveTroops);
             }
             return;
         }
 
-        // Если не хватает войск и есть очки - нанимаем
-        if (activeTroops < requiredTroops && activeTroops < MAX_ACTIVE_TROOPS) {
-            if (knightCount < targetKnights && this.points >= KNIGHT_COST + RESERVE_FUND) {
-                recruitKnight(level);
-                return;
-            }
-
-            if (guardCount < targetGuards && this.points >= GUARD_COST + RESERVE_FUND) {
-                recruitGuard(level);
-                return;
-            }
+        int slots = getFreeTroopSlots(level);
+        int budget = Math.max(0, this.points - RESERVE_FUND);
+
+        // Если не хватает войск и есть очки - нанимаем недостающих
+        int knights = 0;
+        int guards = 0;
+        if (activeTroops < requiredTroops) {
+            knights = Math.min(Math.min(targetKnights - knightCount, slots), budget / KNIGHT_COST);
+            knights = Math.max(0, knights);
+            budget -= knights * KNIGHT_COST;
+            slots -= knights;
+
+            guards = Math.min(Math.min(targetGuards - guardCount, slots), budget / GUARD_COST);
+            guards = Math.max(0, guards);
+            budget -= guards * GUARD_COST;
+            slots -= guards;
         }
 
         // Автонайм при избытке очков
-        if (this.points >= AUTO_RECRUIT_THRESHOLD + RESERVE_FUND && activeTroops < MAX_ACTIVE_TROOPS) {
-            if (knightCount < requiredTroops * 1.2 && this.points >= KNIGHT_COST + RESERVE_FUND) {
-                recruitKnight(level);
-            }
+        if (knights == 0 && guards == 0 && this.points >= AUTO_RECRUIT_THRESHOLD + RESERVE_FUND
+                && slots > 0 && knightCount < requiredTroops * 1.2 && budget >= KNIGHT_COST) {
+            knights = 1;
         }
+
+        hireBatch(level, guards, knights, ActivityLog.Type.HIRE_REPLENISH);
     }
 
-    // ✅ Проверка: нужно ли спавнить войска из резерва
+    // ✅ Проверка: нужно ли спавнить войска из резерва (весь недобор сразу)
     private void checkReinforcements(ServerLevel level) {
         if (reserveTroops == 0) return;
 
-        int activeTroops = countLivingTroops(level);
-
-        if (activeTroops < MAX_ACTIVE_TROOPS && activeTroops < getRequiredTroopsCount()) {
-            recruitKnight(level);
-            reserveTroops--;
-            addLog("Рыцарь из резерва вступил в бой! Осталось резерва: " + reserveTroops);
-            LOGGER.info("[Kingdom] Спавн рыцаря из резерва. Осталось: {}", reserveTroops);
+        int activeTroops = countLivingTroops(level) + recruitment.getPendingTotal();
+        int missing = Math.min(MAX_ACTIVE_TROOPS, getRequiredTroopsCount()) - activeTroops;
+        int count = Math.min(reserveTroops, missing);
+
+        // Рыцарей негде поставить (чанки не загружены) - резерв ждет
+        if (count > 0 && spawnPositions.hasPositions(level, SpawnPositionCache.Ring.TERRITORY)) {
+            reserveTroops -= count;
+            recruitment.enqueue(RecruitmentPlanner.TroopType.KNIGHT, count, true);
+            addLog(ActivityLog.Type.RESERVE_DEPLOYED, count, reserveTroops, null);
+            markDirty(level);
+            LOGGER.info("[Kingdom] Спавн {} рыцарей из резерва. Осталось: {}", count, reserveTroops);
         }
     }
 
     // ✅ Подсчет рыцарей
     public int countKnights(ServerLevel level) {
-        List<KnightEntity> knights = level.getEntitiesOfClass(KnightEntity.class,
-                new net.minecraft.world.phys.AABB(
-                        centerPos.offset(-radius, -50, -radius),
-                        centerPos.offset(radius, 100, radius)
-                )
-        );
-        return knights.size();
+        return troops.getKnightCount() + virtualTroops.size();
     }
 
     // ✅ Подсчет стражников
     public int countGuards(ServerLevel level) {
-        List<GuardEntity> guards = level.getEntitiesOfClass(GuardEntity.class,
-                new net.minecraft.world.phys.AABB(
-                        centerPos.offset(-radius, -50, -radius),
-                        centerPos.offset(radius, 100, radius)
-                )
-        );
-        return guards.size();
+        return troops.getGuardCount();
     }
 
-    // ✅ Найм стражника (ВНУТРИ ЗАМКА!)
-    public void recruitGuard(ServerLevel level) {
-        BlockPos spawnPos = findSafeSpawnNearCastle(level, 20);
+    /**
+     * Сколько еще войск можно поставить в очередь до лимита активных (с учетом очереди)
+     */
+    public int getFreeTroopSlots(ServerLevel level) {
+        return Math.max(0, MAX_ACTIVE_TROOPS - countLivingTroops(level) - recruitment.getPendingTotal());
+    }
 
-        if (spawnPos == null) {
-            LOGGER.warn("[Kingdom] Не найдена позиция для спавна стражника!");
-            return;
+    public static int getRecruitCost(RecruitmentPlanner.TroopType type) {
+        return type == RecruitmentPlanner.TroopType.GUARD ? GUARD_COST : KNIGHT_COST;
+    }
+
+    /**
+     * Нанять пачку войск: оплата всей пачки разом, спавн - отрядами через очередь найма
+     *
+     * @return false - не хватает очков или негде поставить войска (ничего не списано)
+     */
+    public boolean hireBatch(ServerLevel level, int guards, int knights, ActivityLog.Type reason) {
+        // Нет позиций спавна кольца (чанки не загружены) - этот тип не нанимаем
+        if (guards > 0 && !spawnPositions.hasPositions(level, SpawnPositionCache.Ring.CASTLE)) {
+            guards = 0;
+        }
+        if (knights > 0 && !spawnPositions.hasPositions(level, SpawnPositionCache.Ring.TERRITORY)) {
+            knights = 0;
+        }
+        if (guards <= 0 && knights <= 0) {
+            return false;
         }
 
-        GuardEntity guard = ModEntities.GUARD.get().create(level);
-        if (guard != null) {
-            guard.moveTo(spawnPos.getX() + 0.5, spawnPos.getY(), spawnPos.getZ() + 0.5, 0, 0);
-            guard.setGuardPos(spawnPos);
-            guard.finalizeSpawn(level, level.getCurrentDifficultyAt(spawnPos),
-                    net.minecraft.world.entity.MobSpawnType.COMMAND, null, null);
-            guard.setPersistenceRequired();
-            level.addFreshEntity(guard);
-
-            this.points -= GUARD_COST;
-            addLog("Нанят стражник в замке (-" + GUARD_COST + " очков)");
-            LOGGER.info("[Kingdom] Нанят стражник в замке {}", spawnPos.toShortString());
+        int cost = guards * GUARD_COST + knights * KNIGHT_COST;
+        if (this.points < cost) {
+            return false;
         }
+
+        this.points -= cost;
+        recruitment.enqueue(RecruitmentPlanner.TroopType.GUARD, guards, false);
+        recruitment.enqueue(RecruitmentPlanner.TroopType.KNIGHT, knights, false);
+        markDirty(level); // Очки списаны, очередь сохраняется с королевством
+
+        addLog(reason, guards, knights, null);
+        LOGGER.info("[Kingdom] {} нанимает {} стражников и {} рыцарей ({}), -{} очков",
+                this.name, guards, knights, reason, cost);
+        return true;
+    }
+
+    // ✅ Найм стражника (ВНУТРИ ЗАМКА!)
+    public void recruitGuard(ServerLevel level) {
+        hireBatch(level, 1, 0, ActivityLog.Type.HIRE_MANUAL);
     }
 
     // ✅ Найм рыцаря (ПО ВСЕЙ ТЕРРИТОРИИ)
     public void recruitKnight(ServerLevel level) {
-        BlockPos spawnPos = findSafeSpawnInTerritory(level);
+        hireBatch(level, 0, 1, ActivityLog.Type.HIRE_MANUAL);
+    }
 
-        if (spawnPos == null) {
-            LOGGER.warn("[Kingdom] Не найдена позиция для спавна рыцаря!");
+    /**
+     * Вернуть несостоявшийся найм: очки или рыцарей в резерв
+     */
+    void refundRecruitment(ServerLevel level, RecruitmentPlanner.TroopType type, int count, boolean fromReserve) {
+        if (count <= 0) {
             return;
         }
 
-        KnightEntity knight = ModEntities.KNIGHT.get().create(level);
-        if (knight != null) {
-            knight.moveTo(spawnPos.getX() + 0.5, spawnPos.getY(), spawnPos.getZ() + 0.5, 0, 0);
-            knight.setPatrolCenter(centerPos);
-            knight.setPatrolRadius(15); // Добавьте эту строку тоже
-            knight.finalizeSpawn(level, level.getCurrentDifficultyAt(spawnPos),
-                    net.minecraft.world.entity.MobSpawnType.COMMAND, null, null);
-            knight.setPersistenceRequired();
-            level.addFreshEntity(knight);
-
-            this.points -= KNIGHT_COST;
-            addLog("Нанят рыцарь (-" + KNIGHT_COST + " очков)");
-            LOGGER.info("[Kingdom] Нанят рыцарь на территории {}", spawnPos.toShortString());
+        if (fromReserve) {
+            this.reserveTroops += count;
+        } else {
+            this.points += count * getRecruitCost(type);
         }
+        markDirty(level);
+        EntityType<?> troopType = type == RecruitmentPlanner.TroopType.GUARD ? ModEntities.GUARD.get() : ModEntities.KNIGHT.get();
+        addLog(ActivityLog.Type.RECRUITMENT_CANCELLED, count, 0, EntityType.getKey(troopType).toString());
     }
 
-    // ✅ Поиск позиции ВНУТРИ замка (для стражников)
-    private BlockPos findSafeSpawnNearCastle(ServerLevel level, int maxRadius) {
-        for (int attempt = 0; attempt < 30; attempt++) {
-            double angle = level.random.nextDouble() * Math.PI * 2;
-            int distance = 5 + level.random.nextInt(maxRadius - 5);
-
-            int offsetX = (int) (Math.cos(angle) * distance);
-            int offsetZ = (int) (Math.sin(angle) * distance);
-
-            BlockPos testPos = centerPos.offset(offsetX, 0, offsetZ);
-            int surfaceY = level.getHeight(
-                    net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE_WG,
-                    testPos.getX(),
-                    testPos.getZ()
-            );
+    // ✅ Спавн стражника у позиции отряда (оплачен заранее)
+    boolean spawnGuard(ServerLevel level, BlockPos spawnPos) {
+        GuardEntity guard = ModEntities.GUARD.get().create(level);
+        if (guard == null) {
+            return false;
+        }
 
-            if (Math.abs(surfaceY - centerPos.getY()) > 5) {
-                continue;
-            }
+        moveToSquad(level, guard, spawnPos);
+        guard.setGuardPos(spawnPos);
+        guard.finalizeSpawn(level, level.getCurrentDifficultyAt(spawnPos),
+                net.minecraft.world.entity.MobSpawnType.COMMAND, null, null);
+        guard.setPersistenceRequired();
+        guard.setKingdomId(this.id);
+        level.addFreshEntity(guard);
 
-            BlockPos spawnPos = new BlockPos(testPos.getX(), surfaceY, testPos.getZ());
-            if (isValidSpawnPosition(level, spawnPos)) {
-                return spawnPos;
-            }
-        }
-        return null;
+        LOGGER.debug("[Kingdom] Стражник появился в замке {}", spawnPos.toShortString());
+        return true;
     }
 
-    // ✅ Поиск позиции ПО ВСЕЙ ТЕРРИТОРИИ (для рыцарей)
-    private BlockPos findSafeSpawnInTerritory(ServerLevel level) {
-        for (int attempt = 0; attempt < 30; attempt++) {
-            double angle = level.random.nextDouble() * Math.PI * 2;
-            int distance = 20 + level.random.nextInt((int) (radius * 0.8));
-
-            int offsetX = (int) (Math.cos(angle) * distance);
-            int offsetZ = (int) (Math.sin(angle) * distance);
+    // ✅ Спавн рыцаря у позиции отряда (оплачен заранее)
+    boolean spawnKnight(ServerLevel level, BlockPos spawnPos) {
+        KnightEntity knight = ModEntities.KNIGHT.get().create(level);
+        if (knight == null) {
+            return false;
+        }
 
-            BlockPos testPos = centerPos.offset(offsetX, 0, offsetZ);
-            int surfaceY = level.getHeight(
-                    net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE_WG,
-                    testPos.getX(),
-                    testPos.getZ()
-            );
+        moveToSquad(level, knight, spawnPos);
+        knight.setPatrolCenter(centerPos);
+        knight.setPatrolRadius(15);
+        knight.finalizeSpawn(level, level.getCurrentDifficultyAt(spawnPos),
+                net.minecraft.world.entity.MobSpawnType.COMMAND, null, null);
+        knight.setPersistenceRequired();
+        knight.setKingdomId(this.id);
+        level.addFreshEntity(knight);
+
+        LOGGER.debug("[Kingdom] Рыцарь появился на территории {}", spawnPos.toShortString());
+        return true;
+    }
 
-            BlockPos spawnPos = new BlockPos(testPos.getX(), surfaceY, testPos.getZ());
-            if (isValidSpawnPosition(level, spawnPos)) {
-                return spawnPos;
-            }
-        }
-        return null;
+    // Отряд у одной позиции: небольшой разброс внутри блока, дальше раздвинет коллизия
+    private static void moveToSquad(ServerLevel level, net.minecraft.world.entity.Mob troop, BlockPos spawnPos) {
+        double x = spawnPos.getX() + 0.5 + (level.random.nextDouble() - 0.5) * 0.6;
+        double z = spawnPos.getZ() + 0.5 + (level.random.nextDouble() - 0.5) * 0.6;
+        troop.moveTo(x, spawnPos.getY(), z, level.random.nextFloat() * 360.0F, 0);
     }
 
-    // ✅ Проверка валидности позиции спавна
-    private boolean isValidSpawnPosition(ServerLevel level, BlockPos pos) {
-        if (!level.getBlockState(pos.below()).isSolid()) {
+    /**
+     * Присоединить чанк к территории (произвольная форма, не только круг)
+     */
+    public boolean claimChunk(ServerLevel level, int chunkX, int chunkZ) {
+        if (!controlledChunks.add(chunkX, chunkZ)) {
             return false;
         }
+        KingdomManager.onChunksClaimed(level, this, LongList.of(ChunkPos.asLong(chunkX, chunkZ)));
+        return true;
+    }
 
-        if (!level.getBlockState(pos).isAir() || !level.getBlockState(pos.above()).isAir()) {
+    /**
+     * Отдать чанк территории
+     */
+    public boolean releaseChunk(ServerLevel level, int chunkX, int chunkZ) {
+        if (!controlledChunks.remove(chunkX, chunkZ)) {
             return false;
         }
-
-        List<Mob> nearby = level.getEntitiesOfClass(
-                net.minecraft.world.entity.Mob.class,
-                new net.minecraft.world.phys.AABB(pos).inflate(3.0),
-                entity -> entity instanceof GuardEntity || entity instanceof KnightEntity
-        );
-
-        return nearby.size() < 2;
+        KingdomManager.onChunkReleased(level, this, ChunkPos.asLong(chunkX, chunkZ));
+        return true;
     }
 
-    private void updateControlledChunks() {
-        this.controlledChunks.clear();
-        int chunkRadius = this.radius / 16;
-        ChunkPos centerChunk = new ChunkPos(this.centerPos);
-
-        for (int x = -chunkRadius; x <= chunkRadius; x++) {
-            for (int z = -chunkRadius; z <= chunkRadius; z++) {
-                this.controlledChunks.add(new ChunkPos(centerChunk.x + x, centerChunk.z + z));
-            }
-        }
+    public boolean isInTerritory(BlockPos pos) {
+        return controlledChunks.contains(
+                SectionPos.blockToSectionCoord(pos.getX()),
+                SectionPos.blockToSectionCoord(pos.getZ())
+        );
     }
 
-    public boolean isInTerritory(BlockPos pos) {
-        return pos.distSqr(this.centerPos) <= (this.radius * this.radius);
+    public boolean isChunkControlled(int chunkX, int chunkZ) {
+        return controlledChunks.contains(chunkX, chunkZ);
     }
 
     // Getters
+    public UUID getId() { return id; }
     public BlockPos getCastleCenter() { return centerPos; } // ✅ ИСПРАВЛЕНО имя метода
     public String getName() { return name; }
     public int getRadius() { return radius; }
     public int getPoints() { return points; }
     public int getControlledChunksCount() { return controlledChunks.size(); }
-    public List<String> getActivityLog() { return new ArrayList<>(activityLog); }
+    public ChunkBitmap getControlledChunks() { return controlledChunks; }
+    public List<String> getActivityLog() { return activityLog.format(); }
+    public ActivityLog getActivity() { return activityLog; }
     public RevengeSystem getRevengeSystem() {
         return revengeSystem;
     }
+    public TroopRegistry getTroops() { return troops; }
+    public TerritoryPresenceTracker getPresence() { return presence; }
+    public DeathPipeline getDeaths() { return deaths; }
+    public SpawnPositionCache getSpawnPositions() { return spawnPositions; }
+    public RecruitmentPlanner getRecruitment() { return recruitment; }
+    public VirtualTroops getVirtualTroops() { return virtualTroops; }
+    public FlowFields getFlowFields() { return flowFields; }
 
 
 
     // NBT сохранение
     public CompoundTag save() {
         CompoundTag tag = new CompoundTag();
+        tag.putUUID("id", this.id);
         tag.putString("name", this.name);
         tag.putInt("centerX", this.centerPos.getX());
         tag.putInt("centerY", this.centerPos.getY());
         tag.putInt("centerZ", this.centerPos.getZ());
         tag.putInt("radius", this.radius);
-        tag.putInt("points", this.points);
+        tag.putInt("points", this.points + deaths.getPendingRewardPoints()); // ✅ С еще не зачисленными наградами
         tag.putInt("reserveTroops", this.reserveTroops);
+        tag.put("recruitment", this.recruitment.save());
+        tag.put("virtualKnights", this.virtualTroops.save());
+        tag.putLongArray("chunks", this.controlledChunks.toLongArray());
 
-        ListTag logTag = new ListTag();
-        for (String log : this.activityLog) {
-            CompoundTag entry = new CompoundTag();
-            entry.putString("message", log);
-            logTag.add(entry);
-        }
-
-        tag.put("log", logTag);
+        tag.put("activity", this.activityLog.save());
         return tag;
     }
 
@@ -486,18 +712,29 @@ public class KingdomTerritory {
                 tag.getInt("centerZ")
         );
 
-        KingdomTerritory kingdom = new KingdomTerritory(center, tag.getString("name"));
+        // У королевств из старых сохранений id нет - выдаем новый
+        UUID id = tag.hasUUID("id") ? tag.getUUID("id") : UUID.randomUUID();
+        KingdomTerritory kingdom = new KingdomTerritory(id, center, tag.getString("name"));
         kingdom.radius = tag.getInt("radius");
         kingdom.points = tag.getInt("points");
         kingdom.reserveTroops = tag.getInt("reserveTroops");
-
-        ListTag logTag = tag.getList("log", Tag.TAG_COMPOUND);
-        for (int i = 0; i < logTag.size(); i++) {
-            CompoundTag entry = logTag.getCompound(i);
-            kingdom.activityLog.add(entry.getString("message"));
+        kingdom.recruitment.load(tag.getCompound("recruitment"));
+        kingdom.virtualTroops.load(tag.getList("virtualKnights", Tag.TAG_COMPOUND));
+
+        // Старые сохранения - журнал готовыми строками
+        if (tag.contains("activity", Tag.TAG_COMPOUND)) {
+            kingdom.activityLog.load(tag.getCompound("activity"));
+        } else {
+            kingdom.activityLog.loadLegacy(tag.getList("log", Tag.TAG_COMPOUND));
         }
 
-        kingdom.updateControlledChunks();
+        // Старые сохранения без карты чанков - круг по радиусу
+        kingdom.controlledChunks.clear();
+        if (tag.contains("chunks", Tag.TAG_LONG_ARRAY)) {
+            kingdom.controlledChunks.readLongArray(tag.getLongArray("chunks"));
+        } else {
+            kingdom.controlledChunks.growCircle(center.getX(), center.getZ(), -1, kingdom.radius, null);
+        }
         return kingdom;
     }
 }
@@ -0,0 +1,101 @@
+package com.vladisss.kingdomswar.kingdom;
+
+/**
+ * ВИД НА ПОЛЕ БОЯ ДЛЯ ПЛАНИРОВЩИКОВ
+ *
+ * Все, что читают KingdomAI.planDefense и TerritoryScanner.planThreatResponse:
+ * замок, воины и угрозы по слотам. Без ServerLevel и сущностей - поэтому
+ * логику решений можно гонять на синтетических данных (бенчмарки в src/jmh).
+ *
+ * В игре реализуется BattlefieldSnapshot.
+ * Воины: сначала стражники, затем рыцари. Угрозы: по расстоянию до замка.
+ * Зоны угроз - флаги ThreatSnapshot (IN_* / NEAR_CASTLE) и BattlefieldSnapshot.ON_SURFACE.
+ */
+public interface KingdomWorldView {
+
+    // ==================== ЗАМОК ====================
+
+    String getKingdomName();
+
+    double getCastleX();
+
+    double getCastleY();
+
+    double getCastleZ();
+
+    int getRadius();
+
+    long getGameTime();
+
+    // ==================== ВОИНЫ ====================
+
+    int getTroopCount();
+
+    int getGuardCount();
+
+    default int getKnightCount() {
+        return getTroopCount() - getGuardCount();
+    }
+
+    /**
+     * Слот первого рыцаря (рыцари идут после стражников)
+     */
+    default int getFirstKnightSlot() {
+        return getGuardCount();
+    }
+
+    default boolean isGuard(int troop) {
+        return troop < getGuardCount();
+    }
+
+    int getTroopId(int troop);
+
+    double getTroopX(int troop);
+
+    double getTroopY(int troop);
+
+    double getTroopZ(int troop);
+
+    float getTroopHealth(int troop);
+
+    /**
+     * У воина уже есть живая цель
+     */
+    boolean isTroopBusy(int troop);
+
+    // ==================== УГРОЗЫ ====================
+
+    int getThreatCount();
+
+    int getThreatId(int threat);
+
+    double getThreatX(int threat);
+
+    double getThreatY(int threat);
+
+    double getThreatZ(int threat);
+
+    float getThreatHealth(int threat);
+
+    boolean isThreatIn(int threat, int zone);
+
+    default int countThreatsIn(int zone) {
+        int count = 0;
+        for (int i = 0; i < getThreatCount(); i++) {
+            if (isThreatIn(i, zone)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Квадрат расстояния от угрозы до центра замка
+     */
+    default double threatDistanceToCastleSqr(int threat) {
+        double dx = getThreatX(threat) - getCastleX();
+        double dy = getThreatY(threat) - getCastleY();
+        double dz = getThreatZ(threat) - getCastleZ();
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
@@ -0,0 +1,183 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+
+/**
+ * ОЧЕРЕДЬ НАЙМА КОРОЛЕВСТВА
+ *
+ * Найм считается пачкой (весь недобор сразу) и оплачивается один раз при постановке
+ * в очередь (KingdomTerritory.hireBatch), а сами войска появляются отрядами по несколько
+ * тиков - не больше SPAWNS_PER_TICK за тик. Отряд ставится вокруг одной позиции
+ * из SpawnPositionCache. Если позиции есть, но долго не подходят (толпа) - очередь отменяется
+ * с возвратом очков (или рыцарей в резерв). Если позиций нет совсем (чанки выгружены) -
+ * очередь ждет их загрузки: отмена вернула бы очки, и следующий цикл найма нанял бы снова.
+ */
+public class RecruitmentPlanner {
+    private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
+
+    public enum TroopType {
+        GUARD,
+        KNIGHT
+    }
+
+    // ✅ Размер отряда и бюджет спавна за тик
+    private static final int SQUAD_SIZE = 4;
+    private static final int SPAWNS_PER_TICK = 4;
+
+    // Столько тиков подряд все позиции спавна заняты - отменяем очередь
+    private static final int MAX_FAILED_TICKS = 100;
+
+    private final KingdomTerritory kingdom;
+    private final ArrayDeque<Squad> queue = new ArrayDeque<>();
+    private int pendingGuards = 0;
+    private int pendingKnights = 0;
+    private int failedTicks = 0;
+
+    public RecruitmentPlanner(KingdomTerritory kingdom) {
+        this.kingdom = kingdom;
+    }
+
+    /**
+     * Поставить войска в очередь (уже оплаченные или взятые из резерва)
+     */
+    public void enqueue(TroopType type, int count, boolean fromReserve) {
+        while (count > 0) {
+            int size = Math.min(SQUAD_SIZE, count);
+            queue.add(new Squad(type, size, fromReserve));
+            count -= size;
+
+            if (type == TroopType.GUARD) {
+                pendingGuards += size;
+            } else {
+                pendingKnights += size;
+            }
+        }
+    }
+
+    public void tick(ServerLevel level) {
+        if (queue.isEmpty()) {
+            return;
+        }
+
+        int budget = SPAWNS_PER_TICK;
+        while (budget > 0 && !queue.isEmpty()) {
+            Squad squad = queue.peek();
+            SpawnPositionCache.Ring ring = squad.type == TroopType.GUARD
+                    ? SpawnPositionCache.Ring.CASTLE
+                    : SpawnPositionCache.Ring.TERRITORY;
+
+            BlockPos anchor = kingdom.getSpawnPositions().pick(level, ring);
+            if (anchor == null) {
+                if (kingdom.getSpawnPositions().size(ring) == 0) {
+                    return; // Чанки кольца не загружены - ждем, очередь не отменяем
+                }
+                if (++failedTicks >= MAX_FAILED_TICKS) {
+                    LOGGER.warn("[Kingdom] {} - нет позиций для спавна, найм отменен", kingdom.getName());
+                    cancel(level);
+                }
+                return;
+            }
+            failedTicks = 0;
+
+            int count = Math.min(squad.remaining, budget);
+            for (int i = 0; i < count; i++) {
+                boolean spawned = squad.type == TroopType.GUARD
+                        ? kingdom.spawnGuard(level, anchor)
+                        : kingdom.spawnKnight(level, anchor);
+                if (!spawned) {
+                    kingdom.refundRecruitment(level, squad.type, 1, squad.fromReserve);
+                }
+            }
+            kingdom.markDirty(level); // Очередь сохраняется с королевством
+
+            squad.remaining -= count;
+            budget -= count;
+            if (squad.type == TroopType.GUARD) {
+                pendingGuards -= count;
+            } else {
+                pendingKnights -= count;
+            }
+
+            if (squad.remaining == 0) {
+                queue.poll();
+            }
+        }
+    }
+
+    /**
+     * Отменить всю очередь: оплаченные войска - возврат очков, резервные - обратно в резерв
+     */
+    public void cancel(ServerLevel level) {
+        for (Squad squad : queue) {
+            kingdom.refundRecruitment(level, squad.type, squad.remaining, squad.fromReserve);
+        }
+        queue.clear();
+        pendingGuards = 0;
+        pendingKnights = 0;
+        failedTicks = 0;
+    }
+
+    public int getPendingGuards() {
+        return pendingGuards;
+    }
+
+    public int getPendingKnights() {
+        return pendingKnights;
+    }
+
+    public int getPendingTotal() {
+        return pendingGuards + pendingKnights;
+    }
+
+    // ==================== NBT ====================
+
+    public CompoundTag save() {
+        int paidKnights = 0;
+        int reserveKnights = 0;
+        for (Squad squad : queue) {
+            if (squad.type == TroopType.KNIGHT) {
+                if (squad.fromReserve) {
+                    reserveKnights += squad.remaining;
+                } else {
+                    paidKnights += squad.remaining;
+                }
+            }
+        }
+
+        CompoundTag tag = new CompoundTag();
+        tag.putInt("guards", pendingGuards);
+        tag.putInt("knights", paidKnights);
+        tag.putInt("reserveKnights", reserveKnights);
+        return tag;
+    }
+
+    public void load(CompoundTag tag) {
+        queue.clear();
+        pendingGuards = 0;
+        pendingKnights = 0;
+        enqueue(TroopType.GUARD, tag.getInt("guards"), false);
+        enqueue(TroopType.KNIGHT, tag.getInt("knights"), false);
+        enqueue(TroopType.KNIGHT, tag.getInt("reserveKnights"), true);
+    }
+
+    /**
+     * Отряд: войска одного типа, которые ставятся у одной позиции
+     */
+    private static class Squad {
+        private final TroopType type;
+        private final boolean fromReserve;
+        private int remaining;
+
+        Squad(TroopType type, int size, boolean fromReserve) {
+            this.type = type;
+            this.remaining = size;
+            this.fromReserve = fromReserve;
+        }
+    }
+}
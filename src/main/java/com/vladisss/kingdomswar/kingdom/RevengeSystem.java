@@ -1,12 +1,11 @@
 package com.vladisss.kingdomswar.kingdom;
 
-import com.vladisss.kingdomswar.entity.GuardEntity;
-import com.vladisss.kingdomswar.entity.KnightEntity;
+import com.vladisss.kingdomswar.entity.KingdomTroop;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Mob;
 import net.minecraft.world.entity.player.Player;
-import net.minecraft.world.phys.AABB;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,24 +16,43 @@ import java.util.*;
  * - Преследует убийцу до границы территории
  * - Запоминает игроков-убийц на 10 минут
  * - Отправляет отряд 3-5 воинов при повторном входе
+ *
+ * Забывание - через колесо по времени (за тик разбирается только наступивший слот),
+ * вход запомненного игрока - событие TerritoryPresenceTracker,
+ * так что отряд уходит один раз на каждый вход, без опроса каждый тик.
  */
-public class RevengeSystem {
+public class RevengeSystem implements TerritoryPresenceTracker.Listener {
     private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
 
     // UUID игрока -> время когда его забудут (в game time)
     private final Map<UUID, Long> rememberedPlayers = new HashMap<>();
     private static final long MEMORY_DURATION = 12000; // 10 минут в тиках (600 сек * 20 тиков)
 
+    // ✅ Колесо забывания: слот - отрезок SLOT_TICKS тиков, колесо длиннее срока памяти
+    private static final int SLOT_TICKS = 100;
+    private static final int WHEEL_SLOTS = (int) (MEMORY_DURATION / SLOT_TICKS) + 2;
+    private final List<List<UUID>> wheel = new ArrayList<>(WHEEL_SLOTS);
+    private long processedSlot = -1; // Последний разобранный слот (абсолютный номер)
+
+    // ✅ Размер отряда мести
+    private static final int MAX_SQUAD_SIZE = 5;
+
     private final KingdomTerritory kingdom;
 
+    // ✅ Вернувшийся с границы воин останавливается в стольких шагах от центра замка
+    private static final int RETURN_STOP_DISTANCE = 12;
+
     public RevengeSystem(KingdomTerritory kingdom) {
         this.kingdom = kingdom;
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel.add(new ArrayList<>());
+        }
     }
 
     /**
-     * ✅ Вызывается когда воин умирает
+     * ✅ Вызывается когда игрок убил воина (DeathPipeline, не чаще раза в тик на игрока)
      */
-    public void onWarriorKilled(ServerLevel level, Mob killedWarrior, UUID killerUUID) {
+    public void onWarriorKilled(ServerLevel level, BlockPos deathPos, UUID killerUUID) {
         if (killerUUID == null) return;
 
         Player killer = level.getServer().getPlayerList().getPlayer(killerUUID);
@@ -44,32 +62,25 @@ public class RevengeSystem {
         long currentTime = level.getGameTime();
         long forgetTime = currentTime + MEMORY_DURATION;
         rememberedPlayers.put(killerUUID, forgetTime);
+        wheel.get(slotIndex(forgetSlot(forgetTime))).add(killerUUID); // Прежняя запись устареет сама
 
         LOGGER.warn("[Revenge] {} убил воина {}! Запомнен до {}",
                 killer.getName().getString(), kingdom.getName(), forgetTime);
 
         // ✅ Поднимаем всех союзников на месть
-        alertAlliesForRevenge(level, killedWarrior.blockPosition(), killer);
+        alertAlliesForRevenge(level, deathPos, killer);
     }
 
     /**
      * ✅ Поднимает всех воинов на месть
      */
     private void alertAlliesForRevenge(ServerLevel level, BlockPos deathPos, Player killer) {
-        BlockPos center = kingdom.getCastleCenter();
-        int radius = kingdom.getRadius();
-
-        AABB searchBox = new AABB(
-                center.offset(-radius, -50, -radius),
-                center.offset(radius, 100, radius)
-        );
-
-        List<Mob> allWarriors = level.getEntitiesOfClass(Mob.class, searchBox, mob ->
-                (mob instanceof GuardEntity || mob instanceof KnightEntity) && mob.isAlive()
-        );
+        List<Mob> allWarriors = kingdom.getTroops().getAll();
 
         int alerted = 0;
         for (Mob warrior : allWarriors) {
+            if (!warrior.isAlive()) continue;
+
             // Устанавливаем цель на убийцу
             warrior.setTarget(killer);
             alerted++;
@@ -80,70 +91,98 @@ public class RevengeSystem {
     }
 
     /**
-     * ✅ Проверяет вошел ли запомненный игрок на территорию
+     * ✅ Забыть игроков, чей срок вышел (вызывается каждый тик, работа - раз в слот)
      */
-    public void checkForRememberedPlayers(ServerLevel level) {
+    public void tick(ServerLevel level) {
         long currentTime = level.getGameTime();
+        long currentSlot = currentTime / SLOT_TICKS;
+        if (processedSlot < 0 || currentSlot - processedSlot > WHEEL_SLOTS) {
+            processedSlot = Math.max(processedSlot, currentSlot - WHEEL_SLOTS);
+        }
 
-        // Удаляем забытых игроков
-        rememberedPlayers.entrySet().removeIf(entry -> {
-            if (entry.getValue() <= currentTime) {
-                LOGGER.info("[Revenge] {} забыт игрок с UUID {}",
-                        kingdom.getName(), entry.getKey());
-                return true;
+        while (processedSlot < currentSlot) {
+            processedSlot++;
+            List<UUID> slot = wheel.get(slotIndex(processedSlot));
+            for (UUID playerUUID : slot) {
+                Long forgetTime = rememberedPlayers.get(playerUUID);
+                // Запись устарела (игрок снова убил - срок продлен в другом слоте) - пропускаем
+                if (forgetTime != null && forgetTime <= currentTime) {
+                    rememberedPlayers.remove(playerUUID);
+                    LOGGER.info("[Revenge] {} забыт игрок с UUID {}",
+                            kingdom.getName(), playerUUID);
+                }
             }
-            return false;
-        });
+            slot.clear();
+        }
+    }
+
+    /**
+     * ✅ Игрок вошел на территорию: запомненному - один отряд мести на вход.
+     * Убийца, оставшийся на территории после убийства, входом не считается - на него уже идут все
+     */
+    @Override
+    public void onPlayerEnter(ServerLevel level, ServerPlayer player) {
+        if (!rememberedPlayers.containsKey(player.getUUID())) {
+            return;
+        }
 
-        // Проверяем запомненных игроков
-        for (UUID playerUUID : new HashSet<>(rememberedPlayers.keySet())) {
-            Player player = level.getServer().getPlayerList().getPlayer(playerUUID);
-            if (player == null) continue;
+        LOGGER.error("[Revenge] {} ВРАГ {} ВЕРНУЛСЯ! Отправляем отряд!",
+                kingdom.getName(), player.getName().getString());
 
-            // Проверяем вошел ли на территорию
-            if (kingdom.isInTerritory(player.blockPosition())) {
-                LOGGER.error("[Revenge] {} ВРАГ {} ВЕРНУЛСЯ! Отправляем отряд!",
-                        kingdom.getName(), player.getName().getString());
+        // ✅ Отправляем отряд мести 3-5 воинов
+        sendRevengeSquad(level, player);
+    }
 
-                // ✅ Отправляем отряд мести 3-5 воинов
-                sendRevengeSquad(level, player);
-            }
-        }
+    @Override
+    public void onPlayerExit(ServerLevel level, ServerPlayer player) {
+        // Выход ничего не меняет: игрок остается в памяти до конца срока
+    }
+
+    // Слот, в котором время забывания уже наступило (округление вверх)
+    private static long forgetSlot(long forgetTime) {
+        return (forgetTime + SLOT_TICKS - 1) / SLOT_TICKS;
+    }
+
+    private static int slotIndex(long slot) {
+        return (int) Math.floorMod(slot, (long) WHEEL_SLOTS);
     }
 
     /**
      * ✅ Отправляет отряд 3-5 ближайших воинов
      */
     private void sendRevengeSquad(ServerLevel level, Player target) {
-        BlockPos center = kingdom.getCastleCenter();
-        int radius = kingdom.getRadius();
+        // Ближайшие свободные воины: вставкой в короткий упорядоченный список без сортировки всех
+        Mob[] squad = new Mob[MAX_SQUAD_SIZE];
+        double[] distances = new double[MAX_SQUAD_SIZE];
+        int squadSize = 0;
+
+        for (Mob warrior : kingdom.getTroops().getAll()) {
+            if (!warrior.isAlive() || warrior.getTarget() != null) { // Только свободные воины
+                continue;
+            }
 
-        AABB searchBox = new AABB(
-                center.offset(-radius, -50, -radius),
-                center.offset(radius, 100, radius)
-        );
+            double distance = warrior.distanceToSqr(target);
+            if (squadSize == MAX_SQUAD_SIZE && distance >= distances[squadSize - 1]) {
+                continue;
+            }
 
-        List<Mob> allWarriors = level.getEntitiesOfClass(Mob.class, searchBox, mob ->
-                (mob instanceof GuardEntity || mob instanceof KnightEntity) &&
-                        mob.isAlive() &&
-                        mob.getTarget() == null // Только свободные воины
-        );
+            int i = squadSize < MAX_SQUAD_SIZE ? squadSize++ : squadSize - 1;
+            while (i > 0 && distances[i - 1] > distance) {
+                squad[i] = squad[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            squad[i] = warrior;
+            distances[i] = distance;
+        }
 
-        if (allWarriors.isEmpty()) {
+        if (squadSize == 0) {
             LOGGER.warn("[Revenge] Нет свободных воинов для отряда мести!");
             return;
         }
 
-        // Сортируем по расстоянию до игрока
-        allWarriors.sort(Comparator.comparingDouble(warrior ->
-                warrior.distanceToSqr(target)
-        ));
-
-        // Берем 3-5 ближайших
-        int squadSize = Math.min(5, Math.max(3, allWarriors.size()));
         for (int i = 0; i < squadSize; i++) {
-            Mob warrior = allWarriors.get(i);
-            warrior.setTarget(target);
+            squad[i].setTarget(target);
         }
 
         LOGGER.error("[Revenge] Отряд мести из {} воинов отправлен за {}!",
@@ -163,13 +202,16 @@ public class RevengeSystem {
             // Сбрасываем цель
             warrior.setTarget(null);
 
-            // Возвращаемся к замку
+            // Возвращаемся к замку: по полю потоков, если поле есть, иначе обычной навигацией
             BlockPos castleCenter = kingdom.getCastleCenter();
-            warrior.getNavigation().moveTo(castleCenter.getX(), castleCenter.getY(), castleCenter.getZ(), 1.0D);
+            if (!(warrior instanceof KingdomTroop troop) ||
+                    !troop.getFlowFollower().start(warrior, kingdom, castleCenter, 1.0D, RETURN_STOP_DISTANCE)) {
+                warrior.getNavigation().moveTo(castleCenter.getX(), castleCenter.getY(), castleCenter.getZ(), 1.0D);
+            }
         }
     }
 
     public boolean isPlayerRemembered(UUID playerUUID) {
         return rememberedPlayers.containsKey(playerUUID);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,319 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import com.vladisss.kingdomswar.entity.GuardEntity;
+import com.vladisss.kingdomswar.entity.KnightEntity;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.phys.AABB;
+
+import javax.annotation.Nullable;
+
+/**
+ * КЭШ ПОЗИЦИЙ СПАВНА ВОЙСК
+ *
+ * Заранее проверенные колонки (твердая опора, 2 блока воздуха) по кольцам:
+ * - CASTLE - у замка (стражники), не дальше 5 блоков по высоте от центра;
+ * - TERRITORY - по территории (рыцари).
+ * Колонки берутся через одну по X и Z, одна позиция на колонку.
+ *
+ * Обновляется по событиям: загрузка чанка (весь чанк), изменение блока (его колонка),
+ * пакетная запись блоков и расширение территории (перестройка по загруженным чанкам).
+ * Найм берет случайную позицию за O(1) и делает одну проверку на толпу.
+ */
+public class SpawnPositionCache {
+    public enum Ring {
+        CASTLE,     // Стражники - внутри замка
+        TERRITORY   // Рыцари - по всей территории
+    }
+
+    // ✅ Границы колец (блоки от центра замка)
+    private static final int CASTLE_MIN = 5;
+    private static final int CASTLE_MAX = 20;
+    private static final int CASTLE_MAX_HEIGHT_DIFF = 5;
+    private static final int TERRITORY_MIN = 20;
+    private static final double TERRITORY_RADIUS_FACTOR = 0.8;
+
+    // Шаг сетки колонок и попытки выбрать позицию без толпы
+    private static final int COLUMN_STEP = 2;
+    private static final int PICK_ATTEMPTS = 3;
+    private static final int MAX_TROOPS_NEARBY = 2;
+
+    private final KingdomTerritory owner;
+    private final Bucket castle = new Bucket();
+    private final Bucket territory = new Bucket();
+
+    private boolean built = false;
+    private int builtRadius = -1;   // Радиус территории, под который собрано кольцо рыцарей
+
+    public SpawnPositionCache(KingdomTerritory owner) {
+        this.owner = owner;
+    }
+
+    // ==================== СОБЫТИЯ ====================
+
+    /**
+     * Чанк загружен - проверить его колонки для всех королевств измерения
+     */
+    public static void onChunkLoaded(ServerLevel level, LevelChunk chunk) {
+        for (KingdomTerritory kingdom : KingdomManager.getKingdoms(level)) {
+            SpawnPositionCache cache = kingdom.getSpawnPositions();
+            if (cache.built) {
+                cache.scanChunk(chunk);
+            }
+        }
+    }
+
+    /**
+     * Блок изменился - перепроверить его колонку
+     */
+    public static void onBlockChanged(ServerLevel level, BlockPos pos) {
+        for (KingdomTerritory kingdom : KingdomManager.getKingdoms(level)) {
+            SpawnPositionCache cache = kingdom.getSpawnPositions();
+            if (cache.built) {
+                cache.updateColumn(level, pos.getX(), pos.getZ());
+            }
+        }
+    }
+
+    /**
+     * Массовая запись блоков мимо событий (BlockPlacementBatch) - перестроить при следующем найме
+     */
+    public static void onBulkChange(ServerLevel level) {
+        for (KingdomTerritory kingdom : KingdomManager.getKingdoms(level)) {
+            kingdom.getSpawnPositions().invalidate();
+        }
+    }
+
+    public void invalidate() {
+        built = false;
+        castle.clear();
+        territory.clear();
+    }
+
+    // ==================== ВЫБОР ПОЗИЦИИ ====================
+
+    /**
+     * Случайная проверенная позиция кольца без толпы войск рядом
+     *
+     * @return null - подходящих позиций нет
+     */
+    @Nullable
+    public BlockPos pick(ServerLevel level, Ring ring) {
+        ensureBuilt(level);
+
+        Bucket bucket = ring == Ring.CASTLE ? castle : territory;
+        for (int attempt = 0; attempt < PICK_ATTEMPTS && bucket.size() > 0; attempt++) {
+            int index = level.random.nextInt(bucket.size());
+            BlockPos pos = BlockPos.of(bucket.positions.getLong(index));
+
+            // Чанк выгружен - позиция устарела, вернется при его загрузке
+            if (!level.hasChunkAt(pos)) {
+                bucket.remove(ChunkPos.asLong(pos.getX(), pos.getZ()));
+                continue;
+            }
+
+            if (!isCrowded(level, pos)) {
+                return pos;
+            }
+        }
+        return null;
+    }
+
+    public int size(Ring ring) {
+        return ring == Ring.CASTLE ? castle.size() : territory.size();
+    }
+
+    /**
+     * Есть ли в кольце хоть одна позиция (нет - чанки кольца не загружены или стоять негде)
+     */
+    public boolean hasPositions(ServerLevel level, Ring ring) {
+        ensureBuilt(level);
+        return size(ring) > 0;
+    }
+
+    private void ensureBuilt(ServerLevel level) {
+        if (!built || builtRadius != owner.getRadius()) {
+            rebuild(level);
+        }
+    }
+
+    private static boolean isCrowded(ServerLevel level, BlockPos pos) {
+        return level.getEntitiesOfClass(
+                Mob.class,
+                new AABB(pos).inflate(3.0),
+                entity -> entity instanceof GuardEntity || entity instanceof KnightEntity
+        ).size() >= MAX_TROOPS_NEARBY;
+    }
+
+    // ==================== ЗАПОЛНЕНИЕ ====================
+
+    /**
+     * Пересобрать оба кольца по уже загруженным чанкам (без загрузки новых)
+     */
+    private void rebuild(ServerLevel level) {
+        castle.clear();
+        territory.clear();
+        built = true;
+        builtRadius = owner.getRadius();
+
+        BlockPos center = owner.getCastleCenter();
+        int reach = getOuterRadius();
+        int minChunkX = SectionPos.blockToSectionCoord(center.getX() - reach);
+        int maxChunkX = SectionPos.blockToSectionCoord(center.getX() + reach);
+        int minChunkZ = SectionPos.blockToSectionCoord(center.getZ() - reach);
+        int maxChunkZ = SectionPos.blockToSectionCoord(center.getZ() + reach);
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                LevelChunk chunk = level.getChunkSource().getChunkNow(chunkX, chunkZ);
+                if (chunk != null) {
+                    scanChunk(chunk);
+                }
+            }
+        }
+    }
+
+    private void scanChunk(LevelChunk chunk) {
+        BlockPos center = owner.getCastleCenter();
+        int reach = getOuterRadius();
+        int minX = Math.max(chunk.getPos().getMinBlockX(), center.getX() - reach);
+        int maxX = Math.min(chunk.getPos().getMaxBlockX(), center.getX() + reach);
+        int minZ = Math.max(chunk.getPos().getMinBlockZ(), center.getZ() - reach);
+        int maxZ = Math.min(chunk.getPos().getMaxBlockZ(), center.getZ() + reach);
+
+        // Первая колонка сетки (координаты, кратные шагу)
+        for (int x = minX + Math.floorMod(-minX, COLUMN_STEP); x <= maxX; x += COLUMN_STEP) {
+            for (int z = minZ + Math.floorMod(-minZ, COLUMN_STEP); z <= maxZ; z += COLUMN_STEP) {
+                evaluate(chunk, x, z);
+            }
+        }
+    }
+
+    private void updateColumn(ServerLevel level, int x, int z) {
+        if (Math.floorMod(x, COLUMN_STEP) != 0 || Math.floorMod(z, COLUMN_STEP) != 0 || ringOf(x, z) == null) {
+            return;
+        }
+
+        LevelChunk chunk = level.getChunkSource().getChunkNow(
+                SectionPos.blockToSectionCoord(x), SectionPos.blockToSectionCoord(z));
+        if (chunk != null) {
+            evaluate(chunk, x, z);
+        }
+    }
+
+    /**
+     * Проверить колонку и записать / убрать ее позицию
+     */
+    private void evaluate(LevelChunk chunk, int x, int z) {
+        Ring ring = ringOf(x, z);
+        if (ring == null) {
+            return;
+        }
+
+        Bucket bucket = ring == Ring.CASTLE ? castle : territory;
+        long column = ChunkPos.asLong(x, z);
+
+        // Поверхность поддерживается при setBlock (в отличие от WORLD_SURFACE_WG)
+        int surfaceY = chunk.getHeight(Heightmap.Types.WORLD_SURFACE, x & 15, z & 15) + 1;
+        if (ring == Ring.CASTLE && Math.abs(surfaceY - owner.getCastleCenter().getY()) > CASTLE_MAX_HEIGHT_DIFF) {
+            bucket.remove(column);
+            return;
+        }
+
+        BlockPos pos = new BlockPos(x, surfaceY, z);
+        if (isStandable(chunk, pos)) {
+            bucket.put(column, pos.asLong());
+        } else {
+            bucket.remove(column);
+        }
+    }
+
+    private static boolean isStandable(LevelChunk chunk, BlockPos pos) {
+        BlockState ground = chunk.getBlockState(pos.below());
+        return ground.isSolid() &&
+                chunk.getBlockState(pos).isAir() &&
+                chunk.getBlockState(pos.above()).isAir();
+    }
+
+    @Nullable
+    private Ring ringOf(int x, int z) {
+        BlockPos center = owner.getCastleCenter();
+        long dx = x - center.getX();
+        long dz = z - center.getZ();
+        long distSqr = dx * dx + dz * dz;
+
+        if (distSqr >= (long) CASTLE_MIN * CASTLE_MIN && distSqr < (long) CASTLE_MAX * CASTLE_MAX) {
+            return Ring.CASTLE;
+        }
+        int outer = getOuterRadius();
+        if (distSqr >= (long) TERRITORY_MIN * TERRITORY_MIN && distSqr < (long) outer * outer) {
+            return Ring.TERRITORY;
+        }
+        return null;
+    }
+
+    // Внешняя граница кольца рыцарей (как прежний случайный поиск: 20 + 0.8 радиуса)
+    private int getOuterRadius() {
+        return TERRITORY_MIN + (int) (owner.getRadius() * TERRITORY_RADIUS_FACTOR);
+    }
+
+    /**
+     * Позиции одного кольца: плотный список для выбора за O(1) +
+     * индекс колонка -> место в списке для замены и удаления за O(1)
+     */
+    private static class Bucket {
+        private final LongArrayList positions = new LongArrayList();
+        private final LongArrayList columns = new LongArrayList();
+        private final Long2IntOpenHashMap indexByColumn = new Long2IntOpenHashMap();
+
+        Bucket() {
+            indexByColumn.defaultReturnValue(-1);
+        }
+
+        void put(long column, long pos) {
+            int index = indexByColumn.get(column);
+            if (index >= 0) {
+                positions.set(index, pos);
+                return;
+            }
+            indexByColumn.put(column, positions.size());
+            positions.add(pos);
+            columns.add(column);
+        }
+
+        void remove(long column) {
+            int index = indexByColumn.remove(column);
+            if (index < 0) {
+                return;
+            }
+
+            // Последний элемент встает на место удаленного
+            int last = positions.size() - 1;
+            if (index != last) {
+                positions.set(index, positions.getLong(last));
+                columns.set(index, columns.getLong(last));
+                indexByColumn.put(columns.getLong(index), index);
+            }
+            positions.removeLong(last);
+            columns.removeLong(last);
+        }
+
+        int size() {
+            return positions.size();
+        }
+
+        void clear() {
+            positions.clear();
+            columns.clear();
+            indexByColumn.clear();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * КЭШ ПРОВЕРКИ ПОВЕРХНОСТИ
+ *
+ * Классификация блока (глубина под поверхностью, опора под ногами) кэшируется
+ * на один тик по упакованной позиции блока. Общий для TerritoryScanner.isOnSurface
+ * и проверки целей стражников/рыцарей.
+ *
+ * Сбрасывается при смене тика, при изменении блоков в колонке (BlockChangeHandler)
+ * и после пакетной записи блоков (BlockPlacementBatch).
+ */
+public class SurfaceCache {
+    private static final Map<ResourceKey<Level>, SurfaceCache> CACHES = new HashMap<>();
+
+    // Упаковка значения: [глубина под поверхностью << 2] | HAS_GROUND | COMPUTED
+    private static final int COMPUTED = 1;
+    private static final int HAS_GROUND = 2;
+
+    private final Long2IntOpenHashMap classes = new Long2IntOpenHashMap();
+    private final LongOpenHashSet columns = new LongOpenHashSet();
+    private long tick = Long.MIN_VALUE;
+
+    public static SurfaceCache get(ServerLevel level) {
+        return CACHES.computeIfAbsent(level.dimension(), key -> new SurfaceCache());
+    }
+
+    /**
+     * Блок изменился - сбрасываем всё закэшированное в его колонке
+     */
+    public static void onBlockChanged(ServerLevel level, BlockPos pos) {
+        SurfaceCache cache = CACHES.get(level.dimension());
+        if (cache != null) {
+            cache.invalidateColumn(pos.getX(), pos.getZ());
+        }
+    }
+
+    /**
+     * Массовая запись блоков мимо событий (BlockPlacementBatch) - сбрасываем весь кэш
+     */
+    public static void onBulkChange(ServerLevel level) {
+        SurfaceCache cache = CACHES.get(level.dimension());
+        if (cache != null) {
+            cache.classes.clear();
+            cache.columns.clear();
+        }
+    }
+
+    public static void onLevelUnload(ServerLevel level) {
+        CACHES.remove(level.dimension());
+    }
+
+    /**
+     * Есть ли под позицией твердая опора (1-2 блока вниз не воздух)
+     */
+    public boolean hasGround(ServerLevel level, BlockPos pos) {
+        return (classify(level, pos) & HAS_GROUND) != 0;
+    }
+
+    /**
+     * На сколько блоков позиция ниже поверхности WORLD_SURFACE (0 - на поверхности или выше)
+     */
+    public int getDepthBelowSurface(ServerLevel level, BlockPos pos) {
+        return classify(level, pos) >>> 2;
+    }
+
+    private int classify(ServerLevel level, BlockPos pos) {
+        long now = level.getGameTime();
+        if (now != tick) {
+            classes.clear();
+            columns.clear();
+            tick = now;
+        }
+
+        long key = pos.asLong();
+        int value = classes.get(key);
+        if (value != 0) {
+            return value;
+        }
+
+        // 1. Высота поверхности
+        int surfaceY = level.getHeight(Heightmap.Types.WORLD_SURFACE, pos.getX(), pos.getZ());
+        int depth = Math.max(0, surfaceY - pos.getY());
+
+        // 2. Опора под позицией
+        BlockPos below = pos.below();
+        boolean hasGround = !level.isEmptyBlock(below) || !level.isEmptyBlock(below.below());
+
+        value = (depth << 2) | (hasGround ? HAS_GROUND : 0) | COMPUTED;
+        classes.put(key, value);
+        columns.add(ChunkPos.asLong(pos.getX(), pos.getZ()));
+        return value;
+    }
+
+    private void invalidateColumn(int x, int z) {
+        if (!columns.remove(ChunkPos.asLong(x, z))) {
+            return;
+        }
+
+        LongIterator it = classes.keySet().iterator();
+        while (it.hasNext()) {
+            long key = it.nextLong();
+            if (BlockPos.getX(key) == x && BlockPos.getZ(key) == z) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import net.minecraft.world.entity.LivingEntity;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * РАСПРЕДЕЛЕНИЕ ВОИНОВ ПО ЦЕЛЯМ
+ *
+ * Общий жадный решатель для KingdomAI (умная оборона) и TerritoryScanner:
+ * угрозы обрабатываются по приоритету (в порядке списка - ближайшие к замку первыми),
+ * каждой угрозе выдаются ближайшие свободные воины из TroopSpatialIndex,
+ * пока не исчерпана ее емкость (сколько атакующих ей еще нужно).
+ *
+ * Емкости общие для нескольких проходов: стражники и рыцари распределяются
+ * по очереди, не превышая лимит на цель.
+ */
+public class TargetAssigner {
+
+    /**
+     * Получатель назначений: слот воина в индексе -> номер угрозы
+     */
+    public interface Sink {
+        void assign(int troopSlot, int threatIndex);
+    }
+
+    private double[] threatX = new double[16];
+    private double[] threatY = new double[16];
+    private double[] threatZ = new double[16];
+    private int[] capacity = new int[16];
+    private int threatCount;
+
+    private int[] nearest = new int[4];
+
+    /**
+     * Загрузить позиции угроз (порядок списка = приоритет), емкости обнуляются
+     */
+    public void setThreats(List<? extends LivingEntity> threats) {
+        clearThreats();
+        for (LivingEntity threat : threats) {
+            addThreat(threat.getX(), threat.getY(), threat.getZ());
+        }
+    }
+
+    public void clearThreats() {
+        threatCount = 0;
+    }
+
+    /**
+     * Добавить угрозу в конец очереди приоритета (емкость 0)
+     *
+     * @return номер угрозы в решателе
+     */
+    public int addThreat(double x, double y, double z) {
+        if (threatCount == threatX.length) {
+            int length = threatCount * 2;
+            threatX = Arrays.copyOf(threatX, length);
+            threatY = Arrays.copyOf(threatY, length);
+            threatZ = Arrays.copyOf(threatZ, length);
+            capacity = Arrays.copyOf(capacity, length);
+        }
+
+        int i = threatCount++;
+        threatX[i] = x;
+        threatY[i] = y;
+        threatZ[i] = z;
+        capacity[i] = 0;
+        return i;
+    }
+
+    public void setCapacity(int threatIndex, int attackers) {
+        capacity[threatIndex] = attackers;
+    }
+
+    public void setAllCapacities(int attackers) {
+        Arrays.fill(capacity, 0, threatCount, attackers);
+    }
+
+    public int getThreatCount() {
+        return threatCount;
+    }
+
+    /**
+     * Жадное распределение: для каждой угрозы - k ближайших свободных воинов (k = оставшаяся емкость).
+     * Назначенные слоты помечаются в индексе, емкости уменьшаются.
+     *
+     * @param filter дополнительное условие для воина (null - любой свободный)
+     * @return сколько назначений сделано
+     */
+    public int assign(TroopSpatialIndex troops, IntPredicate filter, Sink sink) {
+        int assignedCount = 0;
+
+        for (int i = 0; i < threatCount; i++) {
+            int wanted = capacity[i];
+            if (wanted <= 0) {
+                continue;
+            }
+            if (nearest.length < wanted) {
+                nearest = new int[wanted];
+            }
+
+            int found = troops.findNearestUnassigned(threatX[i], threatY[i], threatZ[i], wanted, filter, nearest);
+            for (int n = 0; n < found; n++) {
+                int slot = nearest[n];
+                troops.markAssigned(slot);
+                sink.assign(slot, i);
+            }
+
+            capacity[i] -= found;
+            assignedCount += found;
+
+            // Свободные воины закончились - дальше искать нечего
+            if (found < wanted) {
+                break;
+            }
+        }
+        return assignedCount;
+    }
+}
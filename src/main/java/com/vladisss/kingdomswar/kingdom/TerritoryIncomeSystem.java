@@ -46,7 +46,7 @@ public class TerritoryIncomeSystem {
         int income = territoryRadius / BLOCKS_PER_POINT;
 
         if (income > 0) {
-            kingdom.addPoints(income, "доход от территории");
+            kingdom.addPoints(income, ActivityLog.Type.TERRITORY_INCOME);
             LOGGER.info("[Income] {} получил {} очков (территория: {} блоков, доход: {}/мин)",
                     kingdom.getName(), income, territoryRadius, income);
         } else {
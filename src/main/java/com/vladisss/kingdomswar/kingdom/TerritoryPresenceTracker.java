@@ -0,0 +1,108 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.*;
+
+/**
+ * ИГРОКИ НА ТЕРРИТОРИИ КОРОЛЕВСТВА
+ *
+ * Множество игроков, стоящих на территории, обновляется только по событиям:
+ * смена чанка игроком (EntityEvent.EnteringSection), появление и уход из мира,
+ * изменение территории. Подписчики получают вход и выход - опрашивать позиции
+ * игроков каждый тик не нужно.
+ */
+public class TerritoryPresenceTracker {
+
+    /**
+     * Подписчик на вход и выход игроков (месть, будущая дипломатия и т.п.)
+     */
+    public interface Listener {
+        void onPlayerEnter(ServerLevel level, ServerPlayer player);
+
+        void onPlayerExit(ServerLevel level, ServerPlayer player);
+    }
+
+    private final KingdomTerritory kingdom;
+    private final Set<UUID> players = new HashSet<>();
+    private final Set<UUID> playersView = Collections.unmodifiableSet(players);
+    private final List<Listener> listeners = new ArrayList<>();
+
+    public TerritoryPresenceTracker(KingdomTerritory kingdom) {
+        this.kingdom = kingdom;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    // ==================== СОБЫТИЯ ====================
+
+    /**
+     * Игрок сменил чанк или появился в мире - обновить присутствие во всех королевствах измерения
+     */
+    public static void onPlayerMoved(ServerLevel level, ServerPlayer player, int chunkX, int chunkZ) {
+        for (KingdomTerritory kingdom : KingdomManager.getKingdoms(level)) {
+            kingdom.getPresence().update(level, player, chunkX, chunkZ);
+        }
+    }
+
+    /**
+     * Игрок ушел из мира (выход, смерть, смена измерения)
+     */
+    public static void onPlayerLeft(ServerLevel level, ServerPlayer player) {
+        for (KingdomTerritory kingdom : KingdomManager.getKingdoms(level)) {
+            kingdom.getPresence().remove(level, player);
+        }
+    }
+
+    /**
+     * Территория изменилась (новое королевство, расширение, потеря чанка) -
+     * перепроверить игроков измерения по их текущим чанкам
+     */
+    public void refresh(ServerLevel level) {
+        for (ServerPlayer player : level.players()) {
+            ChunkPos pos = player.chunkPosition();
+            update(level, player, pos.x, pos.z);
+        }
+    }
+
+    private void update(ServerLevel level, ServerPlayer player, int chunkX, int chunkZ) {
+        if (player.isAlive() && kingdom.isChunkControlled(chunkX, chunkZ)) {
+            if (players.add(player.getUUID())) {
+                for (Listener listener : listeners) {
+                    listener.onPlayerEnter(level, player);
+                }
+            }
+        } else {
+            remove(level, player);
+        }
+    }
+
+    private void remove(ServerLevel level, ServerPlayer player) {
+        if (players.remove(player.getUUID())) {
+            for (Listener listener : listeners) {
+                listener.onPlayerExit(level, player);
+            }
+        }
+    }
+
+    // ==================== ЗАПРОСЫ ====================
+
+    public boolean contains(UUID playerUUID) {
+        return players.contains(playerUUID);
+    }
+
+    /**
+     * Игроки на территории (неизменяемое представление, без копирования)
+     */
+    public Set<UUID> getPlayers() {
+        return playersView;
+    }
+
+    public int size() {
+        return players.size();
+    }
+}
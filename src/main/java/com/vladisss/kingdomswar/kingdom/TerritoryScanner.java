@@ -1,20 +1,15 @@
 package com.vladisss.kingdomswar.kingdom;
 
-import com.vladisss.kingdomswar.entity.GuardEntity;
 import com.vladisss.kingdomswar.entity.KnightEntity;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.LivingEntity;
 import net.minecraft.world.entity.Mob;
-import net.minecraft.world.entity.MobCategory;
-import net.minecraft.world.entity.monster.Monster;
-import net.minecraft.world.entity.player.Player;
-import net.minecraft.world.phys.AABB;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.IntPredicate;
 
 /**
  * УМНОЕ СКАНИРОВАНИЕ ТЕРРИТОРИИ
@@ -30,240 +25,203 @@ public class TerritoryScanner {
     // Сектора территории (8 направлений)
     private static final int SECTOR_COUNT = 8;
 
-    // Карта: какой рыцарь патрулирует какой сектор
-    private final Map<UUID, Integer> knightSectorAssignments = new HashMap<>();
+    // Переиспользуемые индекс войск и решатель распределения (только поток планирования)
+    private final TroopSpatialIndex troopIndex = new TroopSpatialIndex();
+    private final TargetAssigner assigner = new TargetAssigner();
+
+    // Текущий проход распределения: фильтр и обработчик создаются один раз, без захвата состояния
+    private AssignmentPlan planning;
+    private int planningTroopBase;                   // Слот снимка для слота 0 индекса
+    private int[] planningThreatSlots = new int[16]; // Номер угрозы в решателе -> слот снимка
+    private final IntPredicate freeTroopFilter = slot -> isFree(planning, planningTroopBase + slot);
+    private final TargetAssigner.Sink targetSink = this::recordTarget;
+
+    // Распределение по секторам, нарезанное по тикам (см. KingdomScheduler)
+    private List<KnightEntity> sectorKnights = List.of();
+    private int sectorCursor = -1; // -1 - проход не начат
 
     /**
-     * Сканировать всю территорию и распределить войска
+     * Патруль секторов (серверный поток, задача планировщика).
+     * Угрозы на поверхности обрабатывает план обороны (planThreatResponse) -
+     * тогда сектора не трогаем.
+     *
+     * @param battlefield   снимок поля боя этого цикла
+     * @param deadlineNanos граница бюджета тика - распределение по секторам продолжится в следующем тике
+     * @return true - проход завершен
      */
-    public void scanAndAssignTroops(ServerLevel level, KingdomTerritory kingdom) {
+    public boolean patrolSectors(KingdomTerritory kingdom, KingdomWorldView battlefield, long deadlineNanos) {
         BlockPos center = kingdom.getCastleCenter();
         int radius = kingdom.getRadius();
 
-        // 1. Найти все угрозы на территории
-        List<LivingEntity> threats = findAllThreats(level, center, radius);
-
-        if (threats.isEmpty()) {
-            // Нет угроз - рыцари патрулируют сектора
-            assignKnightsToSectors(level, center, radius);
-            return;
+        // Незаконченный проход по секторам с прошлого тика
+        if (sectorCursor >= 0) {
+            return assignKnightsToSectors(kingdom, center, radius, deadlineNanos);
         }
 
-        // 2. Распределить ближайших воинов к угрозам
-        List<GuardEntity> guards = getGuards(level, center, radius);
-        List<KnightEntity> knights = getKnights(level, center, radius);
-
-        assignTroopsToThreats(guards, knights, threats, center, radius);
-    }
-
-    /**
-     * Найти все угрозы НА ПОВЕРХНОСТИ территории
-     */
-    private List<LivingEntity> findAllThreats(ServerLevel level, BlockPos center, int radius) {
-        // ✅ Сканируем ТОЛЬКО на уровне поверхности ±10 блоков
-        int centerY = center.getY();
-
-        AABB searchArea = new AABB(
-                center.offset(-radius, -10, -radius),  // Только ±10 блоков по вертикали
-                center.offset(radius, 10, radius)
-        );
-
-        List<LivingEntity> threats = new ArrayList<>();
-
-        // 1. Монстры (зомби, скелеты и т.д.)
-        List<Monster> monsters = level.getEntitiesOfClass(Monster.class, searchArea);
-        for (Monster monster : monsters) {
-            if (isOnSurface(monster)) {  // ✅ ПРОВЕРКА ПОВЕРХНОСТИ
-                threats.add(monster);
-            }
+        if (battlefield != null && battlefield.countThreatsIn(BattlefieldSnapshot.ON_SURFACE) > 0) {
+            return true;
         }
 
-        // 2. Враждебные мобы из модов (некроманты, культисты и т.д.)
-        List<Mob> mobs = level.getEntitiesOfClass(Mob.class, searchArea);
-        for (Mob mob : mobs) {
-            // Пропускаем своих воинов
-            if (mob instanceof GuardEntity || mob instanceof KnightEntity) {
-                continue;
-            }
-
-            // Пропускаем мирных мобов
-            if (mob.getType().getCategory() == MobCategory.CREATURE ||
-                    mob.getType().getCategory() == MobCategory.AMBIENT ||
-                    mob.getType().getCategory() == MobCategory.WATER_CREATURE) {
-                continue;
-            }
-
-            // ✅ ПРОВЕРКА ПОВЕРХНОСТИ
-            if (isOnSurface(mob) && !threats.contains(mob)) {
-                threats.add(mob);
-            }
-        }
-
-        return threats;
+        // Нет угроз - рыцари патрулируют сектора
+        return assignKnightsToSectors(kingdom, center, radius, deadlineNanos);
     }
 
     /**
      * ✅ НОВЫЙ МЕТОД: Проверка что моб на поверхности
+     * Блоковая часть проверки берется из общего SurfaceCache (один расчет на позицию за тик)
      */
-    private boolean isOnSurface(LivingEntity entity) {
-        if (!entity.isAlive()) {
+    static boolean isOnSurface(LivingEntity entity) {
+        if (!entity.isAlive() || !(entity.level() instanceof ServerLevel level)) {
             return false;
         }
 
+        SurfaceCache surface = SurfaceCache.get(level);
         BlockPos entityPos = entity.blockPosition();
 
-        // 1. Проверяем высоту поверхности
-        int surfaceY = entity.level().getHeight(
-                net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE,
-                entityPos.getX(),
-                entityPos.getZ()
-        );
-
-        // Моб должен быть НЕ НИЖЕ поверхности минус 3 блока
-        if (entityPos.getY() < surfaceY - 3) {
+        // 1. Моб должен быть НЕ НИЖЕ поверхности минус 3 блока
+        if (surface.getDepthBelowSurface(level, entityPos) > 3) {
             return false;
         }
 
         // 2. Проверяем что под мобом есть твердый блок (не летает)
-        BlockPos below = entityPos.below();
-        boolean hasGround = !entity.level().isEmptyBlock(below) ||
-                !entity.level().isEmptyBlock(below.below());
-
-        if (!hasGround && !entity.onGround()) {
+        if (!surface.hasGround(level, entityPos) && !entity.onGround()) {
             return false; // Летает в воздухе - игнорируем
         }
 
-        // 3. Проверяем что над мобом есть небо (не в пещере)
-        boolean canSeeSky = entity.level().canSeeSky(entityPos);
-        if (!canSeeSky) {
-            // Дополнительная проверка: если не видит небо, то должен быть близко к поверхности
-            if (entityPos.getY() < surfaceY - 5) {
-                return false; // Глубоко под землей
-            }
-        }
-
+        // 3. Проверка неба (canSeeSky) не нужна: она отсекала только мобов глубже 5 блоков,
+        // а их уже отсек пункт 1
         return true;
     }
 
 
 
     /**
-     /**
-     * Распределить воинов к угрозам
+     * Распределить свободных воинов к угрозам на поверхности
+     * (поток планирования, после KingdomAI.planDefense - занятые планом воины не свободны)
      */
-    private void assignTroopsToThreats(
-            List<GuardEntity> guards,
-            List<KnightEntity> knights,
-            List<LivingEntity> threats,
-            BlockPos castleCenter,
-            int territoryRadius
-    ) {
-        // Сортируем угрозы по близости к замку
-        threats.sort(Comparator.comparingDouble(threat ->
-                threat.distanceToSqr(castleCenter.getX(), castleCenter.getY(), castleCenter.getZ())
-        ));
-
-        Set<UUID> assignedTroops = new HashSet<>();
-
-        for (LivingEntity threat : threats) {
-            // ✅ ЗАМЕНИЛИ isValidThreat на isOnSurface
-            if (!isOnSurface(threat)) {
-                continue;
-            }
+    public void planThreatResponse(KingdomWorldView battlefield, AssignmentPlan plan) {
+        // Угрозы уже отсортированы по близости к замку (ThreatSnapshot)
+        // и отмечены проверкой поверхности (BattlefieldSnapshot.ON_SURFACE)
+        int threatCount = collectSurfaceThreats(battlefield);
+        if (threatCount == 0) {
+            return;
+        }
 
-            // Если угроза близко к замку (<20 блоков) - отправляем стражников
-            double distToCastle = Math.sqrt(threat.distanceToSqr(
-                    castleCenter.getX(), castleCenter.getY(), castleCenter.getZ()
-            ));
-
-            if (distToCastle < 20) {
-                // Найти ближайшего свободного стражника
-                GuardEntity nearestGuard = findNearestFreeTroop(guards, threat, assignedTroops);
-                if (nearestGuard != null) {
-                    nearestGuard.setTarget(threat);
-                    assignedTroops.add(nearestGuard.getUUID());
-                    LOGGER.debug("[Scanner] Стражник {} -> {} ({}м от замка)",
-                            nearestGuard.getId(), threat.getName().getString(), (int)distToCastle);
-                }
-            }
+        assigner.clearThreats();
+        for (int i = 0; i < threatCount; i++) {
+            int threat = planningThreatSlots[i];
+            assigner.addThreat(battlefield.getThreatX(threat), battlefield.getThreatY(threat), battlefield.getThreatZ(threat));
+        }
 
-            // Рыцари - для всех угроз на территории
-            KnightEntity nearestKnight = findNearestFreeTroop(knights, threat, assignedTroops);
-            if (nearestKnight != null) {
-                nearestKnight.setTarget(threat);
-                assignedTroops.add(nearestKnight.getUUID());
-                LOGGER.debug("[Scanner] Рыцарь {} -> {}",
-                        nearestKnight.getId(), threat.getName().getString());
+        // Если угроза близко к замку (<20 блоков) - отправляем одного стражника
+        if (battlefield.getGuardCount() > 0) {
+            for (int i = 0; i < threatCount; i++) {
+                double distToCastle = Math.sqrt(battlefield.threatDistanceToCastleSqr(planningThreatSlots[i]));
+                assigner.setCapacity(i, distToCastle < 20 ? 1 : 0);
             }
+            assignFreeTroops(battlefield, plan, 0, battlefield.getGuardCount());
+        }
+
+        // Рыцари - по одному на каждую угрозу территории
+        if (battlefield.getKnightCount() > 0) {
+            assigner.setAllCapacities(1);
+            assignFreeTroops(battlefield, plan, battlefield.getFirstKnightSlot(), battlefield.getTroopCount());
         }
     }
 
+    private void assignFreeTroops(KingdomWorldView battlefield, AssignmentPlan plan, int from, int to) {
+        troopIndex.clear();
+        for (int troop = from; troop < to; troop++) {
+            troopIndex.add(battlefield.getTroopX(troop), battlefield.getTroopY(troop), battlefield.getTroopZ(troop));
+        }
 
+        planning = plan;
+        planningTroopBase = from;
+        assigner.assign(troopIndex, freeTroopFilter, targetSink);
+        planning = null;
+    }
+
+    private void recordTarget(int troopSlot, int threatIndex) {
+        int troop = planningTroopBase + troopSlot;
+        int threat = planningThreatSlots[threatIndex];
+
+        // Применится, только если воин так и не вступил в бой сам
+        planning.assign(troop, threat, true);
+        LOGGER.debug("[Scanner] Воин {} -> цель {}", planning.getSnapshot().getTroopId(troop),
+                planning.getSnapshot().getThreatId(threat));
+    }
+
+    private int collectSurfaceThreats(KingdomWorldView battlefield) {
+        if (planningThreatSlots.length < battlefield.getThreatCount()) {
+            planningThreatSlots = new int[Math.max(battlefield.getThreatCount(), planningThreatSlots.length * 2)];
+        }
+
+        int count = 0;
+        for (int threat = 0; threat < battlefield.getThreatCount(); threat++) {
+            if (battlefield.isThreatIn(threat, BattlefieldSnapshot.ON_SURFACE)) {
+                planningThreatSlots[count++] = threat;
+            }
+        }
+        return count;
+    }
 
     /**
-     * Найти ближайшего свободного воина
+     * Воин свободен: в снимке нет живой цели и план ему ничего не назначил
      */
-    private <T extends Mob> T findNearestFreeTroop(
-            List<T> troops,
-            LivingEntity threat,
-            Set<UUID> assignedTroops
-    ) {
-        return troops.stream()
-                .filter(troop -> !assignedTroops.contains(troop.getUUID()))
-                .filter(troop -> troop.getTarget() == null || !troop.getTarget().isAlive())
-                .min(Comparator.comparingDouble(troop -> troop.distanceToSqr(threat)))
-                .orElse(null);
+    private static boolean isFree(AssignmentPlan plan, int troop) {
+        return !plan.getSnapshot().isTroopBusy(troop) && !plan.isAssigned(troop);
     }
 
     /**
-     * Распределить рыцарей по секторам для патрулирования
+     * Воин свободен, если у него нет живой цели
      */
-    private void assignKnightsToSectors(ServerLevel level, BlockPos center, int radius) {
-        List<KnightEntity> knights = getKnights(level, center, radius);
+    private static boolean isFree(Mob troop) {
+        return troop.getTarget() == null || !troop.getTarget().isAlive();
+    }
 
-        // Очистить назначения у рыцарей без цели
-        knights.stream()
-                .filter(k -> k.getTarget() == null)
-                .forEach(k -> k.setTarget(null));
+    /**
+     * Распределить рыцарей по секторам для патрулирования (по частям, пока хватает бюджета тика)
+     *
+     * @return true - все рыцари обработаны
+     */
+    private boolean assignKnightsToSectors(KingdomTerritory kingdom, BlockPos center, int radius,
+                                           long deadlineNanos) {
+        if (sectorCursor < 0) {
+            sectorKnights = kingdom.getTroops().getKnights();
+            sectorCursor = 0;
+        }
 
         // Распределить по секторам
-        for (int i = 0; i < knights.size(); i++) {
-            KnightEntity knight = knights.get(i);
+        while (sectorCursor < sectorKnights.size()) {
+            int i = sectorCursor++;
+            KnightEntity knight = sectorKnights.get(i);
 
-            // Если рыцарь занят боем - не трогаем
-            if (knight.getTarget() != null && knight.getTarget().isAlive()) {
-                continue;
+            // Если рыцарь погиб или занят боем - не трогаем
+            if (knight.isAlive() && isFree(knight)) {
+                assignSector(knight, i % SECTOR_COUNT, center, radius);
             }
 
-            int sectorIndex = i % SECTOR_COUNT;
-            knightSectorAssignments.put(knight.getUUID(), sectorIndex);
-
-            // Позиция патруля на границе территории
-            double angle = (2 * Math.PI / SECTOR_COUNT) * sectorIndex;
-            int patrolDist = (int) (radius * 0.7); // 70% от радиуса
-
-            int x = center.getX() + (int) (Math.cos(angle) * patrolDist);
-            int z = center.getZ() + (int) (Math.sin(angle) * patrolDist);
-            BlockPos patrolPos = new BlockPos(x, center.getY(), z);
-
-            knight.setPatrolCenter(patrolPos);
-            knight.setPatrolRadius(20); // Радиус патруля 20 блоков
+            if (sectorCursor < sectorKnights.size() && KingdomScheduler.outOfTime(deadlineNanos)) {
+                return false; // Продолжим в следующем тике
+            }
         }
-    }
 
-    private List<GuardEntity> getGuards(ServerLevel level, BlockPos center, int radius) {
-        return level.getEntitiesOfClass(GuardEntity.class,
-                new AABB(center.offset(-radius, -50, -radius), center.offset(radius, 100, radius)),
-                guard -> guard.isAlive()
-        );
+        sectorKnights = List.of();
+        sectorCursor = -1;
+        return true;
     }
 
-    private List<KnightEntity> getKnights(ServerLevel level, BlockPos center, int radius) {
-        return level.getEntitiesOfClass(KnightEntity.class,
-                new AABB(center.offset(-radius, -50, -radius), center.offset(radius, 100, radius)),
-                knight -> knight.isAlive()
-        );
-    }
+    private void assignSector(KnightEntity knight, int sectorIndex, BlockPos center, int radius) {
+        // Позиция патруля на границе территории
+        double angle = (2 * Math.PI / SECTOR_COUNT) * sectorIndex;
+        int patrolDist = (int) (radius * 0.7); // 70% от радиуса
+
+        int x = center.getX() + (int) (Math.cos(angle) * patrolDist);
+        int z = center.getZ() + (int) (Math.sin(angle) * patrolDist);
+        BlockPos patrolPos = new BlockPos(x, center.getY(), z);
 
+        knight.setPatrolCenter(patrolPos);
+        knight.setPatrolRadius(20); // Радиус патруля 20 блоков
+    }
 
 }
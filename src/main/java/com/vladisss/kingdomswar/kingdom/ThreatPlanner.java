@@ -0,0 +1,90 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ПЛАНИРОВАНИЕ ОБОРОНЫ В ФОНОВОМ ПОТОКЕ
+ *
+ * Конвейер на цикл оценки:
+ * 1. серверный поток снимает BattlefieldSnapshot (позиции, здоровье, зоны);
+ * 2. рабочий поток считает уровень угрозы и назначения (KingdomAI + TerritoryScanner);
+ * 3. серверный поток в следующем тике применяет готовый AssignmentPlan.
+ *
+ * У королевства в работе не больше одного плана: планировщики AI и сканера
+ * (их индексы и буферы) всегда используются одним потоком.
+ */
+public class ThreatPlanner {
+    private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
+
+    // Общий пул для всех королевств (оставляем ядро серверному потоку)
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)),
+            new WorkerFactory()
+    );
+
+    private CompletableFuture<AssignmentPlan> pending;
+
+    /**
+     * Идет ли расчет предыдущего плана
+     */
+    public boolean isBusy() {
+        return pending != null && !pending.isDone();
+    }
+
+    /**
+     * Отправить снимок на расчет (серверный поток)
+     *
+     * @return false - предыдущий план еще считается, снимок пропущен
+     */
+    public boolean submit(BattlefieldSnapshot battlefield, KingdomAI ai, TerritoryScanner scanner) {
+        if (isBusy()) {
+            return false;
+        }
+
+        pending = CompletableFuture.supplyAsync(() -> {
+            AssignmentPlan plan = new AssignmentPlan(battlefield);
+            ai.planDefense(battlefield, plan);              // Уровень угрозы и оборона замка
+            scanner.planThreatResponse(battlefield, plan);  // Свободные воины - к угрозам на поверхности
+            return plan;
+        }, WORKERS);
+        return true;
+    }
+
+    /**
+     * Забрать готовый план (серверный поток, раз в тик)
+     *
+     * @return план или null, если расчета нет или он еще идет
+     */
+    public AssignmentPlan pollCompleted() {
+        if (pending == null || !pending.isDone()) {
+            return null;
+        }
+
+        CompletableFuture<AssignmentPlan> done = pending;
+        pending = null;
+        try {
+            return done.join();
+        } catch (Exception e) {
+            LOGGER.error("[Planner] Ошибка расчета плана обороны", e);
+            return null;
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "KingdomsWar-Planner-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
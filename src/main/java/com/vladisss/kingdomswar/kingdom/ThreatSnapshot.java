@@ -0,0 +1,149 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.entity.MobCategory;
+import net.minecraft.world.entity.monster.Monster;
+import net.minecraft.world.phys.AABB;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * СНИМОК УГРОЗ ЗА ЦИКЛ ОЦЕНКИ
+ *
+ * Один запрос по всей территории вместо пяти (3 в KingdomAI.updateThreatLevel,
+ * ещё по одному в обороне и 2 в TerritoryScanner).
+ * Угрозы отсортированы по расстоянию до замка; зоны (у замка 16 блоков, критическая
+ * зона 32 блока, вся территория, полоса у поверхности) считает classify -
+ * по ним раскладывает угрозы BattlefieldSnapshot.
+ */
+public class ThreatSnapshot {
+    public static final int CASTLE_DETECTION_RADIUS = 16;  // Радиус видимости замка
+    public static final int CRITICAL_THREAT_RADIUS = 32;   // Радиус критической угрозы
+    private static final int SURFACE_BAND = 10;            // Сканер смотрит только ±10 блоков от замка
+
+    // Зоны угрозы (битовые флаги, см. classify)
+    public static final int IN_SURFACE_BAND = 1;
+    public static final int IN_TERRITORY = 2;
+    public static final int IN_CRITICAL_ZONE = 4;
+    public static final int NEAR_CASTLE = 8;
+
+    private static final ThreatSnapshot EMPTY = new ThreatSnapshot(List.of(), 0);
+
+    // Все враждебные мобы территории (для BattlefieldSnapshot)
+    private final List<Mob> allThreats;
+
+    private final long gameTime;
+
+    private ThreatSnapshot(List<Mob> allThreats, long gameTime) {
+        this.allThreats = allThreats;
+        this.gameTime = gameTime;
+    }
+
+    public static ThreatSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Снять угрозы на территории (единственный getEntitiesOfClass за цикл)
+     */
+    public static ThreatSnapshot capture(ServerLevel level, KingdomTerritory kingdom) {
+        BlockPos center = kingdom.getCastleCenter();
+        ChunkBitmap chunks = kingdom.getControlledChunks();
+        if (chunks.isEmpty()) {
+            return new ThreatSnapshot(List.of(), level.getGameTime());
+        }
+
+        // Область поиска - границы карты чанков, сами мобы - только на чанках территории
+        AABB searchArea = new AABB(
+                SectionPos.sectionToBlockCoord(chunks.getMinX()), center.getY() - 50,
+                SectionPos.sectionToBlockCoord(chunks.getMinZ()),
+                SectionPos.sectionToBlockCoord(chunks.getMaxX() + 1), center.getY() + 100,
+                SectionPos.sectionToBlockCoord(chunks.getMaxZ() + 1)
+        );
+
+        List<Mob> found = level.getEntitiesOfClass(Mob.class, searchArea,
+                mob -> isHostile(mob) && kingdom.isInTerritory(mob.blockPosition()));
+        if (found.isEmpty()) {
+            return new ThreatSnapshot(List.of(), level.getGameTime());
+        }
+
+        // Приоритет: ближайшие к замку
+        double cx = center.getX();
+        double cy = center.getY();
+        double cz = center.getZ();
+        found.sort(Comparator.comparingDouble(e -> e.distanceToSqr(cx, cy, cz)));
+
+        return new ThreatSnapshot(Collections.unmodifiableList(found), level.getGameTime());
+    }
+
+    /**
+     * Зоны, в которые попадает враждебный моб (флаги IN_* / NEAR_CASTLE)
+     */
+    public static int classify(Mob mob, double cx, double cy, double cz) {
+        return classify(mob.getX(), mob.getY(), mob.getZ(), mob instanceof Monster && mob.isAlive(), cx, cy, cz);
+    }
+
+    /**
+     * Зоны по координатам (без сущности - для синтетических полей боя в бенчмарках)
+     *
+     * @param monster живой монстр - только такие учитываются в зонах оценки угрозы
+     */
+    public static int classify(double x, double y, double z, boolean monster, double cx, double cy, double cz) {
+        double dx = Math.abs(x - cx);
+        double dz = Math.abs(z - cz);
+        double dy = y - cy;
+
+        int zones = 0;
+        if (Math.abs(dy) <= SURFACE_BAND) {
+            zones |= IN_SURFACE_BAND;
+        }
+
+        // Зоны оценки угрозы - только живые монстры,
+        // те же квадратные области, что и раньше искались через AABB
+        if (monster) {
+            zones |= IN_TERRITORY;
+            if (dx <= CRITICAL_THREAT_RADIUS && dz <= CRITICAL_THREAT_RADIUS) {
+                zones |= IN_CRITICAL_ZONE;
+                if (dx <= CASTLE_DETECTION_RADIUS && dz <= CASTLE_DETECTION_RADIUS) {
+                    zones |= NEAR_CASTLE;
+                }
+            }
+        }
+        return zones;
+    }
+
+    /**
+     * Враждебный моб: монстр или моб из модов, не свой воин и не мирное существо
+     */
+    private static boolean isHostile(Mob mob) {
+        if (TroopRegistry.isTroop(mob)) {
+            return false;
+        }
+        if (mob instanceof Monster) {
+            return true;
+        }
+
+        MobCategory category = mob.getType().getCategory();
+        return category != MobCategory.CREATURE &&
+                category != MobCategory.AMBIENT &&
+                category != MobCategory.WATER_CREATURE;
+    }
+
+    // ==================== ГЕТТЕРЫ ====================
+
+    /**
+     * Угрозы территории (список неизменяемый, отсортирован по расстоянию до замка)
+     */
+    public List<Mob> getAllThreats() {
+        return allThreats;
+    }
+
+    public long getGameTime() {
+        return gameTime;
+    }
+}
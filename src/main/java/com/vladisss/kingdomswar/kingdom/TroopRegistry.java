@@ -0,0 +1,125 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import com.vladisss.kingdomswar.entity.GuardEntity;
+import com.vladisss.kingdomswar.entity.KnightEntity;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.Mob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * РЕЕСТР ВОЙСК КОРОЛЕВСТВА
+ *
+ * Живые стражники и рыцари, поддерживаемые событиями входа/выхода из мира
+ * и смерти (см. TroopRegistryHandler). Заменяет getEntitiesOfClass по всей территории:
+ * подсчёт войск - O(1), списки пересобираются только при изменении состава.
+ */
+public class TroopRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
+
+    private final Set<GuardEntity> guards = new LinkedHashSet<>();
+    private final Set<KnightEntity> knights = new LinkedHashSet<>();
+
+    // Кэш неизменяемых списков (сбрасывается при добавлении/удалении)
+    private List<GuardEntity> guardList = List.of();
+    private List<KnightEntity> knightList = List.of();
+    private List<Mob> allList = List.of();
+    private boolean dirty = false;
+
+    public static boolean isTroop(Entity entity) {
+        return entity instanceof GuardEntity || entity instanceof KnightEntity;
+    }
+
+    /**
+     * Добавить воина (вход в мир)
+     */
+    public boolean add(Mob troop) {
+        boolean added = false;
+        if (troop instanceof GuardEntity guard) {
+            added = guards.add(guard);
+        } else if (troop instanceof KnightEntity knight) {
+            added = knights.add(knight);
+        }
+        dirty |= added;
+        return added;
+    }
+
+    /**
+     * Убрать воина (смерть, выгрузка чанка, удаление)
+     */
+    public boolean remove(Mob troop) {
+        boolean removed = false;
+        if (troop instanceof GuardEntity guard) {
+            removed = guards.remove(guard);
+        } else if (troop instanceof KnightEntity knight) {
+            removed = knights.remove(knight);
+        }
+        dirty |= removed;
+        return removed;
+    }
+
+    /**
+     * Полная пересборка по загруженным сущностям уровня (только воины этого королевства).
+     * Нужна один раз при загрузке/создании королевства: события входа в мир,
+     * пришедшие до регистрации королевства, были пропущены.
+     */
+    public void rebuild(ServerLevel level, KingdomTerritory owner) {
+        guards.clear();
+        knights.clear();
+        for (Entity entity : level.getAllEntities()) {
+            if (isTroop(entity) && entity.isAlive() && KingdomManager.getOwner(level, (Mob) entity) == owner) {
+                add((Mob) entity);
+            }
+        }
+        dirty = true;
+        LOGGER.info("[Troops] Реестр {} пересобран: {} стражников, {} рыцарей",
+                owner.getName(), guards.size(), knights.size());
+    }
+
+    public int getGuardCount() {
+        return guards.size();
+    }
+
+    public int getKnightCount() {
+        return knights.size();
+    }
+
+    public int getTotalCount() {
+        return guards.size() + knights.size();
+    }
+
+    /**
+     * Неизменяемый список стражников (не копируется между изменениями состава)
+     */
+    public List<GuardEntity> getGuards() {
+        refreshViews();
+        return guardList;
+    }
+
+    public List<KnightEntity> getKnights() {
+        refreshViews();
+        return knightList;
+    }
+
+    /**
+     * Все воины: сначала стражники, затем рыцари
+     */
+    public List<Mob> getAll() {
+        refreshViews();
+        return allList;
+    }
+
+    private void refreshViews() {
+        if (!dirty) return;
+        guardList = List.copyOf(guards);
+        knightList = List.copyOf(knights);
+        List<Mob> all = new ArrayList<>(guards.size() + knights.size());
+        all.addAll(guards);
+        all.addAll(knights);
+        allList = Collections.unmodifiableList(all);
+        dirty = false;
+    }
+}
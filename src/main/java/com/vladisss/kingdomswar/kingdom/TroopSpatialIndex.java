@@ -0,0 +1,185 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * ПРОСТРАНСТВЕННЫЙ ИНДЕКС ВОЙСК (равномерная сетка 16x16 по XZ)
+ *
+ * Поиск "k ближайших свободных" обходит кольца клеток вокруг точки запроса и
+ * останавливается, как только следующее кольцо заведомо дальше k-го кандидата.
+ * Слоты плотные (0..size-1) и совпадают с индексами списка, из которого построен индекс.
+ * Индекс переиспользуется между циклами - массивы только растут.
+ */
+public class TroopSpatialIndex {
+    private static final int CELL_SHIFT = 4;        // Клетка 16x16 блоков
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+    private static final int LINEAR_SCAN_LIMIT = 16; // Для маленьких армий сетка не нужна
+
+    private double[] xs = new double[32];
+    private double[] ys = new double[32];
+    private double[] zs = new double[32];
+    private int[] next = new int[32];                // Следующий слот в той же клетке
+    private final Long2IntOpenHashMap cellHeads = new Long2IntOpenHashMap();
+    private final BitSet assigned = new BitSet();
+    private int size;
+
+    private int minCellX, maxCellX, minCellZ, maxCellZ;
+
+    // Буфер расстояний для отбора k ближайших
+    private double[] bestDist = new double[8];
+
+    public TroopSpatialIndex() {
+        cellHeads.defaultReturnValue(-1);
+    }
+
+    /**
+     * Перестроить индекс по списку воинов (слот = индекс в списке)
+     */
+    public void rebuild(List<? extends Mob> troops) {
+        clear();
+        for (Mob troop : troops) {
+            add(troop.getX(), troop.getY(), troop.getZ());
+        }
+    }
+
+    public void clear() {
+        cellHeads.clear();
+        assigned.clear();
+        size = 0;
+        minCellX = minCellZ = Integer.MAX_VALUE;
+        maxCellX = maxCellZ = Integer.MIN_VALUE;
+    }
+
+    public int add(double x, double y, double z) {
+        if (size == xs.length) {
+            int capacity = size * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            zs = Arrays.copyOf(zs, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+
+        int slot = size++;
+        xs[slot] = x;
+        ys[slot] = y;
+        zs[slot] = z;
+
+        int cellX = cellOf(x);
+        int cellZ = cellOf(z);
+        long cell = ChunkPos.asLong(cellX, cellZ);
+        next[slot] = cellHeads.get(cell);
+        cellHeads.put(cell, slot);
+
+        minCellX = Math.min(minCellX, cellX);
+        maxCellX = Math.max(maxCellX, cellX);
+        minCellZ = Math.min(minCellZ, cellZ);
+        maxCellZ = Math.max(maxCellZ, cellZ);
+        return slot;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void markAssigned(int slot) {
+        assigned.set(slot);
+    }
+
+    public boolean isAssigned(int slot) {
+        return assigned.get(slot);
+    }
+
+    /**
+     * Найти до k ближайших неназначенных слотов (квадрат 3D-расстояния, как distanceToSqr)
+     *
+     * @param filter дополнительный фильтр слотов (null - без фильтра)
+     * @param out    результат, отсортирован по возрастанию расстояния (длина >= k)
+     * @return сколько слотов найдено
+     */
+    public int findNearestUnassigned(double x, double y, double z, int k, IntPredicate filter, int[] out) {
+        if (k <= 0 || size == 0) {
+            return 0;
+        }
+        if (bestDist.length < k) {
+            bestDist = new double[k];
+        }
+
+        if (size <= LINEAR_SCAN_LIMIT) {
+            int found = 0;
+            for (int slot = 0; slot < size; slot++) {
+                found = offer(slot, x, y, z, k, filter, out, found);
+            }
+            return found;
+        }
+
+        int originX = cellOf(x);
+        int originZ = cellOf(z);
+        int maxRing = Math.max(
+                Math.max(originX - minCellX, maxCellX - originX),
+                Math.max(originZ - minCellZ, maxCellZ - originZ)
+        );
+
+        int found = 0;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int dx = -ring; dx <= ring; dx++) {
+                boolean edgeColumn = dx == -ring || dx == ring;
+                int step = edgeColumn ? 1 : 2 * ring; // Внутри кольца берем только верхнюю и нижнюю клетки
+                for (int dz = -ring; dz <= ring; dz += Math.max(step, 1)) {
+                    int slot = cellHeads.get(ChunkPos.asLong(originX + dx, originZ + dz));
+                    while (slot != -1) {
+                        found = offer(slot, x, y, z, k, filter, out, found);
+                        slot = next[slot];
+                    }
+                }
+            }
+
+            // Любая клетка следующего кольца минимум на ring*16 блоков дальше по горизонтали
+            if (found == k) {
+                double ringDistance = (double) ring * CELL_SIZE;
+                if (bestDist[k - 1] <= ringDistance * ringDistance) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Вставка кандидата в отсортированный список k лучших
+     */
+    private int offer(int slot, double x, double y, double z, int k, IntPredicate filter, int[] out, int found) {
+        if (assigned.get(slot) || (filter != null && !filter.test(slot))) {
+            return found;
+        }
+
+        double dx = xs[slot] - x;
+        double dy = ys[slot] - y;
+        double dz = zs[slot] - z;
+        double dist = dx * dx + dy * dy + dz * dz;
+
+        if (found == k && dist >= bestDist[k - 1]) {
+            return found;
+        }
+
+        int i = found == k ? k - 1 : found++;
+        while (i > 0 && bestDist[i - 1] > dist) {
+            bestDist[i] = bestDist[i - 1];
+            out[i] = out[i - 1];
+            i--;
+        }
+        bestDist[i] = dist;
+        out[i] = slot;
+        return found;
+    }
+
+    private static int cellOf(double coord) {
+        return ((int) Math.floor(coord)) >> CELL_SHIFT;
+    }
+}
@@ -0,0 +1,228 @@
+package com.vladisss.kingdomswar.kingdom;
+
+import com.vladisss.kingdomswar.entity.KnightEntity;
+import com.vladisss.kingdomswar.registry.ModEntities;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.entity.MobSpawnType;
+import net.minecraft.world.level.levelgen.Heightmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ВИРТУАЛЬНЫЕ РЫЦАРИ
+ *
+ * Рыцарь без цели, рядом с которым и с чьим патрулем нет игроков (дальность
+ * отслеживания сущности) и угроз, убирается из мира и хранится записью:
+ * позиция, здоровье, вариант, назначенный патруль. Запись "патрулирует" статистически
+ * (случайная точка патруля, понемногу лечится) и снова становится сущностью,
+ * когда к патрулю подходит игрок или угроза.
+ *
+ * Виртуальные рыцари считаются в численности армии (найм не восполняет их повторно)
+ * и сохраняются вместе с королевством.
+ */
+public class VirtualTroops {
+    private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
+
+    // ✅ Запас к дальности отслеживания: материализуем раньше, чем игрок увидит место
+    private static final int PLAYER_MARGIN = 16;
+    // Угроза ближе патруля + запаса - рыцарь нужен в мире
+    private static final int THREAT_MARGIN = 24;
+    // Лечение за один проход (проход - раз в цикл AI)
+    private static final float HEAL_PER_PASS = 1.0F;
+
+    private final List<VirtualKnight> knights = new ArrayList<>();
+
+    public int size() {
+        return knights.size();
+    }
+
+    /**
+     * Один проход: материализовать нужных, промоделировать остальных, убрать из мира праздных
+     */
+    public void update(ServerLevel level, KingdomTerritory kingdom, ThreatSnapshot threats) {
+        int range = getTrackingRange() + PLAYER_MARGIN;
+        int materialized = 0;
+        int virtualized = 0;
+
+        Iterator<VirtualKnight> it = knights.iterator();
+        while (it.hasNext()) {
+            VirtualKnight record = it.next();
+            if (isWatched(level, record.x, record.y, record.z, record.patrolCenter, range) ||
+                    hasThreatNear(threats, record.patrolCenter, record.patrolRadius)) {
+                if (materialize(level, kingdom, record)) {
+                    it.remove();
+                    materialized++;
+                }
+            } else {
+                simulate(level, record);
+            }
+        }
+
+        // Убираем из мира с большим запасом, чтобы рыцарь не мигал на границе дальности
+        int watchRange = range + PLAYER_MARGIN;
+        for (KnightEntity knight : new ArrayList<>(kingdom.getTroops().getKnights())) {
+            if (canVirtualize(knight) &&
+                    !isWatched(level, knight.getX(), knight.getY(), knight.getZ(), knight.getPatrolCenter(), watchRange) &&
+                    !hasThreatNear(threats, knight.getPatrolCenter(), knight.getPatrolRadius())) {
+                knights.add(VirtualKnight.of(knight));
+                knight.discard();
+                virtualized++;
+            }
+        }
+
+        // Записи сохраняются с королевством: любое изменение (в т.ч. моделирование) - пометить данные
+        if (materialized > 0 || virtualized > 0 || !knights.isEmpty()) {
+            kingdom.markDirty(level);
+        }
+
+        if (materialized > 0 || virtualized > 0) {
+            LOGGER.debug("[Kingdom] {} - рыцарей в мир: {}, в запись: {} (виртуальных: {})",
+                    kingdom.getName(), materialized, virtualized, knights.size());
+        }
+    }
+
+    // Дальность отслеживания рыцаря клиентами (в блоках)
+    private static int getTrackingRange() {
+        return ModEntities.KNIGHT.get().clientTrackingRange() * 16;
+    }
+
+    private static boolean canVirtualize(KnightEntity knight) {
+        return knight.isAlive() &&
+                knight.getPatrolCenter() != null &&
+                knight.getTarget() == null &&
+                knight.getLastHurtByMob() == null &&
+                !knight.isPassenger() &&
+                !knight.isVehicle() &&
+                !knight.isInWater();
+    }
+
+    private static boolean isWatched(ServerLevel level, double x, double y, double z, BlockPos patrolCenter, int range) {
+        return level.hasNearbyAlivePlayer(x, y, z, range) ||
+                level.hasNearbyAlivePlayer(patrolCenter.getX() + 0.5, patrolCenter.getY(), patrolCenter.getZ() + 0.5, range);
+    }
+
+    private static boolean hasThreatNear(ThreatSnapshot threats, BlockPos patrolCenter, int patrolRadius) {
+        double reach = patrolRadius + THREAT_MARGIN;
+        double reachSqr = reach * reach;
+        for (Mob threat : threats.getAllThreats()) {
+            double dx = threat.getX() - (patrolCenter.getX() + 0.5);
+            double dz = threat.getZ() - (patrolCenter.getZ() + 0.5);
+            if (dx * dx + dz * dz <= reachSqr) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Статистический патруль: точка в квадрате патруля (как KnightPatrolGoal), лечение
+     */
+    private static void simulate(ServerLevel level, VirtualKnight record) {
+        int radius = Math.max(1, record.patrolRadius);
+        record.x = record.patrolCenter.getX() + level.random.nextInt(radius * 2) - radius + 0.5;
+        record.z = record.patrolCenter.getZ() + level.random.nextInt(radius * 2) - radius + 0.5;
+        record.y = Double.NaN; // Высота - по поверхности при материализации
+        record.health = Math.min(record.maxHealth, record.health + HEAL_PER_PASS);
+    }
+
+    private static boolean materialize(ServerLevel level, KingdomTerritory kingdom, VirtualKnight record) {
+        BlockPos column = BlockPos.containing(record.x, 0, record.z);
+        if (!level.hasChunkAt(column)) {
+            return false; // Чанк еще не загружен - попробуем в следующий проход
+        }
+
+        KnightEntity knight = ModEntities.KNIGHT.get().create(level);
+        if (knight == null) {
+            return false;
+        }
+
+        double y = Double.isNaN(record.y)
+                ? level.getHeight(Heightmap.Types.MOTION_BLOCKING_NO_LEAVES, column.getX(), column.getZ())
+                : record.y;
+        knight.moveTo(record.x, y, record.z, level.random.nextFloat() * 360.0F, 0);
+        knight.finalizeSpawn(level, level.getCurrentDifficultyAt(column), MobSpawnType.COMMAND, null, null);
+        knight.setVariant(record.variant);
+        knight.setHealth(record.health);
+        knight.setPatrolCenter(record.patrolCenter);
+        knight.setPatrolRadius(record.patrolRadius);
+        knight.setPersistenceRequired();
+        knight.setKingdomId(kingdom.getId());
+        return level.addFreshEntity(knight);
+    }
+
+    // ==================== NBT ====================
+
+    public ListTag save() {
+        ListTag list = new ListTag();
+        for (VirtualKnight record : knights) {
+            list.add(record.save());
+        }
+        return list;
+    }
+
+    public void load(ListTag list) {
+        knights.clear();
+        for (int i = 0; i < list.size(); i++) {
+            knights.add(VirtualKnight.load(list.getCompound(i)));
+        }
+    }
+
+    /**
+     * Запись рыцаря вне мира
+     */
+    private static class VirtualKnight {
+        private double x, y, z;
+        private float health;
+        private float maxHealth;
+        private int variant;
+        private BlockPos patrolCenter;
+        private int patrolRadius;
+
+        static VirtualKnight of(KnightEntity knight) {
+            VirtualKnight record = new VirtualKnight();
+            record.x = knight.getX();
+            record.y = knight.getY();
+            record.z = knight.getZ();
+            record.health = knight.getHealth();
+            record.maxHealth = knight.getMaxHealth();
+            record.variant = knight.getVariant();
+            record.patrolCenter = knight.getPatrolCenter();
+            record.patrolRadius = knight.getPatrolRadius();
+            return record;
+        }
+
+        CompoundTag save() {
+            CompoundTag tag = new CompoundTag();
+            tag.putDouble("x", x);
+            tag.putDouble("y", y);
+            tag.putDouble("z", z);
+            tag.putFloat("health", health);
+            tag.putFloat("maxHealth", maxHealth);
+            tag.putInt("variant", variant);
+            tag.putLong("patrol", patrolCenter.asLong());
+            tag.putInt("patrolRadius", patrolRadius);
+            return tag;
+        }
+
+        static VirtualKnight load(CompoundTag tag) {
+            VirtualKnight record = new VirtualKnight();
+            record.x = tag.getDouble("x");
+            record.y = tag.getDouble("y");
+            record.z = tag.getDouble("z");
+            record.health = tag.getFloat("health");
+            record.maxHealth = tag.getFloat("maxHealth");
+            record.variant = tag.getInt("variant");
+            record.patrolCenter = BlockPos.of(tag.getLong("patrol"));
+            record.patrolRadius = tag.getInt("patrolRadius");
+            return record;
+        }
+    }
+}
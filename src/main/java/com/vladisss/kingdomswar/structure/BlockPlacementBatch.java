@@ -0,0 +1,300 @@
+package com.vladisss.kingdomswar.structure;
+
+import com.vladisss.kingdomswar.kingdom.FlowFields;
+import com.vladisss.kingdomswar.kingdom.SpawnPositionCache;
+import com.vladisss.kingdomswar.kingdom.SurfaceCache;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.lighting.LightEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * ПАКЕТНАЯ УСТАНОВКА БЛОКОВ
+ *
+ * Вместо level.setBlock(pos, state, 3) на каждый блок (обновления соседей, свет
+ * и пакет клиенту на каждый вызов) блоки копятся по чанкам, а apply() пишет их
+ * прямо в LevelChunkSection:
+ * - карты высот обновляются по каждому блоку, свет - только там, где он меняется
+ *   (проверки встают в очередь движка света и считаются им пачкой);
+ * - обновления соседей не рассылаются (постройка целиком, форма блоков уже задана);
+ * - игрокам уходит один пакет чанка на каждый затронутый чанк;
+ * - данные сущностей блоков (setBlockEntity) загружаются в созданные сущности до отправки чанка.
+ *
+ * getBlockState видит еще не записанные блоки - этапы постройки читают друг друга.
+ * Область (clip) ограничивает запись частью мира - например, одним чанком.
+ * Только серверный поток.
+ */
+public class BlockPlacementBatch implements BlockWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
+
+    private final ServerLevel level;
+
+    // Чанк -> (позиция блока -> новое состояние), порядок записи сохраняется
+    private final Long2ObjectOpenHashMap<Long2ObjectLinkedOpenHashMap<BlockState>> pending = new Long2ObjectOpenHashMap<>();
+    private int pendingCount = 0;
+
+    // Чанк -> (позиция -> NBT сущности блока), только для блоков из pending
+    private final Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<CompoundTag>> pendingBlockEntities = new Long2ObjectOpenHashMap<>();
+
+    // Область записи по X/Z (включительно); блоки вне нее отбрасываются
+    private int clipMinX = -NO_CLIP, clipMinZ = -NO_CLIP;
+    private int clipMaxX = NO_CLIP, clipMaxZ = NO_CLIP;
+
+    public BlockPlacementBatch(ServerLevel level) {
+        this.level = level;
+    }
+
+    public ServerLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Писать только в один чанк
+     */
+    public void clipToChunk(int chunkX, int chunkZ) {
+        clipMinX = SectionPos.sectionToBlockCoord(chunkX);
+        clipMinZ = SectionPos.sectionToBlockCoord(chunkZ);
+        clipMaxX = clipMinX + 15;
+        clipMaxZ = clipMinZ + 15;
+    }
+
+    public void clearClip() {
+        clipMinX = clipMinZ = -NO_CLIP;
+        clipMaxX = clipMaxZ = NO_CLIP;
+    }
+
+    @Override
+    public int getClipMinX() {
+        return clipMinX;
+    }
+
+    @Override
+    public int getClipMinZ() {
+        return clipMinZ;
+    }
+
+    @Override
+    public int getClipMaxX() {
+        return clipMaxX;
+    }
+
+    @Override
+    public int getClipMaxZ() {
+        return clipMaxZ;
+    }
+
+    /**
+     * Поставить блок (запишется в apply). Вне области записи - игнорируется
+     */
+    @Override
+    public void set(BlockPos pos, BlockState state) {
+        if (pos.getX() < clipMinX || pos.getX() > clipMaxX || pos.getZ() < clipMinZ || pos.getZ() > clipMaxZ) {
+            return;
+        }
+
+        long chunk = ChunkPos.asLong(SectionPos.blockToSectionCoord(pos.getX()), SectionPos.blockToSectionCoord(pos.getZ()));
+        Long2ObjectLinkedOpenHashMap<BlockState> blocks = pending.get(chunk);
+        if (blocks == null) {
+            blocks = new Long2ObjectLinkedOpenHashMap<>();
+            pending.put(chunk, blocks);
+        }
+        if (blocks.put(pos.asLong(), state) == null) {
+            pendingCount++;
+        }
+
+        // Новое состояние - прежние данные сущности к нему не относятся
+        Long2ObjectOpenHashMap<CompoundTag> tags = pendingBlockEntities.get(chunk);
+        if (tags != null) {
+            tags.remove(pos.asLong());
+        }
+    }
+
+    /**
+     * Данные сущности блока для уже поставленного в pos блока (запишутся в apply)
+     */
+    @Override
+    public void setBlockEntity(BlockPos pos, CompoundTag tag) {
+        if (pos.getX() < clipMinX || pos.getX() > clipMaxX || pos.getZ() < clipMinZ || pos.getZ() > clipMaxZ) {
+            return;
+        }
+
+        long chunk = ChunkPos.asLong(SectionPos.blockToSectionCoord(pos.getX()), SectionPos.blockToSectionCoord(pos.getZ()));
+        Long2ObjectLinkedOpenHashMap<BlockState> blocks = pending.get(chunk);
+        if (blocks == null || !blocks.containsKey(pos.asLong())) {
+            return;
+        }
+        pendingBlockEntities.computeIfAbsent(chunk, key -> new Long2ObjectOpenHashMap<>()).put(pos.asLong(), tag);
+    }
+
+    /**
+     * Состояние блока с учетом еще не записанных
+     */
+    public BlockState getBlockState(BlockPos pos) {
+        Long2ObjectLinkedOpenHashMap<BlockState> blocks = pending.get(
+                ChunkPos.asLong(SectionPos.blockToSectionCoord(pos.getX()), SectionPos.blockToSectionCoord(pos.getZ())));
+        if (blocks != null) {
+            BlockState state = blocks.get(pos.asLong());
+            if (state != null) {
+                return state;
+            }
+        }
+        return level.getBlockState(pos);
+    }
+
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    public int getPendingChunkCount() {
+        return pending.size();
+    }
+
+    /**
+     * Записать все блоки в чанки и разослать чанки игрокам
+     *
+     * @return сколько блоков реально изменилось
+     */
+    public int apply() {
+        long start = System.nanoTime();
+        LevelLightEngine lightEngine = level.getChunkSource().getLightEngine();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        int changed = 0;
+        int chunkCount = pending.size();
+
+        ObjectIterator<Long2ObjectMap.Entry<Long2ObjectLinkedOpenHashMap<BlockState>>> chunks =
+                pending.long2ObjectEntrySet().fastIterator();
+        while (chunks.hasNext()) {
+            Long2ObjectMap.Entry<Long2ObjectLinkedOpenHashMap<BlockState>> entry = chunks.next();
+            LevelChunk chunk = level.getChunk(ChunkPos.getX(entry.getLongKey()), ChunkPos.getZ(entry.getLongKey()));
+
+            int chunkChanged = 0;
+            ObjectIterator<Long2ObjectMap.Entry<BlockState>> blocks = entry.getValue().long2ObjectEntrySet().fastIterator();
+            while (blocks.hasNext()) {
+                Long2ObjectMap.Entry<BlockState> block = blocks.next();
+                pos.set(block.getLongKey());
+                if (writeBlock(chunk, pos, block.getValue(), lightEngine)) {
+                    chunkChanged++;
+                }
+            }
+
+            // Содержимое сущностей блоков - до отправки чанка (пакет несет их данные)
+            Long2ObjectOpenHashMap<CompoundTag> tags = pendingBlockEntities.get(entry.getLongKey());
+            if (tags != null && loadBlockEntities(chunk, tags, pos)) {
+                chunkChanged = Math.max(chunkChanged, 1);
+            }
+
+            if (chunkChanged > 0) {
+                chunk.setUnsaved(true);
+                resendChunk(chunk, lightEngine);
+                changed += chunkChanged;
+            }
+        }
+
+        pending.clear();
+        pendingBlockEntities.clear();
+        pendingCount = 0;
+
+        // Кэш поверхности живет один тик - проще сбросить целиком
+        SurfaceCache.onBulkChange(level);
+        SpawnPositionCache.onBulkChange(level);
+        FlowFields.onBulkChange(level);
+
+        LOGGER.debug("[Batch] Записано {} блоков в {} чанках за {} мс",
+                changed, chunkCount, (System.nanoTime() - start) / 1_000_000);
+        return changed;
+    }
+
+    private boolean writeBlock(LevelChunk chunk, BlockPos pos, BlockState state, LevelLightEngine lightEngine) {
+        int y = pos.getY();
+        if (level.isOutsideBuildHeight(y)) {
+            return false;
+        }
+
+        LevelChunkSection section = chunk.getSection(chunk.getSectionIndex(y));
+        boolean wasEmpty = section.hasOnlyAir();
+        int x = pos.getX() & 15;
+        int z = pos.getZ() & 15;
+
+        BlockState old = section.setBlockState(x, y & 15, z, state);
+        if (old == state) {
+            return false;
+        }
+
+        BlockPos at = pos.immutable();
+
+        // Секция стала пустой/непустой - свету нужно знать
+        boolean isEmpty = section.hasOnlyAir();
+        if (wasEmpty != isEmpty) {
+            lightEngine.updateSectionStatus(at, isEmpty);
+        }
+
+        for (Map.Entry<Heightmap.Types, Heightmap> heightmap : chunk.getHeightmaps()) {
+            heightmap.getValue().update(x, y, z, state);
+        }
+
+        // Сущности блоков: старая удаляется (с содержимым), новая создается
+        if (old.hasBlockEntity() && !old.is(state.getBlock())) {
+            old.onRemove(level, at, state, false);
+            chunk.removeBlockEntity(at);
+        }
+        if (state.hasBlockEntity()) {
+            chunk.getBlockEntity(at, LevelChunk.EntityCreationType.IMMEDIATE);
+        }
+
+        if (LightEngine.hasDifferentLightProperties(chunk, at, old, state)) {
+            lightEngine.checkBlock(at);
+        }
+
+        // Точки интереса (кровати, рабочие места жителей)
+        level.onBlockStateChange(at, old, state);
+        return true;
+    }
+
+    /**
+     * @return загружена хоть одна сущность блока
+     */
+    private static boolean loadBlockEntities(LevelChunk chunk, Long2ObjectOpenHashMap<CompoundTag> tags,
+                                             BlockPos.MutableBlockPos pos) {
+        boolean loaded = false;
+        ObjectIterator<Long2ObjectMap.Entry<CompoundTag>> it = tags.long2ObjectEntrySet().fastIterator();
+        while (it.hasNext()) {
+            Long2ObjectMap.Entry<CompoundTag> entry = it.next();
+            pos.set(entry.getLongKey());
+            BlockEntity blockEntity = chunk.getBlockEntity(pos, LevelChunk.EntityCreationType.IMMEDIATE);
+            if (blockEntity != null) {
+                blockEntity.load(entry.getValue().copy());
+                blockEntity.setChanged();
+                loaded = true;
+            }
+        }
+        return loaded;
+    }
+
+    private void resendChunk(LevelChunk chunk, LevelLightEngine lightEngine) {
+        ClientboundLevelChunkWithLightPacket packet = null;
+        for (ServerPlayer player : level.getChunkSource().chunkMap.getPlayers(chunk.getPos(), false)) {
+            if (packet == null) {
+                packet = new ClientboundLevelChunkWithLightPacket(chunk, lightEngine, null, null);
+            }
+            player.connection.send(packet);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.vladisss.kingdomswar.structure;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * КУДА ПИШУТСЯ БЛОКИ ПОСТРОЙКИ
+ *
+ * В мир - через BlockPlacementBatch, при компиляции чертежа - в CastleBlueprint.Compiler.
+ * Позицию в set() реализация не запоминает (можно передавать MutableBlockPos).
+ * Область (clip) - границы по X/Z, вне которых запись отбрасывается.
+ */
+public interface BlockWriter {
+    int NO_CLIP = 30_000_000;
+
+    void set(BlockPos pos, BlockState state);
+
+    /**
+     * Данные сущности блока (содержимое сундука, текст таблички) для блока, уже записанного в pos.
+     * Новый set() в ту же позицию данные сбрасывает
+     */
+    default void setBlockEntity(BlockPos pos, CompoundTag tag) {
+    }
+
+    /**
+     * Вертикальный отрезок [minY, maxY] одного блока (пустой, если minY > maxY)
+     */
+    default void setColumn(int x, int z, int minY, int maxY, BlockState state) {
+        if (x < getClipMinX() || x > getClipMaxX() || z < getClipMinZ() || z > getClipMaxZ()) {
+            return;
+        }
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int y = minY; y <= maxY; y++) {
+            set(pos.set(x, y, z), state);
+        }
+    }
+
+    default int getClipMinX() {
+        return -NO_CLIP;
+    }
+
+    default int getClipMinZ() {
+        return -NO_CLIP;
+    }
+
+    default int getClipMaxX() {
+        return NO_CLIP;
+    }
+
+    default int getClipMaxZ() {
+        return NO_CLIP;
+    }
+}
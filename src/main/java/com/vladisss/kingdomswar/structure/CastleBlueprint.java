@@ -0,0 +1,381 @@
+package com.vladisss.kingdomswar.structure;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * СКОМПИЛИРОВАННЫЙ ЧЕРТЕЖ ЗДАНИЯ
+ *
+ * Палитра состояний + по каждой секции 16x16x16 (в координатах чертежа) серии
+ * одинаковых блоков (RLE) в порядке y, z, x. Индекс палитры 0 - "не трогать блок мира".
+ * Серия упакована в int: (индекс палитры << 16) | длина (1..4096).
+ * Данные сущностей блоков (сундуки, таблички, спавнеры из шаблона) - отдельной
+ * разреженной таблицей позиция -> NBT, загружаются в новые сущности при постановке.
+ *
+ * Координаты - относительно центра замка. Постановка (place) - потоковое копирование:
+ * секции вне области записи пропускаются целиком, внутри - серии раскладываются в блоки.
+ */
+public final class CastleBlueprint {
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int SECTION_VOLUME = 16 * 16 * 16;
+
+    private final String source;            // Откуда скомпилирован (для проверки кэша)
+    private final List<BlockState> palette; // [0] = null - пропуск
+    private final int minX, minY, minZ;     // Начало сетки секций (относительно центра)
+    private final int maxX, maxY, maxZ;     // Границы поставленных блоков
+    private final long[] sectionKeys;       // SectionPos.asLong в сетке чертежа
+    private final int[][] sectionRuns;
+    private final long[] blockEntityPositions; // BlockPos.asLong относительно центра
+    private final CompoundTag[] blockEntityTags;
+    private final int blockCount;
+
+    private CastleBlueprint(String source, List<BlockState> palette,
+                            int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                            long[] sectionKeys, int[][] sectionRuns,
+                            long[] blockEntityPositions, CompoundTag[] blockEntityTags, int blockCount) {
+        this.source = source;
+        this.palette = palette;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.sectionKeys = sectionKeys;
+        this.sectionRuns = sectionRuns;
+        this.blockEntityPositions = blockEntityPositions;
+        this.blockEntityTags = blockEntityTags;
+        this.blockCount = blockCount;
+    }
+
+    // ==================== ПОСТАНОВКА ====================
+
+    /**
+     * Скопировать чертеж в мир (в пределах области записи)
+     */
+    public void place(BlockWriter out, BlockPos center) {
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        int originX = center.getX() + minX;
+        int originY = center.getY() + minY;
+        int originZ = center.getZ() + minZ;
+
+        for (int s = 0; s < sectionKeys.length; s++) {
+            int baseX = originX + SectionPos.sectionToBlockCoord(SectionPos.x(sectionKeys[s]));
+            int baseY = originY + SectionPos.sectionToBlockCoord(SectionPos.y(sectionKeys[s]));
+            int baseZ = originZ + SectionPos.sectionToBlockCoord(SectionPos.z(sectionKeys[s]));
+
+            // Секция целиком вне области - пропускаем
+            if (baseX + 15 < out.getClipMinX() || baseX > out.getClipMaxX() ||
+                    baseZ + 15 < out.getClipMinZ() || baseZ > out.getClipMaxZ()) {
+                continue;
+            }
+
+            int index = 0;
+            for (int run : sectionRuns[s]) {
+                int paletteIndex = run >>> 16;
+                int length = run & 0xFFFF;
+                if (paletteIndex != 0) {
+                    BlockState state = palette.get(paletteIndex);
+                    for (int i = index; i < index + length; i++) {
+                        pos.set(baseX + (i & 15), baseY + (i >>> 8), baseZ + ((i >>> 4) & 15));
+                        out.set(pos, state);
+                    }
+                }
+                index += length;
+            }
+        }
+
+        // Сущности блоков - после всех блоков (область записи проверяет сам writer)
+        for (int i = 0; i < blockEntityPositions.length; i++) {
+            long relative = blockEntityPositions[i];
+            pos.set(center.getX() + BlockPos.getX(relative), center.getY() + BlockPos.getY(relative),
+                    center.getZ() + BlockPos.getZ(relative));
+            out.setBlockEntity(pos, blockEntityTags[i]);
+        }
+    }
+
+    // ==================== СВОЙСТВА ====================
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Полуразмер здания по X/Z от центра (для разбиения постройки на чанки)
+     */
+    public int getReach() {
+        return Math.max(Math.max(-minX, maxX), Math.max(-minZ, maxZ));
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public int getPaletteSize() {
+        return palette.size() - 1;
+    }
+
+    public int getSectionCount() {
+        return sectionKeys.length;
+    }
+
+    public int getBlockEntityCount() {
+        return blockEntityPositions.length;
+    }
+
+    // ==================== КОМПИЛЯЦИЯ ====================
+
+    /**
+     * Сборщик чертежа: принимает блоки как BlockWriter (последняя запись в позицию побеждает).
+     * Позиции - относительно центра замка.
+     */
+    public static class Compiler implements BlockWriter {
+        private final Long2ObjectOpenHashMap<BlockState> blocks = new Long2ObjectOpenHashMap<>();
+        private final Long2ObjectOpenHashMap<CompoundTag> blockEntities = new Long2ObjectOpenHashMap<>();
+
+        @Override
+        public void set(BlockPos pos, BlockState state) {
+            blocks.put(pos.asLong(), state);
+            blockEntities.remove(pos.asLong());
+        }
+
+        @Override
+        public void setBlockEntity(BlockPos pos, CompoundTag tag) {
+            if (blocks.containsKey(pos.asLong())) {
+                blockEntities.put(pos.asLong(), tag.copy());
+            }
+        }
+
+        public CastleBlueprint compile(String source) {
+            if (blocks.isEmpty()) {
+                List<BlockState> empty = new ArrayList<>();
+                empty.add(null);
+                return new CastleBlueprint(source, empty, 0, 0, 0, 0, 0, 0, new long[0], new int[0][],
+                        new long[0], new CompoundTag[0], 0);
+            }
+
+            // Границы
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            ObjectIterator<Long2ObjectMap.Entry<BlockState>> it = blocks.long2ObjectEntrySet().fastIterator();
+            while (it.hasNext()) {
+                long key = it.next().getLongKey();
+                minX = Math.min(minX, BlockPos.getX(key));
+                minY = Math.min(minY, BlockPos.getY(key));
+                minZ = Math.min(minZ, BlockPos.getZ(key));
+                maxX = Math.max(maxX, BlockPos.getX(key));
+                maxY = Math.max(maxY, BlockPos.getY(key));
+                maxZ = Math.max(maxZ, BlockPos.getZ(key));
+            }
+
+            // Палитра и раскладка по секциям (плотные массивы индексов палитры)
+            List<BlockState> palette = new ArrayList<>();
+            palette.add(null);
+            Object2IntOpenHashMap<BlockState> paletteIndex = new Object2IntOpenHashMap<>();
+            Long2ObjectOpenHashMap<short[]> sections = new Long2ObjectOpenHashMap<>();
+
+            it = blocks.long2ObjectEntrySet().fastIterator();
+            while (it.hasNext()) {
+                Long2ObjectMap.Entry<BlockState> entry = it.next();
+                BlockState state = entry.getValue();
+                int index = paletteIndex.getOrDefault(state, 0);
+                if (index == 0) {
+                    index = palette.size();
+                    palette.add(state);
+                    paletteIndex.put(state, index);
+                }
+
+                int x = BlockPos.getX(entry.getLongKey()) - minX;
+                int y = BlockPos.getY(entry.getLongKey()) - minY;
+                int z = BlockPos.getZ(entry.getLongKey()) - minZ;
+                long sectionKey = SectionPos.asLong(x >> 4, y >> 4, z >> 4);
+                short[] cells = sections.computeIfAbsent(sectionKey, key -> new short[SECTION_VOLUME]);
+                cells[((y & 15) << 8) | ((z & 15) << 4) | (x & 15)] = (short) index;
+            }
+
+            // RLE по секциям (порядок секций - по ключу, чтобы файл был стабильным)
+            LongArrayList keys = new LongArrayList(sections.keySet());
+            keys.sort(null);
+            long[] sectionKeys = keys.toLongArray();
+            int[][] sectionRuns = new int[sectionKeys.length][];
+            IntArrayList runs = new IntArrayList();
+
+            for (int s = 0; s < sectionKeys.length; s++) {
+                short[] cells = sections.get(sectionKeys[s]);
+                runs.clear();
+                int current = cells[0] & 0xFFFF;
+                int length = 0;
+                for (short cell : cells) {
+                    int value = cell & 0xFFFF;
+                    if (value != current) {
+                        runs.add((current << 16) | length);
+                        current = value;
+                        length = 0;
+                    }
+                    length++;
+                }
+                runs.add((current << 16) | length);
+                sectionRuns[s] = runs.toIntArray();
+            }
+
+            // Сущности блоков - по позиции, тоже в стабильном порядке
+            LongArrayList entityKeys = new LongArrayList(blockEntities.keySet());
+            entityKeys.sort(null);
+            long[] blockEntityPositions = entityKeys.toLongArray();
+            CompoundTag[] blockEntityTags = new CompoundTag[blockEntityPositions.length];
+            for (int i = 0; i < blockEntityPositions.length; i++) {
+                blockEntityTags[i] = blockEntities.get(blockEntityPositions[i]);
+            }
+
+            return new CastleBlueprint(source, palette, minX, minY, minZ, maxX, maxY, maxZ,
+                    sectionKeys, sectionRuns, blockEntityPositions, blockEntityTags, blocks.size());
+        }
+    }
+
+    /**
+     * Встроенный процедурный замок (CastleStructure.buildDesign)
+     */
+    public static CastleBlueprint compileProcedural(String source) {
+        Compiler compiler = new Compiler();
+        CastleStructure.buildDesign(compiler, BlockPos.ZERO);
+        return compiler.compile(source);
+    }
+
+    /**
+     * Чертеж из NBT-шаблона структуры (формат ванильного structure block).
+     * Шаблон центрируется по X/Z, низ шаблона - на уровне пола замка (y = -1).
+     * structure_void пропускается, воздух - записывается, "nbt" блока (сундуки, таблички,
+     * спавнеры, флаги) переносится в чертеж.
+     */
+    public static CastleBlueprint compileTemplate(CompoundTag template, String source) {
+        ListTag paletteTag = template.contains("palettes", Tag.TAG_LIST)
+                ? template.getList("palettes", Tag.TAG_LIST).getList(0)
+                : template.getList("palette", Tag.TAG_COMPOUND);
+
+        List<BlockState> states = new ArrayList<>(paletteTag.size());
+        for (int i = 0; i < paletteTag.size(); i++) {
+            states.add(NbtUtils.readBlockState(BuiltInRegistries.BLOCK.asLookup(), paletteTag.getCompound(i)));
+        }
+
+        ListTag size = template.getList("size", Tag.TAG_INT);
+        int offsetX = -size.getInt(0) / 2;
+        int offsetZ = -size.getInt(2) / 2;
+
+        Compiler compiler = new Compiler();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        ListTag blocksTag = template.getList("blocks", Tag.TAG_COMPOUND);
+        for (int i = 0; i < blocksTag.size(); i++) {
+            CompoundTag block = blocksTag.getCompound(i);
+            int stateIndex = block.getInt("state");
+            if (stateIndex < 0 || stateIndex >= states.size()) {
+                continue;
+            }
+            BlockState state = states.get(stateIndex);
+            if (state.is(Blocks.STRUCTURE_VOID)) {
+                continue;
+            }
+
+            ListTag blockPos = block.getList("pos", Tag.TAG_INT);
+            pos.set(blockPos.getInt(0) + offsetX, blockPos.getInt(1) - 1, blockPos.getInt(2) + offsetZ);
+            compiler.set(pos, state);
+            if (block.contains("nbt", Tag.TAG_COMPOUND)) {
+                compiler.setBlockEntity(pos, block.getCompound("nbt"));
+            }
+        }
+        return compiler.compile(source);
+    }
+
+    // ==================== NBT ====================
+
+    public CompoundTag save() {
+        CompoundTag tag = new CompoundTag();
+        tag.putInt("version", FORMAT_VERSION);
+        tag.putString("source", source);
+
+        ListTag paletteTag = new ListTag();
+        for (int i = 1; i < palette.size(); i++) {
+            paletteTag.add(NbtUtils.writeBlockState(palette.get(i)));
+        }
+        tag.put("palette", paletteTag);
+
+        tag.putIntArray("min", new int[]{minX, minY, minZ});
+        tag.putIntArray("max", new int[]{maxX, maxY, maxZ});
+        tag.putInt("blockCount", blockCount);
+
+        ListTag sectionsTag = new ListTag();
+        for (int s = 0; s < sectionKeys.length; s++) {
+            CompoundTag section = new CompoundTag();
+            section.putLong("pos", sectionKeys[s]);
+            section.putIntArray("runs", sectionRuns[s]);
+            sectionsTag.add(section);
+        }
+        tag.put("sections", sectionsTag);
+
+        ListTag blockEntitiesTag = new ListTag();
+        for (int i = 0; i < blockEntityPositions.length; i++) {
+            CompoundTag blockEntity = new CompoundTag();
+            blockEntity.putLong("pos", blockEntityPositions[i]);
+            blockEntity.put("nbt", blockEntityTags[i]);
+            blockEntitiesTag.add(blockEntity);
+        }
+        tag.put("blockEntities", blockEntitiesTag);
+        return tag;
+    }
+
+    /**
+     * @return чертеж или null, если формат другой версии
+     */
+    public static CastleBlueprint load(CompoundTag tag) {
+        if (tag.getInt("version") != FORMAT_VERSION) {
+            return null;
+        }
+
+        ListTag paletteTag = tag.getList("palette", Tag.TAG_COMPOUND);
+        List<BlockState> palette = new ArrayList<>(paletteTag.size() + 1);
+        palette.add(null);
+        for (int i = 0; i < paletteTag.size(); i++) {
+            palette.add(NbtUtils.readBlockState(BuiltInRegistries.BLOCK.asLookup(), paletteTag.getCompound(i)));
+        }
+
+        int[] min = tag.getIntArray("min");
+        int[] max = tag.getIntArray("max");
+        ListTag sectionsTag = tag.getList("sections", Tag.TAG_COMPOUND);
+        long[] sectionKeys = new long[sectionsTag.size()];
+        int[][] sectionRuns = new int[sectionsTag.size()][];
+        for (int s = 0; s < sectionsTag.size(); s++) {
+            CompoundTag section = sectionsTag.getCompound(s);
+            sectionKeys[s] = section.getLong("pos");
+            sectionRuns[s] = section.getIntArray("runs");
+        }
+
+        ListTag blockEntitiesTag = tag.getList("blockEntities", Tag.TAG_COMPOUND);
+        long[] blockEntityPositions = new long[blockEntitiesTag.size()];
+        CompoundTag[] blockEntityTags = new CompoundTag[blockEntitiesTag.size()];
+        for (int i = 0; i < blockEntitiesTag.size(); i++) {
+            CompoundTag blockEntity = blockEntitiesTag.getCompound(i);
+            blockEntityPositions[i] = blockEntity.getLong("pos");
+            blockEntityTags[i] = blockEntity.getCompound("nbt");
+        }
+
+        return new CastleBlueprint(tag.getString("source"), palette,
+                min[0], min[1], min[2], max[0], max[1], max[2],
+                sectionKeys, sectionRuns, blockEntityPositions, blockEntityTags, tag.getInt("blockCount"));
+    }
+}
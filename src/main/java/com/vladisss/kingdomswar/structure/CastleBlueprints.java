@@ -0,0 +1,130 @@
+package com.vladisss.kingdomswar.structure;
+
+import com.vladisss.kingdomswar.KingdomsWarMod;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.packs.resources.Resource;
+import net.minecraft.world.level.storage.LevelResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * ЧЕРТЕЖ ЗАМКА СЕРВЕРА
+ *
+ * Источник: NBT-шаблон kingdomswar:my_castle из датапака (свой дизайн замка сервера),
+ * если его нет - встроенный процедурный замок.
+ * Скомпилированный чертеж кэшируется в папке мира (kingdomswar/blueprints/castle.dat)
+ * и компилируется заново, только если изменился источник (версия / контрольная сумма шаблона).
+ * Чертеж в памяти сбрасывается при перезагрузке датапаков и остановке сервера (clear).
+ */
+public class CastleBlueprints {
+    private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
+
+    private static final ResourceLocation TEMPLATE = new ResourceLocation(KingdomsWarMod.MODID, "structures/my_castle.nbt");
+    private static final String CACHE_FILE = KingdomsWarMod.MODID + "/blueprints/castle.dat";
+
+    // Версия процедурного дизайна: поменяли CastleStructure.buildDesign - увеличить
+    private static final int PROCEDURAL_VERSION = 1;
+
+    private static CastleBlueprint cached;
+
+    public static CastleBlueprint get(MinecraftServer server) {
+        if (cached != null) {
+            return cached;
+        }
+
+        long start = System.nanoTime();
+        byte[] template = readTemplate(server);
+        String source = template != null
+                ? "template:" + checksum(template)
+                : "procedural:" + PROCEDURAL_VERSION;
+
+        File cacheFile = server.getWorldPath(LevelResource.ROOT).resolve(CACHE_FILE).toFile();
+        CastleBlueprint blueprint = readCache(cacheFile, source);
+        if (blueprint != null) {
+            LOGGER.info("[Castle] Чертеж загружен из кэша ({}, {} блоков) за {} мс",
+                    source, blueprint.getBlockCount(), (System.nanoTime() - start) / 1_000_000);
+        } else {
+            blueprint = compile(template, source);
+            writeCache(cacheFile, blueprint);
+            LOGGER.info("[Castle] Чертеж скомпилирован ({}, {} блоков, палитра {}, секций {}, сущностей блоков {}) за {} мс",
+                    source, blueprint.getBlockCount(), blueprint.getPaletteSize(),
+                    blueprint.getSectionCount(), blueprint.getBlockEntityCount(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+
+        cached = blueprint;
+        return blueprint;
+    }
+
+    public static void clear() {
+        cached = null;
+    }
+
+    private static CastleBlueprint compile(byte[] template, String source) {
+        if (template != null) {
+            try {
+                return CastleBlueprint.compileTemplate(NbtIo.readCompressed(new ByteArrayInputStream(template)), source);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("[Castle] Шаблон {} не читается - строим встроенный замок", TEMPLATE, e);
+            }
+        }
+        return CastleBlueprint.compileProcedural("procedural:" + PROCEDURAL_VERSION);
+    }
+
+    private static byte[] readTemplate(MinecraftServer server) {
+        Optional<Resource> resource = server.getResourceManager().getResource(TEMPLATE);
+        if (resource.isEmpty()) {
+            return null;
+        }
+
+        try (InputStream in = resource.get().open()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            LOGGER.error("[Castle] Ошибка чтения шаблона {}", TEMPLATE, e);
+            return null;
+        }
+    }
+
+    private static String checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static CastleBlueprint readCache(File file, String source) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            CastleBlueprint blueprint = CastleBlueprint.load(NbtIo.readCompressed(file));
+            return blueprint != null && blueprint.getSource().equals(source) ? blueprint : null;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("[Castle] Кэш чертежа поврежден - компилируем заново", e);
+            return null;
+        }
+    }
+
+    private static void writeCache(File file, CastleBlueprint blueprint) {
+        try {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Не удалось создать " + dir);
+            }
+            CompoundTag tag = blueprint.save();
+            NbtIo.writeCompressed(tag, file);
+        } catch (IOException e) {
+            LOGGER.warn("[Castle] Не удалось сохранить кэш чертежа", e);
+        }
+    }
+}
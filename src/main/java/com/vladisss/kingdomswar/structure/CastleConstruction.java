@@ -0,0 +1,101 @@
+package com.vladisss.kingdomswar.structure;
+
+import com.vladisss.kingdomswar.command.SpawnCastleCommand;
+import com.vladisss.kingdomswar.kingdom.KingdomData;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.Level;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * ИДУЩИЕ ПОСТРОЙКИ ЗАМКОВ
+ *
+ * Постройки каждого измерения тикаются из серверного тика и хранятся в KingdomData.
+ * Когда замок достроен - основывается королевство (SpawnCastleCommand.onCastleBuilt).
+ */
+public class CastleConstruction {
+    private static final Map<ResourceKey<Level>, List<CastleConstructionJob>> JOBS = new HashMap<>();
+
+    // Сообщать владельцу прогресс каждые 25%
+    private static final int PROGRESS_STEP = 25;
+
+    public static void start(ServerLevel level, CastleConstructionJob job) {
+        JOBS.computeIfAbsent(level.dimension(), key -> new ArrayList<>()).add(job);
+
+        KingdomData data = KingdomData.get(level);
+        data.addConstruction(job);
+        data.setDirty();
+    }
+
+    public static void tick(ServerLevel level) {
+        List<CastleConstructionJob> jobs = JOBS.get(level.dimension());
+        if (jobs == null || jobs.isEmpty()) {
+            return;
+        }
+
+        KingdomData data = KingdomData.get(level);
+        Iterator<CastleConstructionJob> it = jobs.iterator();
+        while (it.hasNext()) {
+            CastleConstructionJob job = it.next();
+            int before = job.getProgressPercent() / PROGRESS_STEP;
+            boolean finished = job.tick(level);
+            data.setDirty();
+
+            if (finished) {
+                it.remove();
+                data.removeConstruction(job);
+                SpawnCastleCommand.onCastleBuilt(level, job);
+            } else if (job.getProgressPercent() / PROGRESS_STEP != before) {
+                notifyOwner(level, job, Component.literal(
+                        "§eСтроительство замка: §f" + job.getProgressPercent() + "%"));
+            }
+        }
+    }
+
+    /**
+     * Постройка, на площадке которой находится позиция
+     *
+     * @param radius радиус площадки от центра замка
+     */
+    @Nullable
+    public static CastleConstructionJob getJobNear(Level level, BlockPos pos, int radius) {
+        List<CastleConstructionJob> jobs = JOBS.get(level.dimension());
+        if (jobs == null) {
+            return null;
+        }
+
+        for (CastleConstructionJob job : jobs) {
+            BlockPos center = job.getCenter();
+            long dx = pos.getX() - center.getX();
+            long dz = pos.getZ() - center.getZ();
+            if (dx * dx + dz * dz <= (long) radius * radius) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    public static void notifyOwner(ServerLevel level, CastleConstructionJob job, Component message) {
+        if (job.getOwnerId() == null) {
+            return;
+        }
+        ServerPlayer owner = level.getServer().getPlayerList().getPlayer(job.getOwnerId());
+        if (owner != null) {
+            owner.sendSystemMessage(message);
+        }
+    }
+
+    public static void load(ServerLevel level) {
+        List<CastleConstructionJob> jobs = new ArrayList<>(KingdomData.get(level).getConstructions());
+        JOBS.put(level.dimension(), jobs);
+    }
+
+    public static void clear() {
+        JOBS.clear();
+    }
+}
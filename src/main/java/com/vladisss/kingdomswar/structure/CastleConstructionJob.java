@@ -0,0 +1,221 @@
+package com.vladisss.kingdomswar.structure;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.UUID;
+
+/**
+ * ПОСТРОЙКА ЗАМКА ПО ЧАСТЯМ
+ *
+ * Каждый этап CastleStructure.Phase разбит на чанки своей области (единицы работы).
+ * Местность сначала обследуется (TerrainSurvey на чанк), потом готовится процедурно,
+ * здание копируется из чертежа (CastleBlueprints).
+ * За тик выполняются единицы, пока не набран бюджет блоков, затем пакет пишется в мир.
+ * Положение (этап + единица) сохраняется в KingdomData - постройка переживает рестарт.
+ */
+public class CastleConstructionJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
+
+    // ✅ Бюджет блоков за тик (единица работы не делится - может немного превысить)
+    private static final int BLOCKS_PER_TICK = 4096;
+
+    private static final CastleStructure.Phase[] PHASES = CastleStructure.Phase.values();
+
+    private final BlockPos center;
+    @Nullable
+    private final UUID ownerId;     // Игрок, начавший постройку (для сообщений о прогрессе)
+    private final int buildingReach; // Полуразмер здания из чертежа (этап BUILDING)
+    private final int totalUnits;
+
+    private int phase = 0;          // Текущий этап
+    private int unit = 0;           // Следующая единица работы в этапе
+    private int doneUnits = 0;
+    private long blocksPlaced = 0;
+    private long workNanos = 0;     // Время работы в тиках (без ожидания между тиками)
+    private final long startGameTime;
+
+    // Обследованная местность по чанкам (не сохраняется)
+    private final Long2ObjectMap<TerrainSurvey> surveys = new Long2ObjectOpenHashMap<>();
+
+    public CastleConstructionJob(BlockPos center, @Nullable UUID ownerId, long startGameTime, int buildingReach) {
+        this.center = center;
+        this.ownerId = ownerId;
+        this.startGameTime = startGameTime;
+        this.buildingReach = buildingReach;
+        this.totalUnits = countAllUnits();
+    }
+
+    /**
+     * Один тик постройки
+     *
+     * @return true - замок достроен
+     */
+    public boolean tick(ServerLevel level) {
+        if (isFinished()) {
+            return true;
+        }
+
+        long start = System.nanoTime();
+        BlockPlacementBatch blocks = new BlockPlacementBatch(level);
+
+        // Хотя бы одна единица за тик, дальше - пока не набран бюджет
+        do {
+            runUnit(level, blocks);
+        } while (!isFinished() && blocks.getPendingCount() < BLOCKS_PER_TICK);
+
+        blocksPlaced += blocks.apply();
+        workNanos += System.nanoTime() - start;
+
+        if (isFinished()) {
+            LOGGER.info("[Castle] ✅ Замок в {} построен за {} тиков ({} мс работы, {} блоков)",
+                    center.toShortString(), level.getGameTime() - startGameTime,
+                    workNanos / 1_000_000, blocksPlaced);
+            return true;
+        }
+        return false;
+    }
+
+    private void runUnit(ServerLevel level, BlockPlacementBatch blocks) {
+        CastleStructure.Phase current = PHASES[phase];
+        int reach = getReach(current);
+        int minChunkX = minChunk(center.getX(), reach);
+        int minChunkZ = minChunk(center.getZ(), reach);
+        int width = maxChunk(center.getX(), reach) - minChunkX + 1;
+
+        int chunkX = minChunkX + unit % width;
+        int chunkZ = minChunkZ + unit / width;
+
+        blocks.clipToChunk(chunkX, chunkZ);
+        if (current == CastleStructure.Phase.SURVEY) {
+            getSurvey(level, chunkX, chunkZ);
+        } else if (current == CastleStructure.Phase.BUILDING) {
+            surveys.clear(); // Местность готова
+            CastleBlueprints.get(level.getServer()).place(blocks, center);
+        } else {
+            CastleStructure.buildTerrainPhase(current, blocks, center, getSurvey(level, chunkX, chunkZ));
+        }
+        blocks.clearClip();
+
+        unit++;
+        doneUnits++;
+        if (unit >= countUnits(reach)) {
+            LOGGER.debug("[Castle] Этап {} завершен", current);
+            phase++;
+            unit = 0;
+        }
+    }
+
+    /**
+     * Обследование чанка (этап SURVEY делает его для всей площадки до изменений;
+     * после рестарта - заново, по текущему виду чанка)
+     */
+    private TerrainSurvey getSurvey(ServerLevel level, int chunkX, int chunkZ) {
+        return surveys.computeIfAbsent(ChunkPos.asLong(chunkX, chunkZ),
+                key -> CastleStructure.surveyChunk(level, chunkX, chunkZ, center));
+    }
+
+    // ==================== ЕДИНИЦЫ РАБОТЫ ====================
+
+    private int getReach(CastleStructure.Phase phase) {
+        return phase == CastleStructure.Phase.BUILDING ? buildingReach : phase.getReach();
+    }
+
+    private static int minChunk(int centerCoord, int reach) {
+        return SectionPos.blockToSectionCoord(centerCoord - reach);
+    }
+
+    private static int maxChunk(int centerCoord, int reach) {
+        return SectionPos.blockToSectionCoord(centerCoord + reach);
+    }
+
+    private int countUnits(int reach) {
+        int width = maxChunk(center.getX(), reach) - minChunk(center.getX(), reach) + 1;
+        int depth = maxChunk(center.getZ(), reach) - minChunk(center.getZ(), reach) + 1;
+        return width * depth;
+    }
+
+    private int countAllUnits() {
+        int total = 0;
+        for (CastleStructure.Phase phase : PHASES) {
+            total += countUnits(getReach(phase));
+        }
+        return total;
+    }
+
+    // ==================== СОСТОЯНИЕ ====================
+
+    public boolean isFinished() {
+        return phase >= PHASES.length;
+    }
+
+    public BlockPos getCenter() {
+        return center;
+    }
+
+    @Nullable
+    public UUID getOwnerId() {
+        return ownerId;
+    }
+
+    /**
+     * Прогресс 0..100
+     */
+    public int getProgressPercent() {
+        return totalUnits == 0 ? 100 : (int) (doneUnits * 100L / totalUnits);
+    }
+
+    /**
+     * Текущий этап (null - достроен)
+     */
+    @Nullable
+    public CastleStructure.Phase getPhase() {
+        return isFinished() ? null : PHASES[phase];
+    }
+
+    public long getBlocksPlaced() {
+        return blocksPlaced;
+    }
+
+    // ==================== NBT ====================
+
+    public CompoundTag save() {
+        CompoundTag tag = new CompoundTag();
+        tag.putInt("centerX", center.getX());
+        tag.putInt("centerY", center.getY());
+        tag.putInt("centerZ", center.getZ());
+        if (ownerId != null) {
+            tag.putUUID("owner", ownerId);
+        }
+        tag.putInt("phase", phase);
+        tag.putInt("unit", unit);
+        tag.putInt("doneUnits", doneUnits);
+        tag.putLong("blocksPlaced", blocksPlaced);
+        tag.putLong("workNanos", workNanos);
+        tag.putLong("startGameTime", startGameTime);
+        tag.putInt("buildingReach", buildingReach);
+        return tag;
+    }
+
+    public static CastleConstructionJob load(CompoundTag tag) {
+        BlockPos center = new BlockPos(tag.getInt("centerX"), tag.getInt("centerY"), tag.getInt("centerZ"));
+        UUID owner = tag.hasUUID("owner") ? tag.getUUID("owner") : null;
+
+        CastleConstructionJob job = new CastleConstructionJob(center, owner, tag.getLong("startGameTime"),
+                tag.getInt("buildingReach"));
+        job.phase = Math.min(tag.getInt("phase"), PHASES.length);
+        job.unit = tag.getInt("unit");
+        job.doneUnits = tag.getInt("doneUnits");
+        job.blocksPlaced = tag.getLong("blocksPlaced");
+        job.workNanos = tag.getLong("workNanos");
+        return job;
+    }
+}
@@ -1,179 +1,183 @@
 package com.vladisss.kingdomswar.structure;
 
 import net.minecraft.core.BlockPos;
-import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
-import net.minecraft.world.level.block.Mirror;
-import net.minecraft.world.level.block.Rotation;
 import net.minecraft.world.level.block.state.BlockState;
-import net.minecraft.world.level.levelgen.structure.templatesystem.StructurePlaceSettings;
-import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
-import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplateManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Optional;
-
+/**
+ * ЗАМОК
+ *
+ * Подготовка местности (пустоты, платформа, склон, очистка) зависит от мира и строится
+ * процедурно на месте: рельеф один раз читается в TerrainSurvey, дальше этапы пишут
+ * вертикальные отрезки без чтения блоков. Само здание - фиксированная геометрия: оно компилируется
+ * в CastleBlueprint (buildDesign) и ставится потоковым копированием чертежа.
+ */
 public class CastleStructure {
     private static final Logger LOGGER = LoggerFactory.getLogger("KingdomsWar");
 
-    private void placeFromNBT(ServerLevel level, BlockPos center) {
-        // Загружаем NBT структуру
-        ResourceLocation structureLocation = new ResourceLocation("kingdomswar", "my_castle");
-
-        StructureTemplateManager structureManager = level.getStructureManager();
-        Optional<StructureTemplate> template = structureManager.get(structureLocation);
-
-        if (template.isPresent()) {
-            StructurePlaceSettings settings = new StructurePlaceSettings()
-                    .setRotation(Rotation.NONE)
-                    .setMirror(Mirror.NONE)
-                    .setIgnoreEntities(false);
-
-            template.get().placeInWorld(
-                    level,
-                    center,
-                    center,
-                    settings,
-                    level.random,
-                    Block.UPDATE_ALL
-            );
-
-            LOGGER.info("Castle placed from NBT at {}", center);
-        } else {
-            LOGGER.error("Castle structure not found!");
+    // ✅ Размеры замка
+    private static final int SIZE = 15;
+    private static final int WALL_HEIGHT = 8;
+    private static final int TOWER_HEIGHT = 12;
+
+    // ✅ Подготовка местности: глубина заполнения пустот и высота очистки над площадкой
+    private static final int FILL_DEPTH = 20;
+    private static final int CLEAR_HEIGHT = WALL_HEIGHT + 5;
+    // Биты маски пустот с y от -1 до -10 (ниже - deepslate)
+    private static final int STONE_LAYER_MASK = (1 << 10) - 1;
+
+    /**
+     * Этапы постройки по порядку.
+     * reach - полуразмер области этапа по X/Z от центра (для разбиения на чанки);
+     * у BUILDING он берется из чертежа
+     */
+    public enum Phase {
+        SURVEY(SIZE + 12),      // ✅ 0. ОБСЛЕДОВАНИЕ местности всей площадки (до изменений)
+        FILL(SIZE + 5),         // ✅ 1. ЗАПОЛНЕНИЕ ПУСТОТ под замком
+        PLATFORM(SIZE + 3),     // ✅ 2. РОВНАЯ ПЛАТФОРМА под замком
+        SLOPE(SIZE + 12),       // ✅ 3. ПЛАВНЫЙ СКЛОН вместо террас
+        CLEAR(SIZE + 2),        // ✅ 4. ПОЛНАЯ ОЧИСТКА воздуха внутри
+        BUILDING(-1);           // 5. Здание - из чертежа (CastleBlueprint)
+
+        private final int reach;
+
+        Phase(int reach) {
+            this.reach = reach;
         }
-    }
-
-
-    public static void generate(ServerLevel level, BlockPos center) {
-        int size = 15;
-        int wallHeight = 8;
-        int towerHeight = 12;
 
-        LOGGER.info("[Castle] Начало генерации замка в {}", center.toShortString());
+        public int getReach() {
+            return reach;
+        }
+    }
 
-        // ✅ 1. ЗАПОЛНЕНИЕ ПУСТОТ под замком (от bedrock до поверхности)
-        fillUnderground(level, center, size + 5, 20);
+    /**
+     * Обследовать чанк площадки: высоты и маски для всех этапов местности.
+     * Делается до любых изменений в чанке - этапы видят исходный рельеф
+     */
+    public static TerrainSurvey surveyChunk(ServerLevel level, int chunkX, int chunkZ, BlockPos center) {
+        return TerrainSurvey.scan(level, chunkX, chunkZ, center.getY(), FILL_DEPTH, CLEAR_HEIGHT);
+    }
 
-        // ✅ 2. РОВНАЯ ПЛАТФОРМА под замком
-        createFlatPlatform(level, center, size + 3);
+    /**
+     * Подготовить местность одного этапа в пределах чанка обследования.
+     * Блоки мира не читаются - только TerrainSurvey; область пакета (clip) должна
+     * лежать внутри этого чанка: так CastleConstructionJob строит замок по чанкам.
+     */
+    public static void buildTerrainPhase(Phase phase, BlockWriter blocks, BlockPos center, TerrainSurvey survey) {
+        switch (phase) {
+            case FILL -> fillUnderground(blocks, survey, center, SIZE + 5);
+            case PLATFORM -> createFlatPlatform(blocks, survey, center, SIZE + 3);
+            case SLOPE -> createSmoothSlope(blocks, survey, center, SIZE + 3, SIZE + 12);
+            case CLEAR -> clearCastleArea(blocks, survey, center, SIZE + 2);
+            case SURVEY, BUILDING -> throw new IllegalArgumentException("Этап " + phase + " не меняет местность");
+        }
+    }
 
-        // ✅ 3. ПЛАВНЫЙ СКЛОН вместо террас
-        createSmoothSlope(level, center, size + 3, size + 12);
+    /**
+     * Процедурное здание замка (источник встроенного чертежа).
+     * Порядок важен: двор и ворота вырезают воздух в уже поставленных блоках
+     */
+    public static void buildDesign(BlockWriter blocks, BlockPos center) {
+        buildFloor(blocks, center, SIZE);
+        buildWalls(blocks, center, SIZE, WALL_HEIGHT);
+        buildTower(blocks, center.offset(-SIZE, 0, -SIZE), TOWER_HEIGHT);
+        buildTower(blocks, center.offset(SIZE, 0, -SIZE), TOWER_HEIGHT);
+        buildTower(blocks, center.offset(-SIZE, 0, SIZE), TOWER_HEIGHT);
+        buildTower(blocks, center.offset(SIZE, 0, SIZE), TOWER_HEIGHT);
+        buildGate(blocks, center.offset(0, 0, -SIZE), WALL_HEIGHT);
+        clearCourtyard(blocks, center, SIZE - 2, WALL_HEIGHT);
+        buildKeep(blocks, center, TOWER_HEIGHT + 4);
+    }
 
-        // ✅ 4. ПОЛНАЯ ОЧИСТКА воздуха внутри
-        clearCastleArea(level, center, size + 2, wallHeight + 5);
+    // Границы циклов по X/Z с учетом области пакета (смещения от центра)
+    private static int fromX(BlockWriter blocks, BlockPos center, int radius) {
+        return Math.max(-radius, blocks.getClipMinX() - center.getX());
+    }
 
-        // 5. ПОЛ внутри замка
-        buildFloor(level, center, size);
+    private static int toX(BlockWriter blocks, BlockPos center, int radius) {
+        return Math.min(radius, blocks.getClipMaxX() - center.getX());
+    }
 
-        // 6. Постройка замка
-        buildWalls(level, center, size, wallHeight);
-        buildTower(level, center.offset(-size, 0, -size), towerHeight);
-        buildTower(level, center.offset(size, 0, -size), towerHeight);
-        buildTower(level, center.offset(-size, 0, size), towerHeight);
-        buildTower(level, center.offset(size, 0, size), towerHeight);
-        buildGate(level, center.offset(0, 0, -size), wallHeight);
-        clearCourtyard(level, center, size - 2, wallHeight);
-        buildKeep(level, center, towerHeight + 4);
+    private static int fromZ(BlockWriter blocks, BlockPos center, int radius) {
+        return Math.max(-radius, blocks.getClipMinZ() - center.getZ());
+    }
 
-        LOGGER.info("[Castle] ✅ Замок построен!");
+    private static int toZ(BlockWriter blocks, BlockPos center, int radius) {
+        return Math.min(radius, blocks.getClipMaxZ() - center.getZ());
     }
 
     // ✅ НОВОЕ: Заполнение всех пустот под замком (пещеры, равнины)
-    private static void fillUnderground(ServerLevel level, BlockPos center, int radius, int depth) {
-        LOGGER.info("[Castle] Заполнение пустот под замком (глубина: {})", depth);
+    private static void fillUnderground(BlockWriter blocks, TerrainSurvey survey, BlockPos center, int radius) {
+        LOGGER.debug("[Castle] Заполнение пустот под замком (глубина: {})", FILL_DEPTH);
 
         BlockState stone = Blocks.STONE.defaultBlockState();
         BlockState deepslate = Blocks.DEEPSLATE.defaultBlockState();
         int filled = 0;
 
-        for (int x = -radius; x <= radius; x++) {
-            for (int z = -radius; z <= radius; z++) {
-                // Заполняем от центра вниз на 20 блоков
-                for (int y = -1; y >= -depth; y--) {
-                    BlockPos pos = center.offset(x, y, z);
-                    BlockState current = level.getBlockState(pos);
-
-                    // Заполняем только воздух и пустоты
-                    if (current.isAir() ||
-                            current.is(Blocks.CAVE_AIR) ||
-                            current.is(Blocks.WATER) ||
-                            current.is(Blocks.LAVA)) {
-
-                        // Глубже -10 блоков - deepslate, выше - stone
-                        if (y < -10) {
-                            level.setBlock(pos, deepslate, 3);
-                        } else {
-                            level.setBlock(pos, stone, 3);
-                        }
-                        filled++;
-                    }
-                }
+        for (int x = fromX(blocks, center, radius); x <= toX(blocks, center, radius); x++) {
+            for (int z = fromZ(blocks, center, radius); z <= toZ(blocks, center, radius); z++) {
+                int wx = center.getX() + x;
+                int wz = center.getZ() + z;
+                // Бит i - пустота на y = центр - 1 - i (воздух, пещера, вода, лава)
+                int mask = survey.getFillMask(wx, wz);
+
+                // Глубже -10 блоков - deepslate, выше - stone
+                filled += fillMaskRuns(blocks, wx, wz, mask & STONE_LAYER_MASK, center.getY() - 1, stone);
+                filled += fillMaskRuns(blocks, wx, wz, mask & ~STONE_LAYER_MASK, center.getY() - 1, deepslate);
             }
         }
 
-        LOGGER.info("[Castle] ✅ Пустоты заполнены ({} блоков)", filled);
+        LOGGER.debug("[Castle] ✅ Пустоты заполнены ({} блоков)", filled);
     }
 
     // ✅ НОВОЕ: Ровная платформа (БЕЗ террас)
-    private static void createFlatPlatform(ServerLevel level, BlockPos center, int radius) {
-        LOGGER.info("[Castle] Создание ровной платформы (радиус: {})", radius);
+    private static void createFlatPlatform(BlockWriter blocks, TerrainSurvey survey, BlockPos center, int radius) {
+        LOGGER.debug("[Castle] Создание ровной платформы (радиус: {})", radius);
 
         BlockState grass = Blocks.GRASS_BLOCK.defaultBlockState();
         BlockState dirt = Blocks.DIRT.defaultBlockState();
         int cleared = 0;
         int filled = 0;
 
-        for (int x = -radius; x <= radius; x++) {
-            for (int z = -radius; z <= radius; z++) {
-                int surfaceY = level.getHeight(
-                        net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE_WG,
-                        center.getX() + x,
-                        center.getZ() + z
-                );
+        for (int x = fromX(blocks, center, radius); x <= toX(blocks, center, radius); x++) {
+            for (int z = fromZ(blocks, center, radius); z <= toZ(blocks, center, radius); z++) {
+                int wx = center.getX() + x;
+                int wz = center.getZ() + z;
+                int surfaceY = survey.getSurfaceY(wx, wz);
 
                 // ВЫШЕ центра - удаляем до уровня
                 if (surfaceY > center.getY()) {
-                    for (int y = surfaceY; y >= center.getY(); y--) {
-                        level.setBlock(new BlockPos(center.getX() + x, y, center.getZ() + z),
-                                Blocks.AIR.defaultBlockState(), 3);
-                        cleared++;
-                    }
+                    blocks.setColumn(wx, wz, center.getY(), surfaceY, Blocks.AIR.defaultBlockState());
+                    cleared += surfaceY - center.getY() + 1;
                 }
 
-                // НИЖЕ центра - заполняем
+                // НИЖЕ центра - заполняем (верхний блок - трава, ставится ниже)
                 if (surfaceY < center.getY()) {
-                    for (int y = surfaceY; y < center.getY(); y++) {
-                        BlockState block = (y == center.getY() - 1) ? grass : dirt;
-                        level.setBlock(new BlockPos(center.getX() + x, y, center.getZ() + z),
-                                block, 3);
-                        filled++;
-                    }
+                    blocks.setColumn(wx, wz, surfaceY, center.getY() - 2, dirt);
+                    filled += center.getY() - surfaceY;
                 }
 
                 // Поверхность - трава
-                level.setBlock(new BlockPos(center.getX() + x, center.getY() - 1, center.getZ() + z),
-                        grass, 3);
+                blocks.set(new BlockPos(wx, center.getY() - 1, wz), grass);
             }
         }
 
-        LOGGER.info("[Castle] Платформа готова (удалено: {}, заполнено: {})", cleared, filled);
+        LOGGER.debug("[Castle] Платформа готова (удалено: {}, заполнено: {})", cleared, filled);
     }
 
     // ✅ НОВОЕ: Плавный склон (вместо резких террас)
-    private static void createSmoothSlope(ServerLevel level, BlockPos center, int innerRadius, int outerRadius) {
-        LOGGER.info("[Castle] Создание плавного склона");
+    private static void createSmoothSlope(BlockWriter blocks, TerrainSurvey survey, BlockPos center, int innerRadius, int outerRadius) {
+        LOGGER.debug("[Castle] Создание плавного склона");
 
         BlockState grass = Blocks.GRASS_BLOCK.defaultBlockState();
         BlockState dirt = Blocks.DIRT.defaultBlockState();
         int smoothed = 0;
 
-        for (int x = -outerRadius; x <= outerRadius; x++) {
-            for (int z = -outerRadius; z <= outerRadius; z++) {
+        for (int x = fromX(blocks, center, outerRadius); x <= toX(blocks, center, outerRadius); x++) {
+            for (int z = fromZ(blocks, center, outerRadius); z <= toZ(blocks, center, outerRadius); z++) {
                 double distance = Math.sqrt(x * x + z * z);
 
                 // Только в зоне склона
@@ -185,110 +189,117 @@ public class CastleStructure {
                 double ratio = (distance - innerRadius) / (outerRadius - innerRadius);
                 int targetY = center.getY() - (int) (ratio * 3); // Спуск на 3 блока
 
-                int surfaceY = level.getHeight(
-                        net.minecraft.world.level.levelgen.Heightmap.Types.WORLD_SURFACE_WG,
-                        center.getX() + x,
-                        center.getZ() + z
-                );
+                int wx = center.getX() + x;
+                int wz = center.getZ() + z;
+                int surfaceY = survey.getSurfaceY(wx, wz);
 
                 // Выравнивание до целевой высоты
                 if (Math.abs(surfaceY - targetY) > 1) {
                     // Удаляем лишнее
                     if (surfaceY > targetY) {
-                        for (int y = surfaceY; y > targetY; y--) {
-                            level.setBlock(new BlockPos(center.getX() + x, y, center.getZ() + z),
-                                    Blocks.AIR.defaultBlockState(), 3);
-                        }
+                        blocks.setColumn(wx, wz, targetY + 1, surfaceY, Blocks.AIR.defaultBlockState());
                     }
 
                     // Заполняем недостающее
                     if (surfaceY < targetY) {
-                        for (int y = surfaceY; y <= targetY; y++) {
-                            BlockState block = (y == targetY) ? grass : dirt;
-                            level.setBlock(new BlockPos(center.getX() + x, y, center.getZ() + z),
-                                    block, 3);
-                        }
+                        blocks.setColumn(wx, wz, surfaceY, targetY - 1, dirt);
                     }
 
                     // Трава на поверхности
-                    level.setBlock(new BlockPos(center.getX() + x, targetY, center.getZ() + z),
-                            grass, 3);
+                    blocks.set(new BlockPos(wx, targetY, wz), grass);
                     smoothed++;
                 }
             }
         }
 
-        LOGGER.info("[Castle] Склон создан ({} блоков)", smoothed);
+        LOGGER.debug("[Castle] Склон создан ({} блоков)", smoothed);
     }
 
     // ✅ Полная очистка территории
-    private static void clearCastleArea(ServerLevel level, BlockPos center, int radius, int height) {
-        LOGGER.info("[Castle] Очистка территории замка");
+    private static void clearCastleArea(BlockWriter blocks, TerrainSurvey survey, BlockPos center, int radius) {
+        LOGGER.debug("[Castle] Очистка территории замка");
 
+        BlockState air = Blocks.AIR.defaultBlockState();
         int cleared = 0;
 
-        for (int x = -radius; x <= radius; x++) {
-            for (int z = -radius; z <= radius; z++) {
-                for (int y = 0; y <= height; y++) {
-                    BlockPos pos = center.offset(x, y, z);
-                    BlockState state = level.getBlockState(pos);
-
-                    // Удаляем всё кроме камня замка
-                    if (!state.isAir() &&
-                            !state.is(Blocks.STONE_BRICKS) &&
-                            !state.is(Blocks.STONE_BRICK_STAIRS) &&
-                            !state.is(Blocks.CHISELED_STONE_BRICKS)) {
-
-                        level.setBlock(pos, Blocks.AIR.defaultBlockState(), 3);
-                        cleared++;
-                    }
+        for (int x = fromX(blocks, center, radius); x <= toX(blocks, center, radius); x++) {
+            for (int z = fromZ(blocks, center, radius); z <= toZ(blocks, center, radius); z++) {
+                int wx = center.getX() + x;
+                int wz = center.getZ() + z;
+                // Бит i - на y = центр + i есть что-то кроме воздуха и камня замка
+                int mask = survey.getClearMask(wx, wz);
+
+                while (mask != 0) {
+                    int from = Integer.numberOfTrailingZeros(mask);
+                    int to = Integer.numberOfTrailingZeros(~(mask >>> from)) + from - 1;
+                    blocks.setColumn(wx, wz, center.getY() + from, center.getY() + to, air);
+                    cleared += to - from + 1;
+                    mask &= to == 31 ? 0 : -1 << (to + 1);
                 }
             }
         }
 
-        LOGGER.info("[Castle] Очищено {} блоков", cleared);
+        LOGGER.debug("[Castle] Очищено {} блоков", cleared);
+    }
+
+    /**
+     * Заполнить отмеченные в маске блоки вертикальными отрезками.
+     * Бит i - блок topY - i (маска растет вниз)
+     *
+     * @return сколько блоков поставлено
+     */
+    private static int fillMaskRuns(BlockWriter blocks, int x, int z, int mask, int topY, BlockState state) {
+        int placed = 0;
+        while (mask != 0) {
+            int from = Integer.numberOfTrailingZeros(mask);
+            int to = Integer.numberOfTrailingZeros(~(mask >>> from)) + from - 1;
+            blocks.setColumn(x, z, topY - to, topY - from, state);
+            placed += to - from + 1;
+            mask &= to == 31 ? 0 : -1 << (to + 1);
+        }
+        return placed;
     }
 
     // ✅ Пол внутри замка
-    private static void buildFloor(ServerLevel level, BlockPos center, int size) {
+    private static void buildFloor(BlockWriter blocks, BlockPos center, int size) {
         BlockState floor = Blocks.STONE_BRICKS.defaultBlockState();
 
-        for (int x = -size; x <= size; x++) {
-            for (int z = -size; z <= size; z++) {
-                level.setBlock(center.offset(x, -1, z), floor, 3);
-                level.setBlock(center.offset(x, 0, z), floor, 3);
+        for (int x = fromX(blocks, center, size); x <= toX(blocks, center, size); x++) {
+            for (int z = fromZ(blocks, center, size); z <= toZ(blocks, center, size); z++) {
+                blocks.set(center.offset(x, -1, z), floor);
+                blocks.set(center.offset(x, 0, z), floor);
             }
         }
     }
 
-    private static void buildWalls(ServerLevel level, BlockPos center, int size, int height) {
+    private static void buildWalls(BlockWriter blocks, BlockPos center, int size, int height) {
         BlockState wall = Blocks.STONE_BRICKS.defaultBlockState();
         BlockState battlement = Blocks.STONE_BRICK_STAIRS.defaultBlockState();
 
         for (int y = 0; y < height; y++) {
             for (int x = -size; x <= size; x++) {
-                level.setBlock(center.offset(x, y, -size), wall, 3);
-                level.setBlock(center.offset(x, y, size), wall, 3);
+                blocks.set(center.offset(x, y, -size), wall);
+                blocks.set(center.offset(x, y, size), wall);
             }
 
             for (int z = -size; z <= size; z++) {
-                level.setBlock(center.offset(-size, y, z), wall, 3);
-                level.setBlock(center.offset(size, y, z), wall, 3);
+                blocks.set(center.offset(-size, y, z), wall);
+                blocks.set(center.offset(size, y, z), wall);
             }
         }
 
         for (int x = -size; x <= size; x += 2) {
-            level.setBlock(center.offset(x, height, -size), battlement, 3);
-            level.setBlock(center.offset(x, height, size), battlement, 3);
+            blocks.set(center.offset(x, height, -size), battlement);
+            blocks.set(center.offset(x, height, size), battlement);
         }
 
         for (int z = -size; z <= size; z += 2) {
-            level.setBlock(center.offset(-size, height, z), battlement, 3);
-            level.setBlock(center.offset(size, height, z), battlement, 3);
+            blocks.set(center.offset(-size, height, z), battlement);
+            blocks.set(center.offset(size, height, z), battlement);
         }
     }
 
-    private static void buildTower(ServerLevel level, BlockPos base, int height) {
+    private static void buildTower(BlockWriter blocks, BlockPos base, int height) {
         BlockState tower = Blocks.STONE_BRICKS.defaultBlockState();
         int radius = 3;
 
@@ -296,37 +307,37 @@ public class CastleStructure {
             for (int x = -radius; x <= radius; x++) {
                 for (int z = -radius; z <= radius; z++) {
                     if (x * x + z * z <= radius * radius) {
-                        level.setBlock(base.offset(x, y, z), tower, 3);
+                        blocks.set(base.offset(x, y, z), tower);
                     }
                 }
             }
         }
 
-        level.setBlock(base.offset(0, height, 0), Blocks.STONE_BRICK_SLAB.defaultBlockState(), 3);
-        level.setBlock(base.offset(0, height - 2, 0), Blocks.TORCH.defaultBlockState(), 3);
+        blocks.set(base.offset(0, height, 0), Blocks.STONE_BRICK_SLAB.defaultBlockState());
+        blocks.set(base.offset(0, height - 2, 0), Blocks.TORCH.defaultBlockState());
     }
 
-    private static void buildGate(ServerLevel level, BlockPos gatePos, int height) {
+    private static void buildGate(BlockWriter blocks, BlockPos gatePos, int height) {
         for (int x = -1; x <= 1; x++) {
             for (int y = 0; y < height - 2; y++) {
-                level.setBlock(gatePos.offset(x, y, 0), Blocks.AIR.defaultBlockState(), 3);
+                blocks.set(gatePos.offset(x, y, 0), Blocks.AIR.defaultBlockState());
             }
         }
 
-        level.setBlock(gatePos.offset(0, 0, 0), Blocks.IRON_BARS.defaultBlockState(), 3);
+        blocks.set(gatePos.offset(0, 0, 0), Blocks.IRON_BARS.defaultBlockState());
     }
 
-    private static void clearCourtyard(ServerLevel level, BlockPos center, int size, int height) {
-        for (int x = -size; x <= size; x++) {
-            for (int z = -size; z <= size; z++) {
+    private static void clearCourtyard(BlockWriter blocks, BlockPos center, int size, int height) {
+        for (int x = fromX(blocks, center, size); x <= toX(blocks, center, size); x++) {
+            for (int z = fromZ(blocks, center, size); z <= toZ(blocks, center, size); z++) {
                 for (int y = 1; y < height; y++) {
-                    level.setBlock(center.offset(x, y, z), Blocks.AIR.defaultBlockState(), 3);
+                    blocks.set(center.offset(x, y, z), Blocks.AIR.defaultBlockState());
                 }
             }
         }
     }
 
-    private static void buildKeep(ServerLevel level, BlockPos center, int height) {
+    private static void buildKeep(BlockWriter blocks, BlockPos center, int height) {
         BlockState keep = Blocks.CHISELED_STONE_BRICKS.defaultBlockState();
         int size = 4;
 
@@ -334,7 +345,7 @@ public class CastleStructure {
             for (int x = -size; x <= size; x++) {
                 for (int z = -size; z <= size; z++) {
                     if (Math.abs(x) == size || Math.abs(z) == size) {
-                        level.setBlock(center.offset(x, y, z), keep, 3);
+                        blocks.set(center.offset(x, y, z), keep);
                     }
                 }
             }
@@ -342,7 +353,7 @@ public class CastleStructure {
 
         for (int x = -size; x <= size; x++) {
             for (int z = -size; z <= size; z++) {
-                level.setBlock(center.offset(x, height, z), Blocks.STONE_BRICK_SLAB.defaultBlockState(), 3);
+                blocks.set(center.offset(x, height, z), Blocks.STONE_BRICK_SLAB.defaultBlockState());
             }
         }
     }
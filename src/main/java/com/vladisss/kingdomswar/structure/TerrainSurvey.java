@@ -0,0 +1,132 @@
+package com.vladisss.kingdomswar.structure;
+
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+import java.util.function.Predicate;
+
+/**
+ * ОБСЛЕДОВАНИЕ МЕСТНОСТИ ОДНОГО ЧАНКА
+ *
+ * Один проход по карте высот и секциям чанка до начала работ - дальше этапы
+ * подготовки местности читают только эти массивы (по int на колонку):
+ * - высота поверхности (WORLD_SURFACE_WG);
+ * - маска пустот под площадкой: бит i - блок centerY - 1 - i можно заполнить;
+ * - маска очистки над площадкой: бит i - блок centerY + i нужно убрать.
+ *
+ * Секции без подходящих блоков (maybeHas по палитре) и пустые секции
+ * обрабатываются целиком, без чтения блоков.
+ */
+public final class TerrainSurvey {
+    // Пустоты: воздух, пещеры, жидкости
+    private static final Predicate<BlockState> FILLABLE = state -> state.isAir() ||
+            state.is(Blocks.CAVE_AIR) ||
+            state.is(Blocks.WATER) ||
+            state.is(Blocks.LAVA);
+
+    // Всё, кроме воздуха и камня замка
+    private static final Predicate<BlockState> CLEARABLE = state -> !state.isAir() &&
+            !state.is(Blocks.STONE_BRICKS) &&
+            !state.is(Blocks.STONE_BRICK_STAIRS) &&
+            !state.is(Blocks.CHISELED_STONE_BRICKS);
+
+    private final int chunkX, chunkZ;
+    private final int centerY;
+    private final int[] surfaceY = new int[256];
+    private final int[] fillMask = new int[256];
+    private final int[] clearMask = new int[256];
+
+    private TerrainSurvey(int chunkX, int chunkZ, int centerY) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.centerY = centerY;
+    }
+
+    /**
+     * @param fillDepth   глубина пустот под площадкой (до 32)
+     * @param clearHeight высота очистки над площадкой (включительно, до 31)
+     */
+    public static TerrainSurvey scan(ServerLevel level, int chunkX, int chunkZ, int centerY, int fillDepth, int clearHeight) {
+        TerrainSurvey survey = new TerrainSurvey(chunkX, chunkZ, centerY);
+        LevelChunk chunk = level.getChunk(chunkX, chunkZ);
+
+        for (int column = 0; column < 256; column++) {
+            // Как level.getHeight: первый свободный блок над поверхностью
+            survey.surfaceY[column] = chunk.getHeight(Heightmap.Types.WORLD_SURFACE_WG, column & 15, column >>> 4) + 1;
+        }
+
+        scanBand(chunk, centerY - fillDepth, centerY - 1, FILLABLE, survey.fillMask, centerY - 1, true);
+        scanBand(chunk, centerY, centerY + clearHeight, CLEARABLE, survey.clearMask, centerY, false);
+        return survey;
+    }
+
+    /**
+     * Отметить в масках колонок блоки полосы [minY, maxY], подходящие под условие
+     *
+     * @param downward биты идут вниз от originY (иначе - вверх)
+     */
+    private static void scanBand(LevelChunk chunk, int minY, int maxY, Predicate<BlockState> match,
+                                 int[] masks, int originY, boolean downward) {
+        boolean airMatches = match.test(Blocks.AIR.defaultBlockState());
+
+        for (int sectionY = SectionPos.blockToSectionCoord(minY); sectionY <= SectionPos.blockToSectionCoord(maxY); sectionY++) {
+            int index = chunk.getSectionIndexFromSectionY(sectionY);
+            if (index < 0 || index >= chunk.getSectionsCount()) {
+                continue;
+            }
+
+            LevelChunkSection section = chunk.getSection(index);
+            boolean empty = section.hasOnlyAir();
+            if (empty ? !airMatches : !section.maybeHas(match)) {
+                continue; // В секции точно нет подходящих блоков
+            }
+
+            int from = Math.max(minY, SectionPos.sectionToBlockCoord(sectionY));
+            int to = Math.min(maxY, SectionPos.sectionToBlockCoord(sectionY) + 15);
+            for (int y = from; y <= to; y++) {
+                int bit = 1 << (downward ? originY - y : y - originY);
+                for (int column = 0; column < 256; column++) {
+                    if (empty || match.test(section.getBlockState(column & 15, y & 15, column >>> 4))) {
+                        masks[column] |= bit;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int column(int x, int z) {
+        return ((z & 15) << 4) | (x & 15);
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    public int getCenterY() {
+        return centerY;
+    }
+
+    /**
+     * Высота поверхности колонки (мировые координаты блока в этом чанке)
+     */
+    public int getSurfaceY(int x, int z) {
+        return surfaceY[column(x, z)];
+    }
+
+    public int getFillMask(int x, int z) {
+        return fillMask[column(x, z)];
+    }
+
+    public int getClearMask(int x, int z) {
+        return clearMask[column(x, z)];
+    }
+}